@@ -0,0 +1,36 @@
+package com.joe.proceduralgame;
+
+/**
+ * A sprite's rectangle on a texture atlas packed by tools/atlas. The regions are listed in Atlases.
+ */
+public final class AtlasRegion {
+
+	/** The resource id of the atlas */
+	public final int textureID;
+	/** The top left corner and size of the region, in uvs of the atlas */
+	public final float u, v, width, height;
+
+	public AtlasRegion(int textureID, float u, float v, float width, float height) {
+		this.textureID = textureID;
+		this.u = u;
+		this.v = v;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Gets one tile of a region that is itself a gridSize x gridSize tiled atlas, counted like
+	 * TextureManager.atlasU() and atlasV().
+	 *
+	 * @param index the index of the tile, row by row
+	 * @param gridSize the number of tiles on each side
+	 * @return the tile's region
+	 */
+	public AtlasRegion getTile(int index, int gridSize) {
+		return new AtlasRegion(textureID,
+				u + TextureManager.atlasU(index, gridSize) * width,
+				v + TextureManager.atlasV(index, gridSize) * height,
+				width / gridSize, height / gridSize);
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.joe.proceduralgame;
+
+/**
+ * The sprites packed onto texture atlases, by the name of their drawable.
+ *
+ * Generated by tools/atlas from atlases.txt, don't edit it by hand.
+ */
+public final class Atlases {
+
+	////// atlas_static, 2048x1024 //////
+	public static final AtlasRegion DIRT = new AtlasRegion(R.drawable.atlas_static, 0.001953125f, 0.00390625f, 0.1953125f, 0.390625f);
+	public static final AtlasRegion DUNGEONFLOORTILE1 = new AtlasRegion(R.drawable.atlas_static, 0.20117188f, 0.00390625f, 0.1953125f, 0.390625f);
+	public static final AtlasRegion DUNGEONFLOORTILE1_1 = new AtlasRegion(R.drawable.atlas_static, 0.40039062f, 0.00390625f, 0.1953125f, 0.390625f);
+	public static final AtlasRegion DUNGEONFLOORTILE1_2 = new AtlasRegion(R.drawable.atlas_static, 0.5996094f, 0.00390625f, 0.1953125f, 0.390625f);
+	public static final AtlasRegion DUNGEONFLOORTILE2 = new AtlasRegion(R.drawable.atlas_static, 0.7988281f, 0.00390625f, 0.1953125f, 0.390625f);
+	public static final AtlasRegion DUNGEONWALLTILE2 = new AtlasRegion(R.drawable.atlas_static, 0.001953125f, 0.40234375f, 0.1953125f, 0.390625f);
+	public static final AtlasRegion DUNGEONWALLTILE3 = new AtlasRegion(R.drawable.atlas_static, 0.20117188f, 0.40234375f, 0.1953125f, 0.390625f);
+
+	////// atlas_props, 1024x512 //////
+	public static final AtlasRegion OBJECTSATLAS1 = new AtlasRegion(R.drawable.atlas_props, 0.00390625f, 0.0078125f, 0.390625f, 0.78125f);
+	public static final AtlasRegion OBJTORCH2 = new AtlasRegion(R.drawable.atlas_props, 0.40234375f, 0.0078125f, 0.32128906f, 0.78125f);
+
+	private Atlases() {}
+
+}
@@ -0,0 +1,555 @@
+package com.joe.proceduralgame;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A compact copy of a battle for searching ahead, kept in primitive arrays.
+ *
+ * Squares are packed as row * width + col and occupancy is a bitboard of one bit per square. Units
+ * are indexed in the order of the room's characters, and a dead unit keeps its index but leaves
+ * the board. A move is one unit walking to a square, then attacking a target or not, and is
+ * packed into an int by move(). Making a move applies the rules of Action.basicAttack and
+ * DungeonManager: the target takes strength - defense damage and, if it survives, hits back the
+ * same way. Once every unit of the phase's group has acted the phase passes to the other group.
+ * Every move made can be unmade, and the Zobrist hash of the state is kept up to date by both, so
+ * a search allocates nothing once its buffers have grown.
+ *
+ * copy() shares the parts that never change, the stats, the obstacles and the hash keys, and
+ * copies the rest, so each thread of a search can have its own state cheaply. A state is not thread
+ * safe.
+ */
+public class BattleState {
+
+	/** The target of a move that only walks */
+	public static final int NO_TARGET = -1;
+	//Seed of the hash keys, the same for every state so equal battles hash equally
+	private static final long ZOBRIST_SEED = 0x5DEECE66DL;
+	//Bits of a packed move
+	private static final int SQUARE_BITS = 16, UNIT_BITS = 8;
+	private static final int SQUARE_MASK = (1 << SQUARE_BITS) - 1, UNIT_MASK = (1 << UNIT_BITS) - 1;
+	/** The most units a state can hold, as a packed move has room for */
+	public static final int MAX_UNITS = UNIT_MASK;
+
+	public final int width, length;
+	/** The characters each unit was copied from, to carry out moves found by a search */
+	public final Character[] units;
+
+	//never changed once built, so shared by copies
+	private final long[] obstacles;
+	//the 4 neighbours of each square in the order of PathContext.NEIGHBOR_ROWS, -1 off the board
+	private final int[] neighbors;
+	private final int[] group, strength, defense, moveDistance;
+	private final long[] squareKeys, hitPointKeys, actedKeys;
+	private final long phaseKey;
+	//fingerprint of the room's size and obstacles and the units' stats, so other battles hash apart
+	private final long layoutKey;
+	private final int hitPointStride;
+
+	private final long[] occupancy;
+	private final int[] square, hitPoints, squaresTraversed;
+	private final boolean[] acted;
+	private int phaseGroup;
+	private long hash;
+
+	//undo records of the moves made, see make()
+	private int[] undo = new int[64];
+	private int undoSize = 0;
+
+	//scratch memory for breadth first searches of free squares, see getReachable()
+	private int[] seen = new int[0], distance = new int[0], queue = new int[0];
+	private int generation = 0;
+
+	/**
+	 * Copies a room's battle. Entities that aren't characters become obstacles.
+	 *
+	 * @param room the room to copy
+	 * @param phaseGroup the group id of the group whose phase it is
+	 */
+	public BattleState(Room room, int phaseGroup) {
+		width = room.getWidth();
+		length = room.getLength();
+		int nSquares = width * length;
+		if (nSquares > SQUARE_MASK + 1)
+			throw new IllegalArgumentException("Room of " + nSquares + " squares is too big");
+		List<Character> characters = room.getCharacters();
+		int n = 0;
+		for (Character c : characters) {
+			if (c.getHitPoints() > 0)
+				n++;
+		}
+		if (n > MAX_UNITS)
+			throw new IllegalArgumentException(n + " units is too many");
+
+		units = new Character[n];
+		group = new int[n];
+		strength = new int[n];
+		defense = new int[n];
+		moveDistance = new int[n];
+		square = new int[n];
+		hitPoints = new int[n];
+		squaresTraversed = new int[n];
+		acted = new boolean[n];
+		obstacles = new long[(nSquares + 63) >>> 6];
+		occupancy = new long[obstacles.length];
+		this.phaseGroup = phaseGroup;
+
+		int maxHitPoints = 0;
+		int i = 0;
+		for (Character c : characters) {
+			if (c.getHitPoints() <= 0)
+				continue;
+			units[i] = c;
+			group[i] = c.getGroupID();
+			strength[i] = c.getStrength();
+			defense[i] = c.getDefense();
+			moveDistance[i] = c.getMoveDistance();
+			square[i] = c.gridRow * width + c.gridCol;
+			hitPoints[i] = c.getHitPoints();
+			squaresTraversed[i] = c.getSquaresTraversed();
+			acted[i] = c.actedThisTurn;
+			maxHitPoints = Math.max(maxHitPoints, Math.max(c.getMaxHitPoints(), c.getHitPoints()));
+			i++;
+		}
+		for (int row = 0; row < length; row++) {
+			for (int col = 0; col < width; col++) {
+				Entity e = room.getEntityAt(row, col);
+				if (e != null && !(e instanceof Character))
+					set(obstacles, row * width + col);
+			}
+		}
+		System.arraycopy(obstacles, 0, occupancy, 0, obstacles.length);
+		neighbors = new int[4 * nSquares];
+		for (int sq = 0; sq < nSquares; sq++) {
+			for (int k = 0; k < 4; k++) {
+				int row = sq / width + PathContext.NEIGHBOR_ROWS[k];
+				int col = sq % width + PathContext.NEIGHBOR_COLS[k];
+				boolean inBounds = row >= 0 && row < length && col >= 0 && col < width;
+				neighbors[4 * sq + k] = inBounds ? row * width + col : -1;
+			}
+		}
+		for (i = 0; i < n; i++)
+			set(occupancy, square[i]);
+
+		Random rand = new Random(ZOBRIST_SEED);
+		hitPointStride = maxHitPoints + 1;
+		squareKeys = randomKeys(rand, n * nSquares);
+		hitPointKeys = randomKeys(rand, n * hitPointStride);
+		actedKeys = randomKeys(rand, n);
+		phaseKey = rand.nextLong();
+		long layout = rand.nextLong() ^ ((long) width << 32 | length);
+		for (long bits : obstacles)
+			layout = (layout ^ bits) * 0x9E3779B97F4A7C15L;
+		for (i = 0; i < n; i++) {
+			layout = (layout ^ group[i] ^ (long) strength[i] << 8 ^ (long) defense[i] << 24
+					^ (long) moveDistance[i] << 40) * 0x9E3779B97F4A7C15L;
+		}
+		layoutKey = layout;
+		hash = computeHash();
+	}
+
+	private BattleState(BattleState other) {
+		width = other.width;
+		length = other.length;
+		units = other.units;
+		obstacles = other.obstacles;
+		neighbors = other.neighbors;
+		group = other.group;
+		strength = other.strength;
+		defense = other.defense;
+		moveDistance = other.moveDistance;
+		squareKeys = other.squareKeys;
+		hitPointKeys = other.hitPointKeys;
+		actedKeys = other.actedKeys;
+		phaseKey = other.phaseKey;
+		layoutKey = other.layoutKey;
+		hitPointStride = other.hitPointStride;
+
+		occupancy = other.occupancy.clone();
+		square = other.square.clone();
+		hitPoints = other.hitPoints.clone();
+		squaresTraversed = other.squaresTraversed.clone();
+		acted = other.acted.clone();
+		phaseGroup = other.phaseGroup;
+		hash = other.hash;
+	}
+
+	/**
+	 * Copies this state, without its history of moves.
+	 */
+	public BattleState copy() {
+		return new BattleState(this);
+	}
+
+	private static long[] randomKeys(Random rand, int n) {
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = rand.nextLong();
+		return keys;
+	}
+
+	private static void set(long[] bits, int i) {
+		bits[i >>> 6] |= 1L << i;
+	}
+
+	private static void clear(long[] bits, int i) {
+		bits[i >>> 6] &= ~(1L << i);
+	}
+
+	/**
+	 * Packs a move.
+	 *
+	 * @param unit the index of the unit that acts
+	 * @param square the packed square it walks to, which may be where it stands
+	 * @param target the index of the unit it attacks there, or NO_TARGET
+	 */
+	public static int move(int unit, int square, int target) {
+		return ((target + 1) << (UNIT_BITS + SQUARE_BITS)) | (unit << SQUARE_BITS) | square;
+	}
+
+	public static int getMoveUnit(int move) {
+		return (move >>> SQUARE_BITS) & UNIT_MASK;
+	}
+
+	public static int getMoveSquare(int move) {
+		return move & SQUARE_MASK;
+	}
+
+	public static int getMoveTarget(int move) {
+		return (move >>> (UNIT_BITS + SQUARE_BITS)) - 1;
+	}
+
+	/**
+	 * Gets the number of units, dead or alive.
+	 */
+	public int getUnitCount() {
+		return units.length;
+	}
+
+	public int getGroup(int unit) {
+		return group[unit];
+	}
+
+	public int getSquare(int unit) {
+		return square[unit];
+	}
+
+	public int getHitPoints(int unit) {
+		return hitPoints[unit];
+	}
+
+	public int getStrength(int unit) {
+		return strength[unit];
+	}
+
+	public int getDefense(int unit) {
+		return defense[unit];
+	}
+
+	public int getMoveDistance(int unit) {
+		return moveDistance[unit];
+	}
+
+	public boolean hasActed(int unit) {
+		return acted[unit];
+	}
+
+	public boolean isAlive(int unit) {
+		return hitPoints[unit] > 0;
+	}
+
+	/**
+	 * Gets the group id of the group whose phase it is.
+	 */
+	public int getPhaseGroup() {
+		return phaseGroup;
+	}
+
+	/**
+	 * Checks if a square holds a unit or an obstacle.
+	 */
+	public boolean isOccupied(int square) {
+		return (occupancy[square >>> 6] & (1L << square)) != 0;
+	}
+
+	/**
+	 * Gets the Zobrist hash of the unit positions, hit points, acted flags and phase, and of
+	 * what never changes: the room's size and obstacles and the units' stats.
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Gets the hash of the board alone, as getHash() but the same whichever units have acted and
+	 * whose phase it is.
+	 */
+	public long getBoardHash() {
+		long h = phaseGroup == Character.GROUP_ENEMY ? hash ^ phaseKey : hash;
+		for (int i = 0; i < units.length; i++) {
+			if (acted[i])
+				h ^= actedKeys[i];
+		}
+		return h;
+	}
+
+	/**
+	 * Gets the number of squares a unit has walked this phase.
+	 */
+	public int getSquaresTraversed(int unit) {
+		return squaresTraversed[unit];
+	}
+
+	/**
+	 * Gets the damage of one unit's basic attack on another.
+	 */
+	public int getDamage(int attacker, int defender) {
+		return Math.max(0, strength[attacker] - defense[defender]);
+	}
+
+	/**
+	 * Checks if one group has no units left alive.
+	 *
+	 * @return the group id of the group left standing, or -1 if both have units alive
+	 */
+	public int getWinner() {
+		boolean players = false, enemies = false;
+		for (int i = 0; i < units.length; i++) {
+			if (hitPoints[i] == 0)
+				continue;
+			if (group[i] == Character.GROUP_PLAYER)
+				players = true;
+			else
+				enemies = true;
+		}
+		if (!enemies)
+			return Character.GROUP_PLAYER;
+		if (!players)
+			return Character.GROUP_ENEMY;
+		return -1;
+	}
+
+	private long computeHash() {
+		int nSquares = width * length;
+		long h = layoutKey ^ (phaseGroup == Character.GROUP_ENEMY ? phaseKey : 0);
+		for (int i = 0; i < units.length; i++) {
+			if (hitPoints[i] > 0)
+				h ^= squareKeys[i * nSquares + square[i]];
+			h ^= hitPointKeys[i * hitPointStride + hitPoints[i]];
+			if (acted[i])
+				h ^= actedKeys[i];
+		}
+		return h;
+	}
+
+	/**
+	 * Gets the largest number of moves generateMoves() can give, to size its buffer.
+	 */
+	public int getMaxMoves() {
+		return units.length * width * length * 5;
+	}
+
+	/**
+	 * Lists every move of the units of the phase's group that have yet to act.
+	 *
+	 * @param moves the buffer to fill, at least getMaxMoves() long
+	 * @return the number of moves
+	 */
+	public int generateMoves(int[] moves) {
+		int n = 0;
+		for (int unit = 0; unit < units.length; unit++) {
+			if (group[unit] == phaseGroup && !acted[unit] && hitPoints[unit] > 0)
+				n = generateMoves(unit, moves, n);
+		}
+		return n;
+	}
+
+	/**
+	 * Lists every move of one unit after the moves already in a buffer.
+	 *
+	 * @param unit the index of the unit, which must be alive
+	 * @param moves the buffer to fill
+	 * @param n the number of moves already in the buffer
+	 * @return the number of moves in the buffer now
+	 */
+	public int generateMoves(int unit, int[] moves, int n) {
+		int reachable = getReachable(unit, moveDistance[unit] - squaresTraversed[unit]);
+		for (int i = 0; i < reachable; i++)
+			moves[n++] = move(unit, queue[i], NO_TARGET);
+		//attacks from the reachable squares next to each target
+		int stamp = generation;
+		for (int target = 0; target < units.length; target++) {
+			if (group[target] == group[unit] || hitPoints[target] == 0)
+				continue;
+			for (int i = 4 * square[target], end = i + 4; i < end; i++) {
+				int adj = neighbors[i];
+				if (adj != -1 && seen[adj] == stamp)
+					moves[n++] = move(unit, adj, target);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Finds every free square a unit can walk to, like Room.getRangeSquares().
+	 *
+	 * The squares are left at the start of the queue, nearest first, with their steps in distance
+	 * and seen set to the search's generation, until the next search.
+	 *
+	 * @return the number of squares, including the one the unit stands on
+	 */
+	private int getReachable(int unit, int range) {
+		int nSquares = width * length;
+		if (seen.length < nSquares) {
+			seen = new int[nSquares];
+			distance = new int[nSquares];
+			queue = new int[nSquares];
+			generation = 0;
+		}
+		int stamp = ++generation;
+		int head = 0, tail = 0;
+		int start = square[unit];
+		seen[start] = stamp;
+		distance[start] = 0;
+		queue[tail++] = start;
+		while (head < tail) {
+			int cur = queue[head++];
+			if (distance[cur] == range)
+				continue;
+			for (int i = 4 * cur, end = i + 4; i < end; i++) {
+				int adj = neighbors[i];
+				if (adj == -1 || seen[adj] == stamp || isOccupied(adj))
+					continue;
+				seen[adj] = stamp;
+				distance[adj] = distance[cur] + 1;
+				queue[tail++] = adj;
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Makes a move of a unit of the phase's group that has yet to act. The move isn't checked, so
+	 * it should come from generateMoves().
+	 *
+	 * @param move the packed move
+	 */
+	public void make(int move) {
+		int unit = getMoveUnit(move);
+		int to = getMoveSquare(move);
+		int target = getMoveTarget(move);
+		int nSquares = width * length;
+		//{move, square, squares traversed, unit hit points, target hit points, phase ended}
+		ensureUndo(6 + 2 * units.length + 1);
+		undo[undoSize++] = move;
+		undo[undoSize++] = square[unit];
+		undo[undoSize++] = squaresTraversed[unit];
+		undo[undoSize++] = hitPoints[unit];
+		undo[undoSize++] = target == NO_TARGET ? 0 : hitPoints[target];
+
+		int from = square[unit];
+		if (to != from) {
+			clear(occupancy, from);
+			set(occupancy, to);
+			hash ^= squareKeys[unit * nSquares + from] ^ squareKeys[unit * nSquares + to];
+			square[unit] = to;
+		}
+		squaresTraversed[unit] = moveDistance[unit];
+		acted[unit] = true;
+		hash ^= actedKeys[unit];
+
+		if (target != NO_TARGET) {
+			setHitPoints(target, hitPoints[target] - getDamage(unit, target));
+			//the target hits back if it survives
+			if (hitPoints[target] > 0)
+				setHitPoints(unit, hitPoints[unit] - getDamage(target, unit));
+		}
+
+		boolean phaseOver = true;
+		for (int i = 0; i < units.length; i++) {
+			if (group[i] == phaseGroup && !acted[i] && hitPoints[i] > 0) {
+				phaseOver = false;
+				break;
+			}
+		}
+		if (phaseOver) {
+			for (int i = 0; i < units.length; i++) {
+				undo[undoSize++] = squaresTraversed[i];
+				undo[undoSize++] = acted[i] ? 1 : 0;
+				if (acted[i])
+					hash ^= actedKeys[i];
+				squaresTraversed[i] = 0;
+				acted[i] = false;
+			}
+			phaseGroup = phaseGroup == Character.GROUP_PLAYER ? Character.GROUP_ENEMY : Character.GROUP_PLAYER;
+			hash ^= phaseKey;
+		}
+		undo[undoSize++] = phaseOver ? 1 : 0;
+	}
+
+	/**
+	 * Unmakes the last move made that hasn't been unmade.
+	 */
+	public void unmake() {
+		int nSquares = width * length;
+		if (undo[--undoSize] == 1) {
+			phaseGroup = phaseGroup == Character.GROUP_PLAYER ? Character.GROUP_ENEMY : Character.GROUP_PLAYER;
+			hash ^= phaseKey;
+			for (int i = units.length - 1; i >= 0; i--) {
+				acted[i] = undo[--undoSize] == 1;
+				squaresTraversed[i] = undo[--undoSize];
+				if (acted[i])
+					hash ^= actedKeys[i];
+			}
+		}
+		int targetHitPoints = undo[--undoSize];
+		int unitHitPoints = undo[--undoSize];
+		int traversed = undo[--undoSize];
+		int from = undo[--undoSize];
+		int move = undo[--undoSize];
+		int unit = getMoveUnit(move);
+		int to = getMoveSquare(move);
+		int target = getMoveTarget(move);
+
+		if (target != NO_TARGET)
+			setHitPoints(target, targetHitPoints);
+		setHitPoints(unit, unitHitPoints);
+		acted[unit] = false;
+		hash ^= actedKeys[unit];
+		squaresTraversed[unit] = traversed;
+		if (to != from) {
+			clear(occupancy, to);
+			set(occupancy, from);
+			hash ^= squareKeys[unit * nSquares + to] ^ squareKeys[unit * nSquares + from];
+			square[unit] = from;
+		}
+	}
+
+	/**
+	 * Sets a unit's hit points, taking it off the board when they reach 0 and back on if they
+	 * rise again.
+	 */
+	private void setHitPoints(int unit, int hp) {
+		hp = Math.max(0, hp);
+		int old = hitPoints[unit];
+		if (hp == old)
+			return;
+		hash ^= hitPointKeys[unit * hitPointStride + old] ^ hitPointKeys[unit * hitPointStride + hp];
+		long key = squareKeys[unit * width * length + square[unit]];
+		if (hp == 0) {
+			clear(occupancy, square[unit]);
+			hash ^= key;
+		} else if (old == 0) {
+			set(occupancy, square[unit]);
+			hash ^= key;
+		}
+		hitPoints[unit] = hp;
+	}
+
+	private void ensureUndo(int n) {
+		if (undoSize + n > undo.length)
+			undo = Arrays.copyOf(undo, Math.max(undo.length * 2, undoSize + n));
+	}
+
+}
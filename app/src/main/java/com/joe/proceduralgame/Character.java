@@ -1,7 +1,6 @@
 package com.joe.proceduralgame;
 
 import android.media.MediaPlayer;
-import android.opengl.GLES20;
 import android.opengl.Matrix;
 
 import java.util.LinkedList;
@@ -25,6 +24,8 @@ public abstract class Character extends AttackableEntity {
 	public final int deathAnimationTime;
 
 	public float destx, destz;
+	/** Position at the start of the current simulation step, to interpolate between steps */
+	public float prevPosx, prevPosz;
 	public int dir = 1;
 	public float speed = 1.5f;
 	public int state = 0;
@@ -133,6 +134,16 @@ public abstract class Character extends AttackableEntity {
 		}
 	}
 
+	/**
+	 * Remembers the current position as where the current simulation step started.
+	 *
+	 * Called at the start of every step, before anything moves.
+	 */
+	public void beginStep() {
+		prevPosx = posx;
+		prevPosz = posz;
+	}
+
 	public void attack(AttackableEntity target) {
 		if (target.posx > posx)
 			setDirection(1);
@@ -209,13 +220,21 @@ public abstract class Character extends AttackableEntity {
 		if (state != newState) {
 			stateActionPerformed = false;
 			state = newState;
-			stateStartTime = System.currentTimeMillis();
+			stateStartTime = currentRoom.getTime();
 		}
 	}
 
 	public void destroy() {
 		quad.destroy();
 	}
+
+	@Override
+	protected void unload(TextureManager tex) {
+		if (attackSound != null) {
+			attackSound.release();
+			attackSound = null;
+		}
+	}
 	
 	public boolean isPlayerOwned() {
 		return groupID == GROUP_PLAYER;
@@ -233,7 +252,7 @@ public abstract class Character extends AttackableEntity {
 		if (effectiveDamage <= 0)
 			return;
 		takeDamage(effectiveDamage);
-		currentRoom.addDamageDisplay(new DamageDisplay(effectiveDamage, quad.textureUnit, posx, posz));
+		currentRoom.addDamageDisplay(new DamageDisplay(effectiveDamage, posx, posz, currentRoom.getTime()));
 	}
 
 	public Action[] getPossibleActions() {
@@ -365,31 +384,16 @@ public abstract class Character extends AttackableEntity {
 	}
 
 	/**
-	 * Set up any necessary draw parameters.
-	 * Called before this Character is drawn.
-	 *
-	 * @param shaderProgram int handle for the active shader program
-	 * @param mVPMatrix float[16] View Projection matrix
-	 */
-	protected final void preDraw(int shaderProgram, float[] mVPMatrix) {
-		if (actedMark) {
-			int multiplyHandle = GLES20.glGetUniformLocation(shaderProgram, "uColorMultiplier");
-			GLES20.glUniform4f(multiplyHandle, .6f, .6f, .6f, 1);
-		}
-	}
-
-	/**
-	 * Clean up any necessary draw parameters.
-	 * Called after this Character is drawn.
+	 * Adds this Character's quad as it currently looks, dimmed if it has acted this phase, along
+	 * with how far it moved during the last step.
 	 *
-	 * @param shaderProgram int handle for the active shader program
-	 * @param mVPMatrix float[16] View Projection matrix
+	 * @param sprites the list to add to
 	 */
-	protected final void postDraw(int shaderProgram, float[] mVPMatrix) {
-		if (actedMark) {
-			int multiplyHandle = GLES20.glGetUniformLocation(shaderProgram, "uColorMultiplier");
-			GLES20.glUniform4f(multiplyHandle, 1, 1, 1, 1);
-		}
+	protected final void emitSprite(SpriteList sprites) {
+		Sprite sprite = sprites.add(quad);
+		sprite.setMotion(posx - prevPosx, posz - prevPosz);
+		if (actedMark)
+			sprite.setColor(.6f, .6f, .6f, 1);
 	}
 
 }
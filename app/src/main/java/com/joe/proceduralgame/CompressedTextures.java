@@ -0,0 +1,29 @@
+package com.joe.proceduralgame;
+
+/**
+ * The drawables that have mipmapped ETC1 versions in res/raw.
+ *
+ * Generated by tools/textures from textures.txt, don't edit it by hand.
+ */
+public final class CompressedTextures {
+
+	private static final int[] DRAWABLES = {R.drawable.atlas_static};
+	private static final int[] ETC1_KTX = {R.raw.atlas_static_etc1};
+
+	/**
+	 * Gets the ETC1 version of a drawable.
+	 *
+	 * @param textureID the resource id of the drawable
+	 * @return the resource id of its KTX file, or 0 if it has none
+	 */
+	public static int getETC1(int textureID) {
+		for (int i = 0; i < DRAWABLES.length; i++) {
+			if (DRAWABLES[i] == textureID)
+				return ETC1_KTX[i];
+		}
+		return 0;
+	}
+
+	private CompressedTextures() {}
+
+}
@@ -39,8 +39,9 @@ public class Controller {
 		selectedCharacter = character;
 		renderer.setFocus(character);
 		int movesLeft = character.getMoveDistance() - character.getSquaresTraversed();
-		int[][] moveOptions = manager.currentRoom.getRange(character.gridRow, character.gridCol, movesLeft);
+		int[] moveOptions = manager.currentRoom.getRangeSquares(character.gridRow, character.gridCol, movesLeft);
 		renderer.showMoveOptions(moveOptions);
+		renderer.showThreats(Character.GROUP_ENEMY);
 	}
 
 	/**
@@ -50,10 +51,20 @@ public class Controller {
 		selectedCharacter = null;
 		renderer.setFocus(null);
 		renderer.hideMoveOptions();
+		renderer.hideThreats();
 		gui.hideActionPane();
 		gui.hideCharacterSummary();
 	}
 
+	/**
+	 * Called by the DungeonManager when the party has walked into another room.
+	 */
+	public void onRoomEntered() {
+		deselectCharacter();
+		selectedAction = null;
+		renderer.hideAttackOptions();
+	}
+
 	//Thread entry point from GUIManager
 	/**
 	 * Handles when the user purposefully deselects their selected action.
@@ -96,7 +107,7 @@ public class Controller {
 		} else if (manager.getPhaseGroup() == Character.GROUP_PLAYER && selectedCharacter != null) {
 			if (!selectedCharacter.actedThisTurn) {
 				int movesLeft = selectedCharacter.getMoveDistance() - selectedCharacter.getSquaresTraversed();
-				int[][] moveOptions = manager.currentRoom.getRange(selectedCharacter.gridRow, selectedCharacter.gridCol, movesLeft);
+				int[] moveOptions = manager.currentRoom.getRangeSquares(selectedCharacter.gridRow, selectedCharacter.gridCol, movesLeft);
 				renderer.showMoveOptions(moveOptions);
 				Action[] actions = selectedCharacter.getPossibleActions();
 				gui.showActionPane(actions, getActionVisibilities(selectedCharacter, actions));
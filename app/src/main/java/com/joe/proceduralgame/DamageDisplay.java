@@ -12,23 +12,31 @@ public class DamageDisplay {
     public static final long LIFETIME = 500;
 
     public long creationTime;
-    //In order left to right
+    private final int amount;
+    //In order left to right. Built when first shown, so the simulation never touches them
     private Quad[] digits;
     private float posx, posz;
-    private float[] baseMatrix = new float[16];
+    private float[] baseMatrix;
     private int ndigits;
 
     /**
      * Creates a display for the given damage amount.
      *
      * @param amount the amount of damage taken
-     * @param textureUnit the texture unit of the atlas containing damage numbers
+     * @param creationTime the room time in ms at which the damage was taken
      */
-    public DamageDisplay(int amount, int textureUnit, float posx, float posz) {
+    public DamageDisplay(int amount, float posx, float posz, long creationTime) {
+        this.amount = amount;
         this.posx = posx;
         this.posz = posz;
-        creationTime = System.currentTimeMillis();
+        this.creationTime = creationTime;
+    }
 
+    /**
+     * Creates the digit quads and the matrix they are placed relative to.
+     */
+    private void build() {
+        baseMatrix = new float[16];
         Matrix.setIdentityM(baseMatrix, 0);
         Matrix.translateM(baseMatrix, 0, posx, 0, posz);
         Matrix.rotateM(baseMatrix, 0, Character.TILT_ANGLE, -1, 0, 0);
@@ -45,26 +53,28 @@ public class DamageDisplay {
         partialAmount = amount;
         for (int i = 0; i < ndigits; i++) {
             //TODO tile multiple digits right to left
-            digits[ndigits - i - 1] = Quad.createDynamicQuad(Quad.Type.DECORATION, new float[16], textureUnit);
+            digits[ndigits - i - 1] = Quad.createDynamicQuad(Quad.Type.DECORATION, new float[16], 0);
             setQuadDigit(digits[ndigits - i - 1], partialAmount % 10);
             partialAmount /= 10;
         }
     }
 
     /**
-     * Draws the numbers.
+     * Adds a sprite for each digit, risen according to the display's age.
      *
-     * @param shaderProgram the int handle on the shader program for rendering
-     * @param mVPMatrix the View Projection matrix of the viewer
-     * @param uiTextureUnit the int unit of the atlas containing the digit textures
+     * @param sprites the list to add to
+     * @param uiTexture the GL texture name of the atlas containing the digit textures
+     * @param time the current room time in ms
      */
-    public void draw(int shaderProgram, float[] mVPMatrix, int uiTextureUnit) {
+    public void emitSprites(SpriteList sprites, int uiTexture, long time) {
+        if (digits == null)
+            build();
         float offx = -(ndigits - 1) / 2.0f;
-        float offy = (System.currentTimeMillis() - creationTime) * .001f * SPEED_Y;
+        float offy = (time - creationTime) * .001f * SPEED_Y;
         for (int i = 0; i < digits.length; i++) {
-            digits[i].textureUnit = uiTextureUnit;
+            digits[i].texture = uiTexture;
             Matrix.translateM(digits[i].modelMatrix, 0, baseMatrix, 0, (offx + i) * SCALE_X, offy, 0);
-            digits[i].draw(shaderProgram, mVPMatrix);
+            sprites.add(digits[i]);
         }
     }
 
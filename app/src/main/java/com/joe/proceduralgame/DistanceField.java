@@ -0,0 +1,164 @@
+package com.joe.proceduralgame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A flow field over a Room's grid leading to the nearest unit of one group.
+ *
+ * Built by a single breadth first search seeded from every free square adjacent to a unit of the
+ * target group. Each square stores its distance to the nearest such square and which unit that
+ * square is next to, so any number of actors can find their nearest target and the path to it in
+ * O(path length). The field is only rebuilt when the room's grid version changes.
+ */
+public class DistanceField {
+
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private final Room room;
+	private final int targetGroup;
+	private int version;
+	private boolean built = false;
+
+	// units of the target group, in the order they were seeded
+	private final List<Character> targets = new ArrayList<Character>();
+	// steps from each square to the nearest square adjacent to a target
+	private int[] distance = new int[0];
+	// index in targets of the unit each square leads to
+	private int[] nearest = new int[0];
+	private int[] queue = new int[0];
+
+	/**
+	 * Creates a field leading to the units of a group. It is built lazily on first use.
+	 *
+	 * @param room the room whose grid the field covers
+	 * @param targetGroup the group id of the units to lead to
+	 */
+	public DistanceField(Room room, int targetGroup) {
+		this.room = room;
+		this.targetGroup = targetGroup;
+	}
+
+	/**
+	 * Rebuilds the field if the room's grid has changed since it was last built.
+	 */
+	public void update() {
+		if (built && version == room.getGridVersion())
+			return;
+		build();
+		version = room.getGridVersion();
+		built = true;
+	}
+
+	/**
+	 * Gets the distance from a free square to the nearest free square adjacent to a target.
+	 *
+	 * @return the number of steps or UNREACHABLE
+	 */
+	public int getDistance(int row, int col) {
+		update();
+		return distance[row * room.width + col];
+	}
+
+	/**
+	 * Finds the target nearest to a unit and a shortest path to a square adjacent to it.
+	 *
+	 * The unit's own square is excluded from the path, as with Room.findPath(). If the unit is
+	 * already adjacent to a target the path is empty.
+	 *
+	 * @param row the row of the acting unit
+	 * @param col the column of the acting unit
+	 * @param path filled with the squares to walk along
+	 * @return the nearest target or null if no target can be reached
+	 */
+	public Character findNearestTarget(int row, int col, IntPath path) {
+		update();
+		final int width = room.width;
+		path.clear(width);
+
+		for (Character c : targets) {
+			if (Math.abs(c.gridRow - row) + Math.abs(c.gridCol - col) == 1)
+				return c;
+		}
+
+		int cur = row * width + col;
+		int curDistance = UNREACHABLE;
+		do {
+			int curRow = cur / width;
+			int curCol = cur % width;
+			int next = -1;
+			for (int i = 0; i < 4; i++) {
+				int adjRow = curRow + PathContext.NEIGHBOR_ROWS[i];
+				int adjCol = curCol + PathContext.NEIGHBOR_COLS[i];
+				if (adjRow < 0 || adjRow >= room.length || adjCol < 0 || adjCol >= width)
+					continue;
+				int adj = adjRow * width + adjCol;
+				if (distance[adj] < curDistance) {
+					curDistance = distance[adj];
+					next = adj;
+				}
+			}
+			if (next == -1)
+				return null;
+			path.add(next);
+			cur = next;
+		} while (curDistance > 0);
+
+		return targets.get(nearest[cur]);
+	}
+
+	private void build() {
+		final int width = room.width;
+		final int length = room.length;
+		final Entity[][] grid = room.grid;
+		final int nSquares = width * length;
+		if (distance.length < nSquares) {
+			distance = new int[nSquares];
+			nearest = new int[nSquares];
+			queue = new int[nSquares];
+		}
+		for (int i = 0; i < nSquares; i++)
+			distance[i] = UNREACHABLE;
+
+		//seed from the free squares around every target
+		targets.clear();
+		int head = 0, tail = 0;
+		for (Character c : room.characters) {
+			if (c.getGroupID() != targetGroup)
+				continue;
+			int index = targets.size();
+			targets.add(c);
+			for (int i = 0; i < 4; i++) {
+				int adjRow = c.gridRow + PathContext.NEIGHBOR_ROWS[i];
+				int adjCol = c.gridCol + PathContext.NEIGHBOR_COLS[i];
+				if (adjRow < 0 || adjRow >= length || adjCol < 0 || adjCol >= width)
+					continue;
+				int adj = adjRow * width + adjCol;
+				if (grid[adjRow][adjCol] == null && distance[adj] == UNREACHABLE) {
+					distance[adj] = 0;
+					nearest[adj] = index;
+					queue[tail++] = adj;
+				}
+			}
+		}
+
+		while (head < tail) {
+			int cur = queue[head++];
+			int curRow = cur / width;
+			int curCol = cur % width;
+			for (int i = 0; i < 4; i++) {
+				int adjRow = curRow + PathContext.NEIGHBOR_ROWS[i];
+				int adjCol = curCol + PathContext.NEIGHBOR_COLS[i];
+				if (adjRow < 0 || adjRow >= length || adjCol < 0 || adjCol >= width)
+					continue;
+				int adj = adjRow * width + adjCol;
+				if (grid[adjRow][adjCol] == null && distance[adj] == UNREACHABLE) {
+					distance[adj] = distance[cur] + 1;
+					nearest[adj] = nearest[cur];
+					queue[tail++] = adj;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,312 @@
+package com.joe.proceduralgame;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.joe.proceduralgame.entities.Door;
+
+/**
+ * A square grid of rooms connected through doors on their shared walls.
+ *
+ * Every room is reachable from the first. The layout is decided up front from the seed, and each
+ * room is generated when it first comes near the party. Rooms within the load distance of the
+ * current room, counted in doors, are prepared on a background thread so walking into one needs
+ * no more than its GL upload. Rooms that fall beyond it are handed to the GL thread to unload, and
+ * keep their layout and entities so they come back the same.
+ */
+public class Dungeon {
+
+	/** The sides of a room, which its doors are on */
+	public static final int SIDE_NORTH = 0, SIDE_EAST = 1, SIDE_SOUTH = 2, SIDE_WEST = 3;
+	/** The default number of rooms on each side of the dungeon */
+	public static final int DEFAULT_SIZE = 6;
+	/** The default number of doors away from the current room within which rooms are kept loaded */
+	public static final int DEFAULT_LOAD_DISTANCE = 1;
+	//Chance of a door between two neighbouring rooms that are already connected some other way
+	private static final float EXTRA_DOOR_CHANCE = .2f;
+
+	private final long seed;
+	private final int size;
+	private int loadDistance = DEFAULT_LOAD_DISTANCE;
+	//Offset of the door on each side of each room, indexed by 4 * room + side, -1 for no door
+	private final int[] doorOffsets;
+	//Indexed by row * size + col, null until generated
+	private final Room[] rooms;
+	//The door on each side of each room, indexed like doorOffsets, null until generated
+	private final Door[] doors;
+	//Whether each room has been handed to the preparer and not unloaded since
+	private final boolean[] resident;
+	private int current;
+
+	//Rooms that fell out of the load distance, for the GL thread to unload
+	private final Queue<Room> unloadQueue = new ConcurrentLinkedQueue<Room>();
+	private final ExecutorService preparer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Room Preparer Thread");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	public Dungeon(long seed) {
+		this(seed, DEFAULT_SIZE);
+	}
+
+	/**
+	 * Lays out a dungeon and generates its first room, in the north west corner. The first room is
+	 * generated from the dungeon's seed itself, so it has the layout of a lone room of that seed.
+	 *
+	 * @param seed the seed of everything random about the dungeon
+	 * @param size the number of rooms on each side
+	 */
+	public Dungeon(long seed, int size) {
+		this.seed = seed;
+		this.size = size;
+		doorOffsets = new int[4 * size * size];
+		rooms = new Room[size * size];
+		doors = new Door[4 * size * size];
+		resident = new boolean[size * size];
+		Arrays.fill(doorOffsets, -1);
+		layOut(new Random(seed));
+		current = 0;
+		stream();
+	}
+
+	/**
+	 * Decides where the doors are: a random spanning tree of the rooms so every room can be
+	 * reached, plus a few extra doors so there are loops.
+	 */
+	private void layOut(Random rand) {
+		boolean[] visited = new boolean[size * size];
+		int[] stack = new int[size * size];
+		int[] sides = new int[4];
+		int top = 0;
+		stack[top++] = 0;
+		visited[0] = true;
+		while (top > 0) {
+			int room = stack[top - 1];
+			int nSides = 0;
+			for (int side = 0; side < 4; side++) {
+				int neighbour = getNeighbour(room, side);
+				if (neighbour != -1 && !visited[neighbour])
+					sides[nSides++] = side;
+			}
+			if (nSides == 0) {
+				top--;
+				continue;
+			}
+			int side = sides[rand.nextInt(nSides)];
+			int neighbour = getNeighbour(room, side);
+			addDoor(room, side, rand);
+			visited[neighbour] = true;
+			stack[top++] = neighbour;
+		}
+
+		for (int room = 0; room < size * size; room++) {
+			for (int side = SIDE_EAST; side <= SIDE_SOUTH; side++) {
+				if (getNeighbour(room, side) != -1 && doorOffsets[4 * room + side] == -1
+						&& rand.nextFloat() < EXTRA_DOOR_CHANCE)
+					addDoor(room, side, rand);
+			}
+		}
+	}
+
+	/**
+	 * Puts a door in the wall between a room and its neighbour, at the same offset on both sides.
+	 */
+	private void addDoor(int room, int side, Random rand) {
+		//rooms are at least this wide along the wall, and doors never go in the last square
+		int wallLength = side == SIDE_NORTH || side == SIDE_SOUTH ? RoomGenerator.MIN_WIDTH
+				: RoomGenerator.MIN_LENGTH;
+		int offset = rand.nextInt(wallLength - 1);
+		doorOffsets[4 * room + side] = offset;
+		doorOffsets[4 * getNeighbour(room, side) + (side + 2) % 4] = offset;
+	}
+
+	/**
+	 * @return the index of the room next to a room on a side, or -1 past the edge of the dungeon
+	 */
+	private int getNeighbour(int room, int side) {
+		int row = room / size, col = room % size;
+		switch (side) {
+		case SIDE_NORTH:
+			return row > 0 ? room - size : -1;
+		case SIDE_EAST:
+			return col < size - 1 ? room + 1 : -1;
+		case SIDE_SOUTH:
+			return row < size - 1 ? room + size : -1;
+		default:
+			return col > 0 ? room - 1 : -1;
+		}
+	}
+
+	/**
+	 * Generates a room and links its doors to the doors of any generated neighbours.
+	 */
+	private Room generate(int index) {
+		long roomSeed = index == 0 ? seed : mix(seed + index * 0x9e3779b97f4a7c15L);
+		RoomGenerator gen = new RoomGenerator(roomSeed);
+		gen.setDoors(Arrays.copyOfRange(doorOffsets, 4 * index, 4 * index + 4));
+		Room room = new Room();
+		room.generator = gen;
+		gen.generate(room);
+		rooms[index] = room;
+
+		for (EdgeEntity e : room.edgeEntities) {
+			if (!(e instanceof Door))
+				continue;
+			Door door = (Door) e;
+			int side = getSide(room, door);
+			doors[4 * index + side] = door;
+			Door other = doors[4 * getNeighbour(index, side) + (side + 2) % 4];
+			if (other != null) {
+				door.link = other;
+				other.link = door;
+			}
+		}
+		return room;
+	}
+
+	/**
+	 * Generates the rooms near the current room and has them prepared, and queues the rooms that
+	 * are now too far away to be unloaded.
+	 */
+	private void stream() {
+		//breadth first through the doors, out to the load distance
+		int[] distances = new int[size * size];
+		Arrays.fill(distances, -1);
+		Queue<Integer> frontier = new ArrayDeque<Integer>();
+		distances[current] = 0;
+		frontier.add(current);
+		while (!frontier.isEmpty()) {
+			int room = frontier.remove();
+			if (distances[room] == loadDistance)
+				continue;
+			for (int side = 0; side < 4; side++) {
+				int neighbour = getNeighbour(room, side);
+				if (doorOffsets[4 * room + side] >= 0 && distances[neighbour] == -1) {
+					distances[neighbour] = distances[room] + 1;
+					frontier.add(neighbour);
+				}
+			}
+		}
+
+		//generate them all before preparing any, so every door is linked before it is loaded
+		for (int i = 0; i < rooms.length; i++) {
+			if (distances[i] != -1 && rooms[i] == null)
+				generate(i);
+		}
+		for (int i = 0; i < rooms.length; i++) {
+			final Room room = rooms[i];
+			if (distances[i] != -1 && !resident[i]) {
+				resident[i] = true;
+				unloadQueue.remove(room);
+				preparer.execute(new Runnable() {
+					@Override
+					public void run() {
+						room.prepare();
+					}
+				});
+			} else if (distances[i] == -1 && resident[i]) {
+				resident[i] = false;
+				unloadQueue.add(room);
+			}
+		}
+	}
+
+	/**
+	 * Makes the room on the other side of a door the current room, and streams rooms in and out
+	 * around it.
+	 *
+	 * @param door a door of the current room that leads somewhere
+	 * @return the new current room
+	 */
+	public Room enter(Door door) {
+		Room room = door.link.currentRoom;
+		for (int i = 0; i < rooms.length; i++) {
+			if (rooms[i] == room)
+				current = i;
+		}
+		stream();
+		return room;
+	}
+
+	/**
+	 * Gets the room the party is in.
+	 */
+	public Room getCurrentRoom() {
+		return rooms[current];
+	}
+
+	/**
+	 * Takes the next room that has fallen beyond the load distance. The GL thread should unload it.
+	 *
+	 * @return the room or null if there are none left
+	 */
+	public Room pollUnloadedRoom() {
+		return unloadQueue.poll();
+	}
+
+	/**
+	 * Has every generated room forget its GL objects, for when the GL context has been lost.
+	 *
+	 * @see Room#invalidateGraphics()
+	 */
+	public void invalidateGraphics() {
+		for (Room room : rooms) {
+			if (room != null)
+				room.invalidateGraphics();
+		}
+	}
+
+	/**
+	 * Sets how many doors away from the current room rooms are kept prepared and loaded. Takes
+	 * effect the next time a room is entered.
+	 *
+	 * @param loadDistance the distance, at least 1 so the rooms through the current room's doors
+	 *                     are always ready, DEFAULT_LOAD_DISTANCE by default
+	 */
+	public void setLoadDistance(int loadDistance) {
+		if (loadDistance < 1)
+			throw new IllegalArgumentException("Load distance must be at least 1: " + loadDistance);
+		this.loadDistance = loadDistance;
+	}
+
+	/**
+	 * Gets the square just inside a door, which a character stands on to go through it.
+	 *
+	 * @return {row, col} of the square
+	 */
+	public static int[] getDoorSquare(Room room, Door door) {
+		int row = Math.round(door.posz - room.originz);
+		int col = Math.round(door.posx - room.originx);
+		return new int[] {Math.max(0, Math.min(room.length - 1, row)),
+				Math.max(0, Math.min(room.width - 1, col))};
+	}
+
+	/**
+	 * Gets the side of its room that a door on the border is on.
+	 */
+	private static int getSide(Room room, Door door) {
+		if (door.dir == EdgeEntity.DIR_HORIZONTAL)
+			return door.posz < room.originz ? SIDE_NORTH : SIDE_SOUTH;
+		else
+			return door.posx < room.originx ? SIDE_WEST : SIDE_EAST;
+	}
+
+	//splitmix64's finalizer, so neighbouring rooms get unrelated seeds
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+}
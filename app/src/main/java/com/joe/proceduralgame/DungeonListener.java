@@ -0,0 +1,77 @@
+package com.joe.proceduralgame;
+
+/**
+ * Receives the events of a DungeonManager that concern anything outside the simulation, such as
+ * the renderer, the controller and the GUI.
+ *
+ * Every method is called on the simulation thread with the DungeonManager locked.
+ */
+public interface DungeonListener {
+
+	/** Ignores every event, for running the simulation without a display */
+	DungeonListener NONE = new DungeonListener() {
+		@Override
+		public void onFocus(Entity focus) {}
+		@Override
+		public void onPhaseTransitionBegin(int phaseGroup) {}
+		@Override
+		public void onPhaseTransitionEnd() {}
+		@Override
+		public void onBecomeTranquil() {}
+		@Override
+		public void onStepped(long stepTime, long stepNanos) {}
+		@Override
+		public void onRoomEntered(Room room) {}
+		@Override
+		public void onEntityRemoved(Entity entity) {}
+	};
+
+	/**
+	 * Called when the view should follow an entity.
+	 *
+	 * @param focus the entity to follow
+	 */
+	void onFocus(Entity focus);
+
+	/**
+	 * Called when a new phase begins, before the room pauses for the phase transition.
+	 *
+	 * @param phaseGroup the group id of the group whose phase it is
+	 */
+	void onPhaseTransitionBegin(int phaseGroup);
+
+	/**
+	 * Called when the phase transition is over.
+	 */
+	void onPhaseTransitionEnd();
+
+	/**
+	 * Called every time nothing is acting in the room any more, after any phase change or AI move
+	 * has been commanded.
+	 */
+	void onBecomeTranquil();
+
+	/**
+	 * Called after each batch of simulation steps taken by the simulation thread.
+	 *
+	 * @param stepTime the clock time in ns up to which the simulation has run
+	 * @param stepNanos the length of a simulation step in ns
+	 */
+	void onStepped(long stepTime, long stepNanos);
+
+	/**
+	 * Called when the party has walked through a door and the current room has changed.
+	 *
+	 * @param room the new current room
+	 */
+	void onRoomEntered(Room room);
+
+	/**
+	 * Called when an entity has been removed from the current room for good, such as a character
+	 * that has died, so whatever it loaded can be released.
+	 *
+	 * @param entity the removed entity
+	 */
+	void onEntityRemoved(Entity entity);
+
+}
@@ -1,27 +1,41 @@
 package com.joe.proceduralgame;
 
+import com.joe.proceduralgame.entities.Door;
 import com.joe.proceduralgame.entities.characters.Archer;
 import com.joe.proceduralgame.entities.characters.Ghoul;
 import com.joe.proceduralgame.entities.characters.Serpul;
 import com.joe.proceduralgame.entities.characters.SkeletonWarrior;
 import com.joe.proceduralgame.entities.characters.Swordsman;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class DungeonManager extends Thread {
 
 	public static final int PHASE_TRANSITION_TIME = 1500;
-
-	private DungeonRenderer dungeonRenderer;
-	private Controller controller;
-	private GUIManager guiManager;
+	/** Default number of simulation steps per second */
+	public static final int DEFAULT_TICK_RATE = 100;
+	/** Default most steps taken at once to catch up after a stall before time is dropped */
+	public static final int DEFAULT_MAX_CATCH_UP_STEPS = 5;
+	/** The seed of the dungeon played by default */
+	public static final long DUNGEON_SEED = 17;
+
+	private DungeonListener listener = DungeonListener.NONE;
 	
 	boolean running = false;
-	long waitMS = 10;
+	private GameClock clock = GameClock.SYSTEM;
+	/** The fixed length of every simulation step in ns */
+	private long stepNanos = 1000000000L / DEFAULT_TICK_RATE;
+	private int maxCatchUpSteps = DEFAULT_MAX_CATCH_UP_STEPS;
 	
 	Character leader;
 	Room currentRoom;
+	/** The rooms the party can walk to through doors, null if the manager plays out a lone room */
+	private Dungeon dungeon;
 	
 	/**
 	 * true if the player is in a room free of danger and can act freely.
@@ -41,20 +55,45 @@ public class DungeonManager extends Thread {
 	 * The last commanded player owned Character
 	 */
 	private Character lastPlayerCommandedCharacter = null;
+	/** Whether the units of each group are moved by the AI, indexed by group id */
+	private final boolean[] aiControlled = {false, true};
+	/** Reusable path for carrying out AI moves */
+	private final IntPath aiPath = new IntPath();
+	/** The planner of each group's AI moves, indexed by group id */
+	private final EnemyPlanner[] planners = {new EnemyPlanner(), new EnemyPlanner()};
+	/** The AI move being planned in the background, null if none is */
+	private Future<EnemyPlanner.Plan> pendingPlan;
+	/** The situation pendingPlan is being planned for */
+	private EnemyPlanner.Situation pendingSituation;
 
 	public DungeonManager() {
 		this.setName("Dungeon Manager Thread");
 		initialize();
 	}
+
+	/**
+	 * Creates a manager for a room that has already been generated and populated, for example to
+	 * simulate a battle without a display.
+	 *
+	 * @param room the room to play out
+	 */
+	public DungeonManager(Room room) {
+		this.setName("Dungeon Manager Thread");
+		currentRoom = room;
+		for (Character c : room.characters) {
+			if (c.isPlayerOwned()) {
+				leader = c;
+				break;
+			}
+		}
+	}
 	
 	/**
 	 * Load the skeleton of the dungeon.
 	 */
 	public void initialize() {
-		RoomGenerator gen = new RoomGenerator(17);
-		currentRoom = new Room();
-		currentRoom.generator = gen;
-		gen.generate(currentRoom);
+		dungeon = new Dungeon(DUNGEON_SEED);
+		currentRoom = dungeon.getCurrentRoom();
 		
 		leader = new Swordsman();
 		currentRoom.addCharacter(leader);
@@ -86,17 +125,29 @@ public class DungeonManager extends Thread {
 	}
 	
 	public void update(float dt) { // TODO synchronize with touch events that affect the manager
-		long time = System.currentTimeMillis();
+		long time = currentRoom.getTime();
+
+		for (Character c : currentRoom.characters)
+			c.beginStep();
+
+		Iterator<DamageDisplay> displays = currentRoom.damageDisplays.iterator();
+		while (displays.hasNext()) {
+			if (time - displays.next().creationTime >= DamageDisplay.LIFETIME)
+				displays.remove();
+		}
 
 		if (transitioningPhase) {
 			if (time - transitionStartTime >= PHASE_TRANSITION_TIME) {
 				transitioningPhase = false;
-				guiManager.hidePhaseOverlay();
+				listener.onPhaseTransitionEnd();
 				becomeTranquil();
 			}
 			return;
 		}
 
+		if (pendingPlan != null && pendingPlan.isDone())
+			finishAIMove();
+
 		boolean allWaiting = true;
 		Iterator<Character> iterator = currentRoom.characters.iterator();
 		while (iterator.hasNext()) {
@@ -118,6 +169,9 @@ public class DungeonManager extends Thread {
 				if (time - c.stateStartTime >= c.deathAnimationTime) {
 					iterator.remove(); //remove here to avoid remove while iterating exception
 					currentRoom.removeEntity(c);
+					listener.onEntityRemoved(c);
+					if (!neutral && !hasGroup(currentRoom, Character.GROUP_ENEMY))
+						becomeNeutral();
 				}
 			} else if (c.state == Character.STATE_ATTACKING) {
 				if (!c.stateActionPerformed) {
@@ -147,6 +201,118 @@ public class DungeonManager extends Thread {
 
 		if (!neutral && !tranquil && allWaiting)
 			becomeTranquil();
+
+		if (neutral && allWaiting && dungeon != null) {
+			Door door = findDoorUnderParty();
+			if (door != null)
+				enterRoom(door);
+		}
+	}
+
+	/**
+	 * Ends the battle once no enemies are left, so the party can walk around freely.
+	 */
+	private void becomeNeutral() {
+		cancelAIMove();
+		neutral = true;
+		tranquil = true;
+		waitingToEndPhase = false;
+		transitioningPhase = false;
+		phaseGroup = Character.GROUP_PLAYER;
+		for (Character c : currentRoom.characters)
+			c.phaseReset();
+	}
+
+	/**
+	 * Finds a door that leads somewhere with a player's character standing just inside it.
+	 *
+	 * @return the door or null if there is none
+	 */
+	private Door findDoorUnderParty() {
+		for (EdgeEntity e : currentRoom.edgeEntities) {
+			if (!(e instanceof Door) || ((Door) e).link == null)
+				continue;
+			int[] square = Dungeon.getDoorSquare(currentRoom, (Door) e);
+			Entity occupant = currentRoom.grid[square[0]][square[1]];
+			if (occupant instanceof Character && ((Character) occupant).isPlayerOwned())
+				return (Door) e;
+		}
+		return null;
+	}
+
+	/**
+	 * Moves the party through a door into the room on the other side. The party is placed on the
+	 * free squares nearest the door without standing in any doorway, so nobody walks straight back.
+	 *
+	 * @param door a door of the current room that leads somewhere
+	 */
+	private void enterRoom(Door door) {
+		Room from = currentRoom;
+		Room to = dungeon.enter(door);
+		int[] entrance = Dungeon.getDoorSquare(to, door.link);
+		to.catchUpTime(from);
+
+		List<Character> party = new ArrayList<>();
+		for (Character c : from.characters) {
+			if (c.isPlayerOwned())
+				party.add(c);
+		}
+		for (Character c : party) {
+			from.removeEntity(c);
+			int[] square = findEntranceSquare(to, entrance[0], entrance[1]);
+			c.posx = c.prevPosx = to.originx + square[1];
+			c.posz = c.prevPosz = to.originz + square[0];
+			to.addCharacter(c);
+			c.phaseReset();
+			if (c.graphicLoaded)
+				c.updateModelMatrix();
+		}
+		currentRoom = to;
+
+		listener.onRoomEntered(to);
+		listener.onFocus(leader);
+		if (hasGroup(to, Character.GROUP_ENEMY)) {
+			neutral = false;
+			startBattle();
+		}
+	}
+
+	/**
+	 * Finds the free square closest to a square that isn't just inside a door.
+	 *
+	 * @return {row, col} of the square
+	 */
+	private static int[] findEntranceSquare(Room room, int row, int col) {
+		boolean[] doorways = new boolean[room.width * room.length];
+		for (EdgeEntity e : room.edgeEntities) {
+			if (e instanceof Door) {
+				int[] square = Dungeon.getDoorSquare(room, (Door) e);
+				doorways[square[0] * room.width + square[1]] = true;
+			}
+		}
+		int[] result = null;
+		int resultDist = Integer.MAX_VALUE;
+		for (int r = 0; r < room.length; r++) {
+			for (int c = 0; c < room.width; c++) {
+				int dist = Math.abs(r - row) + Math.abs(c - col);
+				if (dist < resultDist && room.grid[r][c] == null && !doorways[r * room.width + c]) {
+					resultDist = dist;
+					result = new int[] {r, c};
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if any units of a group are left in a room.
+	 */
+	private static boolean hasGroup(Room room, int group) {
+		for (Character c : room.characters) {
+			if (c.getGroupID() == group)
+				return true;
+		}
+		return false;
 	}
 
 	/**
@@ -172,11 +338,11 @@ public class DungeonManager extends Thread {
 		phaseGroup = newPhaseGroup;
 		if (phaseGroup == Character.GROUP_PLAYER) {
 			if (lastPlayerCommandedCharacter != null) {
-				dungeonRenderer.setFocus(lastPlayerCommandedCharacter);
+				listener.onFocus(lastPlayerCommandedCharacter);
 			} else {
 				for (Character c : currentRoom.characters) {
 					if (c.isPlayerOwned()) {
-						dungeonRenderer.setFocus(c);
+						listener.onFocus(c);
 						break;
 					}
 				}
@@ -185,45 +351,102 @@ public class DungeonManager extends Thread {
 		//temporariy become non-tranquil as a phase indicator is shown on the GUI
 		tranquil = false;
 		transitioningPhase = true;
-		transitionStartTime = System.currentTimeMillis();
-		guiManager.showPhaseOverlay(phaseGroup);
+		transitionStartTime = currentRoom.getTime();
+		listener.onPhaseTransitionBegin(phaseGroup);
 	}
 
 	/**
-	 * Issue an enemy command.
+	 * Begins the battle with the player's phase, as if the enemy's phase had just ended.
+	 */
+	public void startBattle() {
+		beginPhase(Character.GROUP_PLAYER);
+	}
+
+	/**
+	 * Issue an AI command for the current phase's group.
 	 *
-	 * This method is called every time all units are waiting repeatedly until the enemy phaseGroup is
-	 * over.
+	 * This method is called every time all units are waiting repeatedly until the AI controlled
+	 * phaseGroup is over. While the simulation thread is running the move is planned in the
+	 * background and carried out by a later update(), otherwise it is planned and carried out
+	 * straight away.
 	 */
-	private void makeEnemyMove() {
-		Character actor = null;
-		for (Character c : currentRoom.characters) {
-			if (c.getGroupID() == Character.GROUP_ENEMY && !c.actedThisTurn) {
-				actor = c;
-				break;
-			}
-		}
-		if (actor == null)
+	private void makeAIMove() {
+		EnemyPlanner.Situation situation = new EnemyPlanner.Situation(currentRoom, phaseGroup);
+		if (!situation.hasActors())
 			return;
+		if (running) {
+			pendingSituation = situation;
+			pendingPlan = planners[phaseGroup].submit(situation);
+		} else {
+			carryOutPlan(planners[phaseGroup].plan(situation));
+		}
+	}
 
-		Character bestTarget = null;
-		LinkedList<int[]> bestPath = null;
-		for (Character c : currentRoom.characters) {
-			if (c.isPlayerOwned()) {
-				LinkedList<int[]> path = currentRoom.findPath(actor.gridRow, actor.gridCol, c.gridRow,
-						c.gridCol, false);
-				if (path == null)
-					continue;
-				if (bestPath == null || path.size() < bestPath.size()) {
-					bestTarget = c;
-					bestPath = path;
+	/**
+	 * Carries out the plan made in the background, or plans again if the room changed meanwhile.
+	 */
+	private void finishAIMove() {
+		EnemyPlanner.Situation situation = pendingSituation;
+		EnemyPlanner.Plan plan;
+		try {
+			plan = pendingPlan.get();
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			plan = null;
+		}
+		pendingPlan = null;
+		pendingSituation = null;
+
+		if (situation.room != currentRoom || situation.gridVersion != currentRoom.getGridVersion()) {
+			makeAIMove();
+			return;
+		}
+		if (plan == null) {
+			//planning failed, so pass rather than stall the phase
+			for (Character c : situation.units) {
+				if (c.getGroupID() == phaseGroup && !c.actedThisTurn) {
+					markCharacterActed(c);
+					break;
 				}
 			}
-		}
-		if (bestTarget == null)
+			becomeTranquil();
 			return;
+		}
+		carryOutPlan(plan);
+	}
 
-		commandAction(actor, bestPath, Action.basicAttack, bestTarget);
+	/**
+	 * Commands the actor of a plan to walk to its square then attack its target, or only walk
+	 * there.
+	 */
+	private void carryOutPlan(EnemyPlanner.Plan plan) {
+		Character actor = plan.actor;
+		LinkedList<int[]> path = null;
+		if ((plan.row != actor.gridRow || plan.col != actor.gridCol)
+				&& currentRoom.findPath(actor.gridRow, actor.gridCol, plan.row, plan.col, true, aiPath))
+			path = aiPath.toList();
+
+		if (plan.target != null) {
+			commandAction(actor, path, Action.basicAttack, plan.target);
+		} else if (path != null) {
+			commandMove(actor, path);
+			markCharacterActed(actor);
+		} else {
+			//nothing worth doing, so pass rather than stall the phase
+			markCharacterActed(actor);
+			becomeTranquil();
+		}
+	}
+
+	/**
+	 * Forgets the AI move being planned, if any. The planner finishes it but it is never carried
+	 * out.
+	 */
+	private void cancelAIMove() {
+		if (pendingPlan != null)
+			pendingPlan.cancel(false);
+		pendingPlan = null;
+		pendingSituation = null;
 	}
 
 	/**
@@ -242,7 +465,7 @@ public class DungeonManager extends Thread {
 			assert !actor.actedThisTurn;
 		}
 		tranquil = false;
-		dungeonRenderer.setFocus(actor);
+		listener.onFocus(actor);
 		if (path != null && path.size() > 0) {
 			actor.enqueueAction(action, target);
 			actor.walkPath(path);
@@ -266,7 +489,7 @@ public class DungeonManager extends Thread {
 			assert path.size() <= actor.getMoveDistance() - actor.getSquaresTraversed();
 		}
 		tranquil = false;
-		dungeonRenderer.setFocus(actor);
+		listener.onFocus(actor);
 		actor.clearAction();
 		actor.walkPath(path);
 		if (actor.isPlayerOwned())
@@ -288,10 +511,10 @@ public class DungeonManager extends Thread {
 
 		if (waitingToEndPhase)
 			endPhase();
-		else if (phaseGroup == Character.GROUP_ENEMY)
-			makeEnemyMove();
+		else if (aiControlled[phaseGroup])
+			makeAIMove();
 
-		controller.onBecomeTranquil();
+		listener.onBecomeTranquil();
 	}
 
 	/**
@@ -327,30 +550,82 @@ public class DungeonManager extends Thread {
 	}
 
 	/**
-	 * Sets the dungeon renderer so this thread can send it information
+	 * Gets the rooms the party can walk to.
 	 *
-	 * @param renderer the current dungeon renderer
+	 * @return the dungeon, or null if the manager plays out a lone room
 	 */
-	public void setDungeonRenderer(DungeonRenderer renderer) {
-		this.dungeonRenderer = renderer;
+	public Dungeon getDungeon() {
+		return dungeon;
 	}
 
 	/**
-	 * Sets the controller so this thread can check its information
+	 * Sets the listener that is told about everything outside the simulation that should react
 	 *
-	 * @param controller the controller
+	 * @param listener the listener, DungeonListener.NONE by default
 	 */
-	public void setController(Controller controller) {
-		this.controller = controller;
+	public void setListener(DungeonListener listener) {
+		this.listener = listener;
 	}
 
 	/**
-	 * Sets the guiManager so this thread can display information
+	 * Sets whether the units of a group are moved by the AI during their phase.
 	 *
-	 * @param guiManager the current guiManager
+	 * @param group the group id
+	 * @param aiControlled true for the AI to command the group, false to wait for commands
 	 */
-	public void setGUIManager(GUIManager guiManager) {
-		this.guiManager = guiManager;
+	public void setAIControlled(int group, boolean aiControlled) {
+		this.aiControlled[group] = aiControlled;
+	}
+
+	/**
+	 * Sets the planner that chooses the moves of a group while it is AI controlled, for example an
+	 * MctsPlanner for stronger enemies.
+	 *
+	 * @param group the group id
+	 * @param planner the planner, an EnemyPlanner with the default evaluator and budget by default
+	 */
+	public void setPlanner(int group, EnemyPlanner planner) {
+		//the old planner's threads would otherwise live as long as the app
+		if (planners[group] != planner)
+			planners[group].shutdown();
+		planners[group] = planner;
+	}
+
+	/**
+	 * Sets the clock the simulation loop runs on. Must be called before the thread is started.
+	 *
+	 * @param clock the clock to use, GameClock.SYSTEM by default
+	 */
+	public void setClock(GameClock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Gets the clock the simulation loop runs on.
+	 */
+	public GameClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Sets how many fixed simulation steps are taken per second of clock time. Must be called
+	 * before the thread is started.
+	 *
+	 * @param ticksPerSecond the number of steps per second, DEFAULT_TICK_RATE by default
+	 */
+	public void setTickRate(int ticksPerSecond) {
+		stepNanos = 1000000000L / ticksPerSecond;
+	}
+
+	/**
+	 * Sets the most steps taken at once to catch up after a stall. Any time beyond that is dropped
+	 * so the simulation slows down rather than spiralling. Must be called before the thread is
+	 * started.
+	 *
+	 * @param maxCatchUpSteps the number of steps, DEFAULT_MAX_CATCH_UP_STEPS by default
+	 */
+	public void setMaxCatchUpSteps(int maxCatchUpSteps) {
+		this.maxCatchUpSteps = maxCatchUpSteps;
 	}
 
 	/**
@@ -362,29 +637,43 @@ public class DungeonManager extends Thread {
 		return tranquil;
 	}
 
+	/**
+	 * Advances the simulation by one fixed step.
+	 *
+	 * Called by the simulation thread while running, or directly to run the simulation without it.
+	 */
+	public void step() {
+		currentRoom.advanceTime(stepNanos);
+		update(stepNanos * 1e-9f);
+	}
+
 	//Thread entry point
 	public void run() {
 		running = true;
-		long lastUpdateCall = System.currentTimeMillis();
+		long lastTime = clock.nanoTime();
+		long accumulator = 0; //clock time not yet simulated
 		while (running) {
-			long currentTime;
-			synchronized (this) {
-				currentTime = System.currentTimeMillis();
-				final long timeElapsed = currentTime - lastUpdateCall;
-				lastUpdateCall = currentTime;
-				update(timeElapsed * .001f);
-			}
+			long now = clock.nanoTime();
+			accumulator += now - lastTime;
+			lastTime = now;
 
-			currentTime = System.currentTimeMillis();
-			long dt = currentTime - lastUpdateCall;
-			if (dt < waitMS) {
-				try {
-					Thread.sleep(waitMS - dt);
-				} catch (InterruptedException e) {}
+			synchronized (this) {
+				int steps = 0;
+				while (accumulator >= stepNanos && steps < maxCatchUpSteps) {
+					step();
+					accumulator -= stepNanos;
+					steps++;
+				}
+				//too far behind, drop whole steps instead of catching up
+				accumulator %= stepNanos;
+				if (steps > 0)
+					listener.onStepped(now - accumulator, stepNanos);
 			}
 
-			//display fps measure
-			guiManager.displayFPS(dungeonRenderer.fpsMeasure);
+			//wait for the next step to be due
+			try {
+				clock.sleep(stepNanos - accumulator - (clock.nanoTime() - now));
+			} catch (InterruptedException e) {}
 		}
 	}
 
@@ -1,7 +1,6 @@
 package com.joe.proceduralgame;
 
 import java.nio.FloatBuffer;
-import java.util.Iterator;
 import java.util.List;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -13,7 +12,6 @@ import android.opengl.Matrix;
 import android.util.Log;
 
 import com.joe.proceduralgame.Quad.Type;
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
 
 public class DungeonRenderer implements GLSurfaceView.Renderer {
 
@@ -29,7 +27,8 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 	private TextureManager textureManager;
 	Controller gameController;
 	
-	private int program;
+	private ShaderProgram shader;
+	private SpriteBatch spriteBatch;
 	private DungeonManager dungeonManager;
 	private FloatBuffer vertexBuffer;
 	private final float[] mVPMatrix = new float[16];
@@ -38,7 +37,7 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 	public float nearWidth, nearHeight;
 	float camx, camy = 8, camz;
 	float destx, destz;
-	private Entity focus;
+	private volatile Entity focus;
 
 	private long lastDrawTime;
 	public double fpsMeasure; //The current fps measured from this thread
@@ -46,10 +45,27 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 	private long lastMeasure = 0; //The time when the last measure was taken
 	
 	private Quad characterSelector;
-	private int uiTextureUnit;
+	private int uiTexture;
 	/** Quads used to highlight squares a character can move to this turn. May be null */
 	private Quad[] moveOptionQuads = null;
 	private Quad[] attackOptionQuads = null;
+	private long attackOptionsShownTime;
+	/** The group whose threatened squares are shaded, or NO_THREATS */
+	private volatile int threatGroup = NO_THREATS;
+	private static final int NO_THREATS = -1;
+	//a quad over every square of threatQuadsRoom, made when threats are first shaded there
+	private Quad[] threatQuads;
+	private Room threatQuadsRoom;
+
+	/** Frames captured by the simulation thread, drawn without locking the DungeonManager */
+	private final SnapshotBuffer snapshots = new SnapshotBuffer();
+	/** true once the room and UI quads are loaded and frames can be captured */
+	private boolean loaded = false;
+	/** The room whose static geometry and lightmap are loaded, the only room frames are captured of */
+	private volatile Room loadedRoom;
+	//The step time of the last frame captured, to capture a frame on the GL thread when swapping rooms
+	private long lastStepTime, lastStepNanos;
+	private float alpha = 1; //interpolation alpha of the frame being drawn
 	
 	public static void catchGLError() {
 		int a1 = GLES20.GL_INVALID_ENUM;
@@ -69,82 +85,135 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 	}
 
 	/**
-	 * Renders the game
+	 * Renders a captured frame
+	 *
+	 * @param frame the snapshot to draw, which is not modified while it is drawn
 	 */
-	public void draw() {
-	    GLES20.glUseProgram(program);
-
-		int texturelessHandle = GLES20.glGetUniformLocation(program, "uTextureless");
-		GLES20.glUniform1i(texturelessHandle, 0); //draw all quads with textures by default
-		int normallessHandle = GLES20.glGetUniformLocation(program, "uNormalless");
-		GLES20.glUniform1i(normallessHandle, 0); //draw all quads with normals by default
-		int emissiveHandle = GLES20.glGetUniformLocation(program, "uEmissive");
-		GLES20.glUniform1i(emissiveHandle, 0); //draw all quads without emission by default
-		int colorMultiplierHandle = GLES20.glGetUniformLocation(program, "uColorMultiplier");
-		GLES20.glUniform4f(colorMultiplierHandle, 1, 1, 1, 1); //draw all quads without color modification by default
+	private void draw(RenderSnapshot frame) {
+		alpha = frame.interpolationAlpha(dungeonManager.getClock().nanoTime());
+	    shader.use();
+
+		GLES20.glUniform1i(shader.texturelessHandle, 0); //draw all quads with textures by default
+		GLES20.glUniform1i(shader.normallessHandle, 0); //draw all quads with normals by default
+		GLES20.glUniform1i(shader.emissiveHandle, 0); //draw all quads without emission by default
+		GLES20.glUniform4f(shader.colorMultiplierHandle, 1, 1, 1, 1); //draw all quads without color modification by default
 
 		//Draw static room geometry
 	    GLES20.glEnable(GLES20.GL_CULL_FACE);
-	    dungeonManager.currentRoom.draw(program, mVPMatrix);
+	    frame.room.draw(shader, mVPMatrix, textureManager);
     	catchGLError();
 
 		//Draw box around selected Character
-		GLES20.glUniform1i(emissiveHandle, 1);
-    	if (gameController.selectedCharacter != null) {
-    		float posx = Math.round(gameController.selectedCharacter.posx); // TODO Could be optimiized to only do these calcs when nec.
-    		float posz = Math.round(gameController.selectedCharacter.posz);
-    		Matrix.setIdentityM(characterSelector.modelMatrix, 0);
-    		Matrix.translateM(characterSelector.modelMatrix, 0, posx, .1f, posz);
-    		Matrix.rotateM(characterSelector.modelMatrix, 0, 90, 1, 0, 0);
-    		characterSelector.draw(program, mVPMatrix);
-    	}
-
-		//Highlight reachable squares
-		if (moveOptionQuads != null) {
-			GLES20.glUniform1i(texturelessHandle, 1); //draw all quads blank white
-			GLES20.glUniform4f(colorMultiplierHandle, 81 / 255.f, 145 / 255.f, 255 / 255.f, .5f);
-			for (Quad q : moveOptionQuads) {
-				q.drawWithoutTexture(program, mVPMatrix);
-			}
-			GLES20.glUniform1i(texturelessHandle, 0);
-			GLES20.glUniform4f(colorMultiplierHandle, 1, 1, 1, 1);
-		}
+		GLES20.glUniform1i(shader.emissiveHandle, 1);
+		drawSprites(frame.selector, true);
+
+		//Shade threatened squares, then highlight reachable squares over them
+		GLES20.glUniform1i(shader.texturelessHandle, 1); //draw all quads blank white
+		drawSprites(frame.threats, false);
+		drawSprites(frame.moveOptions, false);
+		GLES20.glUniform1i(shader.texturelessHandle, 0);
 
 		//Draw targets around attackable squares
-		if (attackOptionQuads != null) {
-			for (Quad q : attackOptionQuads) {
-				q.draw(program, mVPMatrix);
-			}
-		}
-		GLES20.glUniform1i(emissiveHandle, 0);
+		drawSprites(frame.attackOptions, true);
+		GLES20.glUniform1i(shader.emissiveHandle, 0);
 
 		//Draw edge entities
 	    GLES20.glDisable(GLES20.GL_CULL_FACE);
-	    for (EdgeEntity e : dungeonManager.currentRoom.edgeEntities) {
-	    	e.draw(program, mVPMatrix);
-	    }
+		drawSprites(frame.edgeEntities, true);
 
 		//Draw entities
-		GLES20.glUniform1i(normallessHandle, 1);
-	    for (Entity e : dungeonManager.currentRoom.entities) {
-	    	e.draw(program, mVPMatrix);
-	    }
-		GLES20.glUniform1i(normallessHandle, 0);
+		GLES20.glUniform1i(shader.normallessHandle, 1);
+		drawSprites(frame.entities, true);
+		GLES20.glUniform1i(shader.normallessHandle, 0);
 
 		//Draw numerical damage displays
 		GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-		GLES20.glUniform1i(emissiveHandle, 1);
-		long t = System.currentTimeMillis();
-		Iterator<DamageDisplay> iter = dungeonManager.currentRoom.damageDisplays.iterator();
-		while (iter.hasNext()) {
-			DamageDisplay display = iter.next();
-			if (t - display.creationTime >= DamageDisplay.LIFETIME)
-				iter.remove();
-			else
-				display.draw(program, mVPMatrix, uiTextureUnit);
-		}
+		GLES20.glUniform1i(shader.emissiveHandle, 1);
+		drawSprites(frame.damageDigits, true);
 		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-		GLES20.glUniform1i(emissiveHandle, 0);
+		GLES20.glUniform1i(shader.emissiveHandle, 0);
+	}
+
+	/**
+	 * Draws a list of sprites through the sprite batch, one draw call per run of a texture.
+	 *
+	 * @param sprites the sprites to draw
+	 * @param textured false to draw without setting any texture uniforms, for textureless quads
+	 */
+	private void drawSprites(SpriteList sprites, boolean textured) {
+		spriteBatch.draw(sprites, shader, mVPMatrix, alpha, textured ? textureManager : null);
+	}
+
+	/**
+	 * Captures the current state of the room as a frame for the GL thread to draw.
+	 *
+	 * Called on the simulation thread with the DungeonManager locked, after each batch of steps.
+	 *
+	 * @param stepTime the clock time in ns up to which the simulation has run
+	 * @param stepNanos the length of a simulation step in ns
+	 */
+	public void publishFrame(long stepTime, long stepNanos) {
+		lastStepTime = stepTime;
+		lastStepNanos = stepNanos;
+		Room room = dungeonManager.currentRoom;
+		//a room the party has just entered is captured once the GL thread has loaded it
+		if (!loaded || room != loadedRoom)
+			return;
+		long time = room.getTime();
+		RenderSnapshot frame = snapshots.beginWrite();
+		frame.room = room;
+		frame.stepTime = stepTime;
+		frame.stepNanos = stepNanos;
+
+		//box around selected Character
+		if (gameController.selectedCharacter != null) {
+			float posx = Math.round(gameController.selectedCharacter.posx);
+			float posz = Math.round(gameController.selectedCharacter.posz);
+			Matrix.setIdentityM(characterSelector.modelMatrix, 0);
+			Matrix.translateM(characterSelector.modelMatrix, 0, posx, .1f, posz);
+			Matrix.rotateM(characterSelector.modelMatrix, 0, 90, 1, 0, 0);
+			frame.selector.add(characterSelector);
+		}
+
+		int group = threatGroup;
+		if (group != NO_THREATS) {
+			if (threatQuadsRoom != room) {
+				threatQuads = createSquareQuads(room, .04f);
+				threatQuadsRoom = room;
+			}
+			ThreatMap threats = room.getThreatMap(group);
+			for (int square = 0; square < threatQuads.length; square++) {
+				int count = threats.getThreat(square / room.width, square % room.width);
+				if (count > 0)
+					frame.threats.add(threatQuads[square]).setColor(1, 40 / 255.f, 40 / 255.f,
+							Math.min(.6f, .2f * count));
+			}
+		}
+
+		if (moveOptionQuads != null) {
+			for (Quad q : moveOptionQuads)
+				frame.moveOptions.add(q).setColor(81 / 255.f, 145 / 255.f, 255 / 255.f, .5f);
+		}
+
+		//Spin the attack option selectors
+		if (attackOptionQuads != null) {
+			float angle = (time - attackOptionsShownTime) % 2000 * .001f * 180.0f;
+			for (Quad q : attackOptionQuads)
+				Matrix.rotateM(frame.attackOptions.add(q).modelMatrix, 0, angle, 0, 0, 1);
+		}
+
+		for (EdgeEntity e : room.edgeEntities)
+			e.emitSprites(frame.edgeEntities);
+		for (Entity e : room.entities)
+			e.emitSprites(frame.entities);
+		frame.edgeEntities.sortByTexture();
+		frame.entities.sortByTexture();
+
+		//expired displays are removed by the simulation
+		for (DamageDisplay display : room.damageDisplays)
+			display.emitSprites(frame.damageDigits, uiTexture, time);
+
+		snapshots.publish();
 	}
 
 	public void setFocus(Entity focus) {
@@ -175,19 +244,15 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 	    // Calculate the projection and view transformation
 	    Matrix.multiplyMM(mVPMatrix, 0, mProjectionMatrix, 0, mViewMatrix, 0);
 
-		//Spin the attack option selectors
-		if (attackOptionQuads != null) {
-			for (Quad q : attackOptionQuads) {
-				Matrix.rotateM(q.modelMatrix, 0, (float) dt * 180.0f, 0, 0, 1);
-			}
-		}
-		
 	    catchGLError();
+		streamRooms();
+		textureManager.deleteUnreferenced();
+		textureManager.uploadDecoded();
 		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 	    catchGLError();
-		synchronized (dungeonManager) {
-			draw();
-		}
+		RenderSnapshot frame = snapshots.acquire();
+		if (frame != null)
+			draw(frame);
 	    catchGLError(); //TODO use these for testing, then clean up
 
 		lastDrawTime = time;
@@ -196,14 +261,15 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 	/**
 	 * Highlights squares to indicate where a character can move
 	 *
-	 * @param squares an array of {row, col} int[]s of all the squares to highlight
+	 * @param squares the packed row * width + col of all the squares to highlight
 	 */
-	public void showMoveOptions(int[][] squares) {
+	public void showMoveOptions(int[] squares) {
+		Room room = dungeonManager.currentRoom;
 		moveOptionQuads = new Quad[squares.length];
 		for (int i = 0; i < squares.length; i++) {
 			float[] modelMatrix = new float[16];
-			float posx = dungeonManager.currentRoom.originx + squares[i][1];
-			float posz = dungeonManager.currentRoom.originz + squares[i][0];
+			float posx = room.originx + squares[i] % room.width;
+			float posz = room.originz + squares[i] / room.width;
 			Matrix.setIdentityM(modelMatrix, 0);
 			Matrix.translateM(modelMatrix, 0, posx, .05f, posz);
 			Matrix.rotateM(modelMatrix, 0, 90, 1, 0, 0);
@@ -212,6 +278,37 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 		}
 	}
 
+	/**
+	 * Shades the squares the units of a group could attack this turn, darker the more of them
+	 * could. The shading follows the units as they move.
+	 *
+	 * @param group the group id of the attacking units
+	 */
+	public void showThreats(int group) {
+		threatGroup = group;
+	}
+
+	/**
+	 * Stops shading threatened squares. May be called if none are shaded
+	 */
+	public void hideThreats() {
+		threatGroup = NO_THREATS;
+	}
+
+	//Makes a flat quad over every square of a room, in packed square order
+	private static Quad[] createSquareQuads(Room room, float height) {
+		Quad[] quads = new Quad[room.width * room.length];
+		for (int i = 0; i < quads.length; i++) {
+			float[] modelMatrix = new float[16];
+			Matrix.setIdentityM(modelMatrix, 0);
+			Matrix.translateM(modelMatrix, 0, room.originx + i % room.width, height,
+					room.originz + i / room.width);
+			Matrix.rotateM(modelMatrix, 0, 90, 1, 0, 0);
+			quads[i] = Quad.createDynamicQuad(Type.DECORATION, modelMatrix, 0);
+		}
+		return quads;
+	}
+
 	/**
 	 * Marks the targets for possible attack
 	 *
@@ -226,13 +323,14 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 			Matrix.translateM(modelMatrix, 0, t.posx, .05f, t.posz);
 			Matrix.rotateM(modelMatrix, 0, 90, 1, 0, 0);
 			Matrix.scaleM(modelMatrix, 0, .8f, .8f, 1);
-			Quad q = Quad.createDynamicQuad(Type.DECORATION, modelMatrix, uiTextureUnit);
+			Quad q = Quad.createDynamicQuad(Type.DECORATION, modelMatrix, uiTexture);
 			q.uvOrigin[0] = 4f / 8f;
 			q.uvOrigin[1] = 2f / 8f;
 			q.uvScale[0] = 1f / 8f;
 			q.uvScale[1] = 1f / 8f;
 			attackOptionQuads[i++] = q;
 		}
+		attackOptionsShownTime = dungeonManager.currentRoom.getTime();
 	}
 
 	/**
@@ -277,11 +375,44 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 		}
 	}
 	
-	private void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion {
+	/**
+	 * Unloads the rooms the dungeon no longer needs and loads the current room if the party has
+	 * walked into another one.
+	 */
+	private void streamRooms() {
+		Dungeon dungeon = dungeonManager.getDungeon();
+		if (!loaded || dungeon == null)
+			return;
+		Room room = dungeon.pollUnloadedRoom();
+		if (room == null && dungeonManager.currentRoom == loadedRoom)
+			return;
+
+		synchronized (dungeonManager) {
+			for (; room != null; room = dungeon.pollUnloadedRoom()) {
+				//the party may have walked back to it before it was unloaded
+				if (room != dungeonManager.currentRoom)
+					room.unload(textureManager);
+			}
+			//free the units of what was unloaded before loading anything new
+			textureManager.deleteUnreferenced();
+			if (dungeonManager.currentRoom != loadedRoom) {
+				dungeonManager.currentRoom.load(textureManager);
+				loadedRoom = dungeonManager.currentRoom;
+				catchGLError();
+				moveOptionQuads = null;
+				attackOptionQuads = null;
+				Log.d("game", "Entered room, " + textureManager.getUsageSummary());
+				//capture the new room at once, so the old one is never drawn with the new lightmap
+				publishFrame(lastStepTime, lastStepNanos);
+			}
+		}
+	}
+
+	private void load(TextureManager tex) {
 		Quad.loadBuffer();
 
-		uiTextureUnit = tex.referenceLoad(R.drawable.ui_atlas);
-		characterSelector = Quad.createDynamicQuad(Type.DECORATION, new float[16], uiTextureUnit);
+		uiTexture = tex.referenceLoad(R.drawable.ui_atlas);
+		characterSelector = Quad.createDynamicQuad(Type.DECORATION, new float[16], uiTexture);
 		characterSelector.uvOrigin[0] = 3f / 8f;
 		characterSelector.uvOrigin[1] = 0f;
 		characterSelector.uvScale[0] = 1f / 8f;
@@ -343,7 +474,7 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 			int vertShader = gameView.loadShader(GLES20.GL_VERTEX_SHADER, R.raw.vbasic);
 			int fragShader = gameView.loadShader(GLES20.GL_FRAGMENT_SHADER, R.raw.fbasic);
 
-			program = GLES20.glCreateProgram();
+			int program = GLES20.glCreateProgram();
 			catchGLError();
 			catchGLError();
 			GLES20.glAttachShader(program, vertShader);
@@ -352,18 +483,23 @@ public class DungeonRenderer implements GLSurfaceView.Renderer {
 			catchGLError();
 			GLES20.glLinkProgram(program);
 			catchGLError();
+			shader = new ShaderProgram(program);
+			spriteBatch = new SpriteBatch();
 
 			GLES20.glClearColor(0, 0, 0, 1);
 			catchGLError();
 
-			try {
-				dungeonManager.currentRoom.load(textureManager);
-				load(textureManager);
-				catchGLError();
-			} catch (NoFreeTextureUnitsExcpetion e1) {
-				// TODO Auto-generated catch block
-				e1.printStackTrace();
-			}
+			//everything loaded in a previous context died with it, so it is all loaded from scratch
+			textureManager.invalidate();
+			Dungeon dungeon = dungeonManager.getDungeon();
+			if (dungeon != null)
+				dungeon.invalidateGraphics();
+			dungeonManager.currentRoom.invalidateGraphics();
+			dungeonManager.currentRoom.load(textureManager);
+			loadedRoom = dungeonManager.currentRoom;
+			load(textureManager);
+			catchGLError();
+			loaded = true;
 
 			lastDrawTime = System.currentTimeMillis();
 		}
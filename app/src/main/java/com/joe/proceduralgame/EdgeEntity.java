@@ -1,7 +1,5 @@
 package com.joe.proceduralgame;
 
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
-
 public abstract class EdgeEntity {
 	public static final int DIR_VERTICAL = 0, DIR_HORIZONTAL = 1;
 	
@@ -10,7 +8,15 @@ public abstract class EdgeEntity {
 	public int edgesIndex;
 	public Room currentRoom;
 
-	public abstract void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion;
-	public abstract void draw(int shaderProgram, float[] mVPMatrix);
+	public abstract void load(TextureManager tex);
+	/**
+	 * Releases the textures taken by load(). Does nothing by default.
+	 */
+	public void unload(TextureManager tex) {}
+	/**
+	 * Adds the sprites that show this entity in its current state.
+	 * Called on the simulation thread when a frame is captured.
+	 */
+	public abstract void emitSprites(SpriteList sprites);
 
 }
@@ -0,0 +1,385 @@
+package com.joe.proceduralgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Chooses the next move of an AI controlled group by scoring every (move square, action, target)
+ * plan of every unit in the group that has yet to act.
+ *
+ * Planning works on a Situation, a copy of the room's occupancy and the units' stats taken on the
+ * simulation thread, so it can run on a background thread while the simulation carries on. It
+ * stops once its budget of time runs out and returns the best plan found so far.
+ */
+public class EnemyPlanner {
+
+	/** The default time in ms a decision may take */
+	public static final int DEFAULT_BUDGET = 20;
+	/** A budget that never runs out, so every plan is scored and results don't depend on speed */
+	public static final int NO_BUDGET = 0;
+	//Plans scored between checks of the time
+	private static final int PLANS_PER_CHECK = 32;
+
+	/**
+	 * Scores plans. Higher is better.
+	 *
+	 * Called on the planning thread, so it may only look at the Situation.
+	 */
+	public interface Evaluator {
+		/**
+		 * Scores a plan.
+		 *
+		 * @param situation the battle being planned
+		 * @param unit the index of the unit that would act
+		 * @param square the packed row * width + col of the square it would move to
+		 * @param target the index of the unit it would attack, or -1 to only move
+		 * @return the score of the plan
+		 */
+		float evaluate(Situation situation, int unit, int square, int target);
+	}
+
+	/**
+	 * A copy of everything about a room that planning looks at. Units are indexed in the order of
+	 * the room's characters.
+	 */
+	public static class Situation {
+		public final Room room;
+		public final int gridVersion;
+		public final int width, length;
+		/** Whether each packed square holds any entity */
+		public final boolean[] blocked;
+		public final Character[] units;
+		public final int[] group, square, hitPoints, strength, defense, moveDistance;
+		/** The squares each unit that may act can move to, packed, or null if it may not act */
+		public final int[][] range;
+		/**
+		 * How many units of other groups than the phase group could attack each packed square
+		 * this turn, from the room's threat maps
+		 */
+		public final int[] threat;
+		/** The same battle for searching ahead, with units indexed the same */
+		public final BattleState state;
+		//steps from each unit to every square, filled in on the planning thread as needed
+		private final int[][] distances;
+
+		/**
+		 * Copies a room. Must be called on the simulation thread.
+		 *
+		 * @param room the room to copy
+		 * @param phaseGroup the group id of the units that may act
+		 */
+		public Situation(Room room, int phaseGroup) {
+			this.room = room;
+			gridVersion = room.getGridVersion();
+			width = room.getWidth();
+			length = room.getLength();
+			blocked = new boolean[width * length];
+			for (int row = 0; row < length; row++) {
+				for (int col = 0; col < width; col++)
+					blocked[row * width + col] = room.getEntityAt(row, col) != null;
+			}
+
+			List<Character> alive = new ArrayList<>();
+			for (Character c : room.getCharacters()) {
+				if (c.getHitPoints() > 0)
+					alive.add(c);
+			}
+			int n = alive.size();
+			units = alive.toArray(new Character[n]);
+			group = new int[n];
+			square = new int[n];
+			hitPoints = new int[n];
+			strength = new int[n];
+			defense = new int[n];
+			moveDistance = new int[n];
+			range = new int[n][];
+			distances = new int[n][];
+			for (int i = 0; i < n; i++) {
+				Character c = units[i];
+				group[i] = c.getGroupID();
+				square[i] = c.gridRow * width + c.gridCol;
+				hitPoints[i] = c.getHitPoints();
+				strength[i] = c.getStrength();
+				defense[i] = c.getDefense();
+				moveDistance[i] = c.getMoveDistance();
+				if (group[i] == phaseGroup && !c.actedThisTurn)
+					range[i] = room.getRangeSquares(c.gridRow, c.gridCol,
+							c.getMoveDistance() - c.getSquaresTraversed());
+			}
+
+			Set<Integer> opponents = new HashSet<>();
+			for (int id : group) {
+				if (id != phaseGroup)
+					opponents.add(id);
+			}
+			threat = new int[width * length];
+			for (int id : opponents)
+				room.getThreatMap(id).addTo(threat);
+			state = new BattleState(room, phaseGroup);
+		}
+
+		/**
+		 * Checks if any unit may still act.
+		 */
+		public boolean hasActors() {
+			for (int[] squares : range) {
+				if (squares != null)
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Gets the number of steps a unit would take to walk to each square, around every other
+		 * unit and obstacle. Only call this on the planning thread.
+		 *
+		 * @param unit the index of the unit
+		 * @return the steps to each packed square, DistanceField.UNREACHABLE if it can't get there.
+		 * Occupied squares get the steps to stand next to them plus one.
+		 */
+		public int[] getDistances(int unit) {
+			if (distances[unit] != null)
+				return distances[unit];
+			int[] distance = new int[width * length];
+			Arrays.fill(distance, DistanceField.UNREACHABLE);
+			int[] queue = new int[width * length];
+			int head = 0, tail = 0;
+			distance[square[unit]] = 0;
+			queue[tail++] = square[unit];
+			while (head < tail) {
+				int cur = queue[head++];
+				int curRow = cur / width;
+				int curCol = cur % width;
+				for (int i = 0; i < 4; i++) {
+					int adjRow = curRow + PathContext.NEIGHBOR_ROWS[i];
+					int adjCol = curCol + PathContext.NEIGHBOR_COLS[i];
+					if (adjRow < 0 || adjRow >= length || adjCol < 0 || adjCol >= width)
+						continue;
+					int adj = adjRow * width + adjCol;
+					if (distance[adj] != DistanceField.UNREACHABLE)
+						continue;
+					distance[adj] = distance[cur] + 1;
+					//occupied squares are reached but not walked through
+					if (!blocked[adj])
+						queue[tail++] = adj;
+				}
+			}
+			distances[unit] = distance;
+			return distance;
+		}
+
+		/**
+		 * Checks if a unit standing on a square could attack another unit, with the range of
+		 * Action.basicAttack.
+		 */
+		public boolean inAttackRange(int square, int target) {
+			int other = this.square[target];
+			return Math.abs(square / width - other / width) + Math.abs(square % width - other % width) <= 1;
+		}
+	}
+
+	/**
+	 * The chosen move of one unit.
+	 */
+	public static class Plan {
+		/** The unit that acts */
+		public final Character actor;
+		/** The row and column of the square to move to, which may be where the actor stands */
+		public final int row, col;
+		/** The unit to attack once there, or null to only move */
+		public final Character target;
+		public final float score;
+
+		Plan(Character actor, int row, int col, Character target, float score) {
+			this.actor = actor;
+			this.row = row;
+			this.col = col;
+			this.target = target;
+			this.score = score;
+		}
+	}
+
+	private final Evaluator evaluator;
+	/** The time in ms a decision may take, or NO_BUDGET */
+	protected final int budget;
+	/** Results of earlier decisions, only touched by plan() */
+	protected final TranspositionTable table = new TranspositionTable();
+	//created on first use, so planners that only plan synchronously never start a thread
+	private ExecutorService executor;
+
+	/**
+	 * Creates a planner that scores plans with a TacticalEvaluator within DEFAULT_BUDGET.
+	 */
+	public EnemyPlanner() {
+		this(new TacticalEvaluator(), DEFAULT_BUDGET);
+	}
+
+	/**
+	 * @param evaluator scores the plans
+	 * @param budget the time in ms a decision may take, or NO_BUDGET
+	 */
+	public EnemyPlanner(Evaluator evaluator, int budget) {
+		this.evaluator = evaluator;
+		this.budget = budget;
+	}
+
+	/**
+	 * For planners that choose moves their own way, by overriding plan().
+	 *
+	 * @param budget the time in ms a decision may take, or NO_BUDGET
+	 */
+	protected EnemyPlanner(int budget) {
+		this(null, budget);
+	}
+
+	/**
+	 * Starts planning on the planner's background thread.
+	 *
+	 * @param situation a situation that no other thread will touch
+	 * @return the best plan found, or null if no unit may act
+	 */
+	public synchronized Future<Plan> submit(final Situation situation) {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Enemy Planner Thread");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor.submit(new Callable<Plan>() {
+			@Override
+			public Plan call() {
+				return plan(situation);
+			}
+		});
+	}
+
+	/**
+	 * Stops the planner's background thread once any plan it is working on is done. Planning
+	 * again starts a new one.
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Plans on the calling thread.
+	 *
+	 * Attacks are scored before plans that only move, so if time runs out the plans left unscored
+	 * are the ones least likely to be best. The best plan of each unit is remembered by the hash
+	 * of the board and how far the unit has walked, so later decisions skip units whose
+	 * surroundings haven't changed. The board's hash covers every unit's square and hit points, so
+	 * that only happens after another unit waits where it stands; a move or an attack changes the
+	 * board and the rest of the group is scored again.
+	 *
+	 * @param situation the battle to plan for
+	 * @return the best plan found, or null if no unit may act
+	 */
+	public Plan plan(Situation situation) {
+		long deadline = System.nanoTime() + budget * 1000000L;
+		table.newGeneration();
+		int n = situation.units.length;
+		long board = situation.state.getBoardHash();
+		long[] keys = new long[n];
+		//the best plan of each unit, as a packed BattleState move
+		int[] unitBest = new int[n];
+		float[] unitScores = new float[n];
+		boolean[] searched = new boolean[n];
+		for (int unit = 0; unit < n; unit++) {
+			if (situation.range[unit] == null)
+				continue;
+			long walked = situation.state.getSquaresTraversed(unit);
+			keys[unit] = board + (unit * 256L + walked + 1) * 0x9E3779B97F4A7C15L;
+			int entry = table.find(keys[unit]);
+			if (entry != -1 && isValid(situation, unit, (int) table.getValue(entry))) {
+				unitBest[unit] = (int) table.getValue(entry);
+				unitScores[unit] = Float.intBitsToFloat((int) (table.getValue(entry) >>> 32));
+			} else {
+				searched[unit] = true;
+				unitScores[unit] = Float.NEGATIVE_INFINITY;
+			}
+		}
+
+		int scored = 0;
+		boolean finished = true;
+		search:
+		for (int attacking = 1; attacking >= 0; attacking--) {
+			for (int unit = 0; unit < n; unit++) {
+				if (!searched[unit])
+					continue;
+				for (int square : situation.range[unit]) {
+					for (int target = attacking == 1 ? 0 : -1; target < (attacking == 1 ? n : 0); target++) {
+						if (attacking == 1 && (situation.group[target] == situation.group[unit]
+								|| !situation.inAttackRange(square, target)))
+							continue;
+						float score = evaluator.evaluate(situation, unit, square, target);
+						if (score > unitScores[unit]) {
+							unitScores[unit] = score;
+							unitBest[unit] = BattleState.move(unit, square, target);
+						}
+						if (++scored % PLANS_PER_CHECK == 0 && budget != NO_BUDGET
+								&& System.nanoTime() - deadline > 0) {
+							finished = false;
+							break search;
+						}
+					}
+				}
+			}
+		}
+
+		int best = -1;
+		for (int unit = 0; unit < n; unit++) {
+			if (situation.range[unit] == null || unitScores[unit] == Float.NEGATIVE_INFINITY)
+				continue;
+			//a unit cut short by the budget may not have its best plan, so it isn't remembered
+			if (searched[unit] && finished) {
+				table.store(keys[unit], (long) Float.floatToRawIntBits(unitScores[unit]) << 32
+						| unitBest[unit] & 0xffffffffL, situation.range[unit].length);
+			}
+			if (best == -1 || unitScores[unit] > unitScores[best])
+				best = unit;
+		}
+		if (best == -1)
+			return null;
+		int square = BattleState.getMoveSquare(unitBest[best]);
+		int target = BattleState.getMoveTarget(unitBest[best]);
+		return new Plan(situation.units[best], square / situation.width, square % situation.width,
+				target == BattleState.NO_TARGET ? null : situation.units[target], unitScores[best]);
+	}
+
+	/**
+	 * Checks if a remembered move of a unit can still be made, in case the hash of another state
+	 * collided with this one's.
+	 */
+	protected static boolean isValid(Situation situation, int unit, int move) {
+		int square = BattleState.getMoveSquare(move);
+		int target = BattleState.getMoveTarget(move);
+		if (BattleState.getMoveUnit(move) != unit || unit >= situation.units.length
+				|| situation.range[unit] == null || Arrays.binarySearch(situation.range[unit], square) < 0)
+			return false;
+		return target == BattleState.NO_TARGET || (target < situation.units.length
+				&& situation.group[target] != situation.group[unit] && situation.inAttackRange(square, target));
+	}
+
+	/**
+	 * Gets the table of results the planner reuses between decisions, for its hit and miss counts.
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+}
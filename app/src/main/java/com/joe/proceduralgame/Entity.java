@@ -1,8 +1,5 @@
 package com.joe.proceduralgame;
 
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
-
-
 public abstract class Entity {
 	public float posx, posz;
 	public int gridRow, gridCol;
@@ -26,11 +23,16 @@ public abstract class Entity {
 		}
 	}
 
-	public void graphicLoad(TextureManager tex) throws NoFreeTextureUnitsExcpetion {
+	public void graphicLoad(TextureManager tex) {
 		load(tex);
 		graphicLoaded = true;
 	}
 
+	public void graphicUnload(TextureManager tex) {
+		unload(tex);
+		graphicLoaded = false;
+	}
+
 	public Action getDefaultAction() {
 		return defaultAction;
 	}
@@ -39,8 +41,14 @@ public abstract class Entity {
 		defaultAction = action;
 	}
 
-	protected abstract void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion;
-	public abstract void draw(int shaderProgram, float[] mVPMatrix);
+	protected abstract void load(TextureManager tex);
+	/** Releases what load() took, such as texture references. Does nothing by default. */
+	protected void unload(TextureManager tex) {}
+	/**
+	 * Adds the sprites that show this entity in its current state.
+	 * Called on the simulation thread when a frame is captured.
+	 */
+	public abstract void emitSprites(SpriteList sprites);
 	/**Returns true iff the quad belongs to this entity.*/
 	public abstract boolean ownsQuad(Quad quad);
 
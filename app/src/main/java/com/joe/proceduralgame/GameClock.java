@@ -0,0 +1,37 @@
+package com.joe.proceduralgame;
+
+/**
+ * A monotonic source of time for the simulation loop.
+ *
+ * The loop only reads time and waits through its clock, so a clock that doesn't follow the wall
+ * clock runs the simulation faster (or slower) than real time.
+ */
+public interface GameClock {
+
+	/** Follows System.nanoTime() and really sleeps */
+	GameClock SYSTEM = new GameClock() {
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		@Override
+		public void sleep(long nanos) throws InterruptedException {
+			if (nanos > 0)
+				Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+		}
+	};
+
+	/**
+	 * Gets the current time in ns. Only differences between values are meaningful.
+	 */
+	long nanoTime();
+
+	/**
+	 * Waits until about nanos ns have passed on this clock.
+	 *
+	 * @param nanos the time to wait in ns, may be zero or negative
+	 */
+	void sleep(long nanos) throws InterruptedException;
+
+}
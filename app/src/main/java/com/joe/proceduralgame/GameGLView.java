@@ -1,6 +1,7 @@
 package com.joe.proceduralgame;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -10,6 +11,9 @@ import android.opengl.GLSurfaceView;
 import android.view.MotionEvent;
 
 public class GameGLView extends GLSurfaceView {
+
+	/** Disk space kept for baked lightmaps, at least 64 rooms' worth at the largest lightmap size */
+	private static final long LIGHTMAP_CACHE_BYTES = 8 * 1024 * 1024;
 	
 	private final TextureManager textureManager;
 	private GUIManager guiManager;
@@ -23,17 +27,55 @@ public class GameGLView extends GLSurfaceView {
 		setEGLContextClientVersion(2);
 		
 		textureManager = new TextureManager(context);
+		RoomLighting.setCache(new LightmapCache(new File(context.getCacheDir(), "lightmaps"),
+				LIGHTMAP_CACHE_BYTES));
 		dungeonManager = new DungeonManager();
-		dungeonManager.setGUIManager(guiManager);
 		
 		gameRenderer = new DungeonRenderer(this, dungeonManager, textureManager);
-		dungeonManager.setDungeonRenderer(gameRenderer);
 		setRenderer(gameRenderer);
 
 		gameController = new Controller(this, gameRenderer, dungeonManager, guiManager);
 		guiManager.setController(gameController);
-		dungeonManager.setController(gameController);
 		gameRenderer.gameController = gameController;
+		dungeonManager.setListener(new DungeonListener() {
+			@Override
+			public void onFocus(Entity focus) {
+				gameRenderer.setFocus(focus);
+			}
+
+			@Override
+			public void onPhaseTransitionBegin(int phaseGroup) {
+				GameGLView.this.guiManager.showPhaseOverlay(phaseGroup);
+			}
+
+			@Override
+			public void onPhaseTransitionEnd() {
+				GameGLView.this.guiManager.hidePhaseOverlay();
+			}
+
+			@Override
+			public void onBecomeTranquil() {
+				gameController.onBecomeTranquil();
+			}
+
+			@Override
+			public void onStepped(long stepTime, long stepNanos) {
+				gameRenderer.publishFrame(stepTime, stepNanos);
+				//display fps measure
+				GameGLView.this.guiManager.displayFPS(gameRenderer.fpsMeasure);
+			}
+
+			@Override
+			public void onRoomEntered(Room room) {
+				gameController.onRoomEntered();
+			}
+
+			@Override
+			public void onEntityRemoved(Entity entity) {
+				if (entity.graphicLoaded)
+					entity.graphicUnload(textureManager);
+			}
+		});
 
 		dungeonManager.start();
 	}
@@ -0,0 +1,105 @@
+package com.joe.proceduralgame;
+
+import java.util.LinkedList;
+
+/**
+ * A reusable path of grid squares stored as packed row * width + col ints.
+ *
+ * Like the LinkedList paths returned by Room.findPath(), the starting square is excluded.
+ */
+public class IntPath {
+
+	private int[] squares = new int[16];
+	private int size;
+	private int width;
+
+	/**
+	 * Gets the number of squares in this path.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the packed row * width + col of the square at index i.
+	 */
+	public int get(int i) {
+		return squares[i];
+	}
+
+	/**
+	 * Gets the row of the square at index i.
+	 */
+	public int getRow(int i) {
+		return squares[i] / width;
+	}
+
+	/**
+	 * Gets the column of the square at index i.
+	 */
+	public int getCol(int i) {
+		return squares[i] % width;
+	}
+
+	/**
+	 * Copies another path into this one.
+	 *
+	 * @param other the path to copy
+	 */
+	public void set(IntPath other) {
+		clear(other.width);
+		ensureCapacity(other.size);
+		System.arraycopy(other.squares, 0, squares, 0, other.size);
+		size = other.size;
+	}
+
+	/**
+	 * Converts this path to the LinkedList of {row, col} int[]s used by Character.walkPath().
+	 */
+	public LinkedList<int[]> toList() {
+		LinkedList<int[]> list = new LinkedList<int[]>();
+		for (int i = 0; i < size; i++) {
+			int[] square = {getRow(i), getCol(i)};
+			list.add(square);
+		}
+		return list;
+	}
+
+	/**
+	 * Empties this path.
+	 *
+	 * @param width the width of the room the next squares will be packed for
+	 */
+	void clear(int width) {
+		this.width = width;
+		size = 0;
+	}
+
+	/**
+	 * Appends a packed square to the end of this path.
+	 */
+	void add(int square) {
+		ensureCapacity(size + 1);
+		squares[size++] = square;
+	}
+
+	/**
+	 * Reverses the order of the squares, for paths that are reconstructed back to front.
+	 */
+	void reverse() {
+		for (int i = 0, j = size - 1; i < j; i++, j--) {
+			int tmp = squares[i];
+			squares[i] = squares[j];
+			squares[j] = tmp;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > squares.length) {
+			int[] grown = new int[Math.max(capacity, squares.length * 2)];
+			System.arraycopy(squares, 0, grown, 0, size);
+			squares = grown;
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.joe.proceduralgame;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lays out one lightmap tile per static quad on a square texture.
+ *
+ * Tiles are sized by the quad's size in the world, so torches and decorations get fewer texels
+ * than floors and walls, and non-square quads get non-square tiles. The densest lighting that
+ * fits on a texture within a texel budget is chosen, on the smallest texture it fits on, so small
+ * rooms get small lightmaps and only rooms too big for the budget are lit more coarsely.
+ */
+public class LightmapAtlas {
+
+	/** The largest lightmap, in texels on a side */
+	public static final int MAX_SIZE = 256;
+	/** The smallest lightmap, in texels on a side */
+	public static final int MIN_SIZE = 16;
+	/** The most texels per world unit that any quad is given */
+	public static final int MAX_TEXELS_PER_UNIT = 16;
+	/** The texels a lightmap may take unless told otherwise, a 128 x 128 texture */
+	public static final int DEFAULT_TEXEL_BUDGET = 128 * 128;
+	//Fewest texels on a tile's side, so light can still be interpolated across it
+	private static final int MIN_TILE_TEXELS = 2;
+
+	/** The width and height of the texture in texels, a power of 2 */
+	public final int size;
+	/** The texels per world unit that the quads were given */
+	public final int texelsPerUnit;
+	/** The position and size of each quad's tile in texels, indexed like the quads */
+	final int[] tileX, tileY, tileWidth, tileHeight;
+	/**
+	 * The lightmap uvs of each quad's tile as {u, v, width, height}, indexed by 4 * quad. The uvs
+	 * run between the centers of the tile's edge texels, so sampling never bleeds into a neighbour.
+	 */
+	public final float[] uvRects;
+
+	private LightmapAtlas(int size, int texelsPerUnit, int[] tileX, int[] tileY, int[] tileWidth, int[] tileHeight) {
+		this.size = size;
+		this.texelsPerUnit = texelsPerUnit;
+		this.tileX = tileX;
+		this.tileY = tileY;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		uvRects = new float[4 * tileX.length];
+		for (int i = 0; i < tileX.length; i++) {
+			uvRects[4 * i] = (tileX[i] + .5f) / size;
+			uvRects[4 * i + 1] = (tileY[i] + .5f) / size;
+			uvRects[4 * i + 2] = (tileWidth[i] - 1) / (float) size;
+			uvRects[4 * i + 3] = (tileHeight[i] - 1) / (float) size;
+		}
+	}
+
+	/**
+	 * Packs tiles for quads at the highest density that fits DEFAULT_TEXEL_BUDGET.
+	 *
+	 * @see #pack(List, int)
+	 */
+	public static LightmapAtlas pack(List<Quad> quads) {
+		return pack(quads, DEFAULT_TEXEL_BUDGET);
+	}
+
+	/**
+	 * Packs tiles for quads at the highest density that fits on a texture within the budget. The
+	 * texture is the largest power of 2 square within it, but never smaller than MIN_SIZE nor larger
+	 * than MAX_SIZE, and quads that don't fit it even at one texel per unit get a larger one.
+	 *
+	 * @param quads the quads, whose model matrices give their size in the world
+	 * @param texelBudget the most texels the texture should take
+	 * @return the layout
+	 * @throws IllegalArgumentException if even the smallest tiles don't fit on the largest texture
+	 */
+	public static LightmapAtlas pack(List<Quad> quads, int texelBudget) {
+		int n = quads.size();
+		float[] quadWidths = new float[n];
+		float[] quadHeights = new float[n];
+		for (int i = 0; i < n; i++) {
+			float[] m = quads.get(i).modelMatrix;
+			//lengths of the model's x and y axes, which the unit quad is stretched along
+			quadWidths[i] = (float) Math.sqrt(m[0] * m[0] + m[1] * m[1] + m[2] * m[2]);
+			quadHeights[i] = (float) Math.sqrt(m[4] * m[4] + m[5] * m[5] + m[6] * m[6]);
+		}
+
+		int budgetSize = MIN_SIZE;
+		while (budgetSize < MAX_SIZE && (long) budgetSize * budgetSize * 4 <= texelBudget)
+			budgetSize *= 2;
+
+		int[] tileX = new int[n], tileY = new int[n], tileWidth = new int[n], tileHeight = new int[n];
+		for (int density = MAX_TEXELS_PER_UNIT; density >= 1; density--) {
+			long area = 0;
+			for (int i = 0; i < n; i++) {
+				tileWidth[i] = Math.max(MIN_TILE_TEXELS, Math.round(quadWidths[i] * density));
+				tileHeight[i] = Math.max(MIN_TILE_TEXELS, Math.round(quadHeights[i] * density));
+				area += tileWidth[i] * tileHeight[i];
+			}
+			int size = MIN_SIZE;
+			while ((long) size * size < area)
+				size *= 2;
+			//past the budget only at one texel per unit, rather than failing outright
+			int maxSize = density > 1 ? budgetSize : MAX_SIZE;
+			for (; size <= maxSize; size *= 2) {
+				if (packShelves(size, tileX, tileY, tileWidth, tileHeight))
+					return new LightmapAtlas(size, density, tileX, tileY, tileWidth, tileHeight);
+			}
+		}
+		throw new IllegalArgumentException("Too many static quads for one lightmap: " + n);
+	}
+
+	/**
+	 * Places tiles in rows, tallest first, each row as tall as its first tile.
+	 *
+	 * @return true if every tile fit, with its position filled in
+	 */
+	private static boolean packShelves(int size, int[] tileX, int[] tileY, final int[] tileWidth,
+	                                   final int[] tileHeight) {
+		Integer[] order = new Integer[tileX.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer lhs, Integer rhs) {
+				if (tileHeight[lhs] != tileHeight[rhs])
+					return tileHeight[rhs] - tileHeight[lhs];
+				return tileWidth[rhs] - tileWidth[lhs];
+			}
+		});
+
+		int x = 0, y = 0, shelfHeight = 0;
+		for (int i : order) {
+			if (tileWidth[i] > size)
+				return false;
+			if (x + tileWidth[i] > size) {
+				y += shelfHeight;
+				x = 0;
+				shelfHeight = 0;
+			}
+			if (y + tileHeight[i] > size)
+				return false;
+			tileX[i] = x;
+			tileY[i] = y;
+			x += tileWidth[i];
+			shelfHeight = Math.max(shelfHeight, tileHeight[i]);
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,177 @@
+package com.joe.proceduralgame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps baked lightmaps on disk, so a room that has been lit before is never baked again, not even
+ * after the app restarts.
+ *
+ * Each lightmap is a small file named after its key, holding the texels in RGB 565, which is the
+ * precision the lightmap is uploaded at anyway. Files are read back through a memory map. Once the
+ * files take up more than the byte budget, the least recently used ones are deleted, judging use
+ * by their modification times.
+ */
+public class LightmapCache {
+
+	private static final int MAGIC = 0x4c4d4150; // "LMAP"
+	private static final int HEADER_BYTES = 16; // magic, key, size
+	private static final String SUFFIX = ".lmap";
+
+	private final File directory;
+	private final long maxBytes;
+
+	/**
+	 * @param directory the directory to keep the files in, created if it doesn't exist
+	 * @param maxBytes the most bytes the files may take up together
+	 */
+	public LightmapCache(File directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Reads a lightmap back if it is cached.
+	 *
+	 * @param key the key the lightmap was written with
+	 * @param pixels receives the size * size ARGB pixels, row by row
+	 * @param size the width and height of the lightmap
+	 * @return true if the lightmap was found and read into pixels
+	 */
+	public synchronized boolean read(long key, int[] pixels, int size) {
+		File file = getFile(key);
+		if (!file.isFile())
+			return false;
+		RandomAccessFile in = null;
+		try {
+			in = new RandomAccessFile(file, "r");
+			FileChannel channel = in.getChannel();
+			long length = channel.size();
+			if (length != HEADER_BYTES + 2L * size * size)
+				return false;
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (map.getInt() != MAGIC || map.getLong() != key || map.getInt() != size)
+				return false;
+			ShortBuffer texels = map.asShortBuffer();
+			for (int i = 0; i < size * size; i++)
+				pixels[i] = from565(texels.get(i));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			close(in);
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Caches a lightmap, then evicts the least recently used lightmaps if over budget.
+	 *
+	 * @param key identifies everything the lightmap was baked from
+	 * @param pixels the size * size ARGB pixels, row by row
+	 * @param size the width and height of the lightmap
+	 */
+	public synchronized void write(long key, int[] pixels, int size) {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			return;
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 2 * size * size);
+		buffer.putInt(MAGIC).putLong(key).putInt(size);
+		for (int i = 0; i < size * size; i++)
+			buffer.putShort(to565(pixels[i]));
+		buffer.flip();
+
+		//write beside the real file and rename, so a reader never sees half a file
+		File file = getFile(key);
+		File temp = new File(directory, file.getName() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(temp);
+			FileChannel channel = out.getChannel();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		} catch (IOException e) {
+			e.printStackTrace();
+			temp.delete();
+			return;
+		} finally {
+			close(out);
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			return;
+		}
+		evict();
+	}
+
+	/**
+	 * Deletes the least recently used files until the rest fit in the budget.
+	 */
+	private void evict() {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		long total = 0;
+		for (File f : files) {
+			if (f.getName().endsWith(SUFFIX))
+				total += f.length();
+		}
+		if (total <= maxBytes)
+			return;
+
+		final long[] lastUsed = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			lastUsed[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer lhs, Integer rhs) {
+				return lastUsed[lhs] < lastUsed[rhs] ? -1 : lastUsed[lhs] > lastUsed[rhs] ? 1 : 0;
+			}
+		});
+		for (int i = 0; i < order.length && total > maxBytes; i++) {
+			File f = files[order[i]];
+			if (!f.getName().endsWith(SUFFIX))
+				continue;
+			long length = f.length();
+			if (f.delete())
+				total -= length;
+		}
+	}
+
+	private File getFile(long key) {
+		return new File(directory, String.format("%016x", key) + SUFFIX);
+	}
+
+	private static short to565(int color) {
+		return (short) (((color >> 8) & 0xf800) | ((color >> 5) & 0x07e0) | ((color >> 3) & 0x001f));
+	}
+
+	private static int from565(short texel) {
+		int red = (texel >> 11) & 0x1f;
+		int green = (texel >> 5) & 0x3f;
+		int blue = texel & 0x1f;
+		return 0xff000000 | ((red << 3 | red >> 2) << 16) | ((green << 2 | green >> 4) << 8) | (blue << 3 | blue >> 2);
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable == null)
+			return;
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,454 @@
+package com.joe.proceduralgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plans the moves of a group with Monte Carlo tree search over a BattleState, for a stronger
+ * difficulty than the TacticalEvaluator's greedy plans.
+ *
+ * Each level of the tree is the move of one unit of the phase's group, so a path from the root
+ * to the end of the phase is a joint move of the whole group. Below the tree a rollout plays out
+ * the rest of the phase, the other group's phase and the group's next phase with random moves,
+ * preferring attacks, and is scored by the share of hit points each side lost, with some weight on
+ * how close the group ends up to its enemies. That weight grows with every decision in which no
+ * unit was hurt, so a group that can't win an exchange still closes in sooner or later rather than
+ * keeping out of reach forever.
+ *
+ * The search runs in rounds so it is deterministic for a given seed and thread count. Each round
+ * selects a batch of leaves on the planning thread, using a virtual loss so the leaves differ, then
+ * plays out their rollouts in parallel. Each rollout draws from its own random sequence derived
+ * from the seed and its number, and adds its result to the tree's atomic counters as soon as it is
+ * done. Sums don't depend on the order they are added in, so neither does the next round.
+ *
+ * Once a search is done, the rest of the joint move it found is kept in the planner's
+ * TranspositionTable, keyed by the state after each move. The group's later decisions in the
+ * phase find their move there instead of searching again, unless the battle went differently,
+ * for example because a unit died.
+ */
+public class MctsPlanner extends EnemyPlanner {
+
+	/** The default number of rollouts per decision */
+	public static final int DEFAULT_ITERATIONS = 4000;
+	/** Rollouts per thread in each round */
+	public static final int BATCH_PER_THREAD = 8;
+	//Exploration constant of UCT, for rewards in [0, 1]
+	private static final double EXPLORATION = 0.7;
+	//Phase ends a rollout plays on past, so it stops at the end of the group's next phase
+	private static final int ROLLOUT_PHASES = 2;
+	//Chance in 256 that a rollout attacks when it can
+	private static final int ATTACK_CHANCE = 224;
+	/** The fewest rollouts through a remembered move for it to be reused without searching */
+	public static final int MIN_REUSE_VISITS = 100;
+	//Share of a rollout's reward that goes to closing in, only enough to break ties at first
+	private static final double APPROACH_WEIGHT = 0.05;
+	//Share added for each decision since a unit was last hurt
+	private static final double IMPATIENCE = 0.01;
+	//Most of the reward that ever goes to closing in, so winning always counts for more
+	private static final double MAX_APPROACH_WEIGHT = 0.75;
+	//Rewards are summed as fixed point so the sums are exact
+	private static final long REWARD_SCALE = 1 << 20;
+
+	private static class Node {
+		final Node parent;
+		final int move;
+		//moves not yet expanded, taken from the end
+		final int[] untried;
+		int nUntried;
+		final List<Node> children = new ArrayList<>();
+		//rollouts selected this round that haven't been counted yet, only touched while selecting
+		int pending;
+		final AtomicInteger visits = new AtomicInteger();
+		final AtomicLong reward = new AtomicLong();
+
+		Node(Node parent, int move, int[] untried, int nUntried) {
+			this.parent = parent;
+			this.move = move;
+			this.untried = untried;
+			this.nUntried = nUntried;
+		}
+	}
+
+	private final long seed;
+	private final int threads;
+	private final int iterations;
+	//created on first use, only for more than one thread
+	private ExecutorService workers;
+	//hit points of every unit at the last decision, and the decisions since that last changed
+	private long lastHitPoints = -1;
+	private int idleDecisions = 0;
+
+	/**
+	 * Creates a planner that always plays the same way, running DEFAULT_ITERATIONS rollouts on
+	 * every core.
+	 */
+	public MctsPlanner() {
+		this(0, Runtime.getRuntime().availableProcessors(), DEFAULT_ITERATIONS, NO_BUDGET);
+	}
+
+	/**
+	 * @param seed the seed of the rollouts
+	 * @param threads the number of threads rollouts run on
+	 * @param iterations the number of rollouts per decision
+	 * @param budget the time in ms a decision may take, or NO_BUDGET. With a budget the search
+	 *               may stop early, so it is only deterministic when the budget never runs out.
+	 */
+	public MctsPlanner(long seed, int threads, int iterations, int budget) {
+		super(budget);
+		this.seed = seed;
+		this.threads = threads;
+		this.iterations = iterations;
+	}
+
+	@Override
+	public Plan plan(Situation situation) {
+		long deadline = System.nanoTime() + budget * 1000000L;
+		table.newGeneration();
+		final BattleState state = situation.state.copy();
+		final int rootGroup = state.getPhaseGroup();
+		long hitPoints = 0;
+		for (int unit = 0; unit < state.getUnitCount(); unit++)
+			hitPoints += state.getHitPoints(unit);
+		idleDecisions = hitPoints == lastHitPoints ? idleDecisions + 1 : 0;
+		lastHitPoints = hitPoints;
+		final double approachWeight = Math.min(MAX_APPROACH_WEIGHT,
+				APPROACH_WEIGHT + IMPATIENCE * idleDecisions);
+		int entry = table.find(state.getHash());
+		if (entry != -1 && table.getDepth(entry) >= MIN_REUSE_VISITS) {
+			int move = (int) table.getValue(entry);
+			if (isValid(situation, BattleState.getMoveUnit(move), move))
+				return toPlan(state, move, Float.intBitsToFloat((int) (table.getValue(entry) >>> 32)));
+		}
+
+		int[] moves = new int[state.getMaxMoves()];
+		int nMoves = state.generateMoves(moves);
+		if (nMoves == 0)
+			return null;
+		final Node root = new Node(null, 0, Arrays.copyOf(moves, nMoves), nMoves);
+		final long[] startHitPoints = new long[2];
+		for (int unit = 0; unit < state.getUnitCount(); unit++)
+			startHitPoints[state.getGroup(unit)] += state.getHitPoints(unit);
+
+		final int batch = threads * BATCH_PER_THREAD;
+		final Node[] leaves = new Node[batch];
+		final BattleState[] states = new BattleState[threads];
+		for (int i = 0; i < threads; i++)
+			states[i] = state.copy();
+
+		for (int done = 0; done < iterations; done += batch) {
+			final int round = done;
+			final int size = Math.min(batch, iterations - done);
+			for (int slot = 0; slot < size; slot++)
+				leaves[slot] = select(root, state, moves, rootGroup);
+
+			final AtomicInteger next = new AtomicInteger();
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				final BattleState worker = states[i];
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						int[] buffer = new int[worker.getMaxMoves()];
+						for (int slot = next.getAndIncrement(); slot < size; slot = next.getAndIncrement())
+							playOut(leaves[slot], worker, buffer, rootGroup, startHitPoints, approachWeight,
+									round + slot);
+						return null;
+					}
+				});
+			}
+			runAll(tasks);
+
+			for (int slot = 0; slot < size; slot++) {
+				for (Node node = leaves[slot]; node != null; node = node.parent)
+					node.pending = 0;
+			}
+			if (budget != NO_BUDGET && System.nanoTime() - deadline > 0)
+				break;
+		}
+
+		//remember the rest of the joint move down to where it ends or gets too uncertain. The root
+		//itself isn't kept, or a group that comes back to the same state would repeat the move
+		//without searching again
+		Node best = mostVisited(root);
+		Plan plan = toPlan(state, best.move, meanReward(best));
+		state.make(best.move);
+		int depth = 1;
+		Node node = mostVisited(best);
+		while (node != null && node.visits.get() >= MIN_REUSE_VISITS) {
+			table.store(state.getHash(), (long) Float.floatToRawIntBits(meanReward(node)) << 32
+					| node.move & 0xffffffffL, node.visits.get());
+			state.make(node.move);
+			depth++;
+			node = mostVisited(node);
+		}
+		for (int i = 0; i < depth; i++)
+			state.unmake();
+		return plan;
+	}
+
+	private static Node mostVisited(Node node) {
+		Node best = null;
+		for (Node child : node.children) {
+			if (best == null || child.visits.get() > best.visits.get())
+				best = child;
+		}
+		return best;
+	}
+
+	private static float meanReward(Node node) {
+		return (float) node.reward.get() / REWARD_SCALE / Math.max(1, node.visits.get());
+	}
+
+	private static Plan toPlan(BattleState state, int move, float score) {
+		int unit = BattleState.getMoveUnit(move);
+		int square = BattleState.getMoveSquare(move);
+		int target = BattleState.getMoveTarget(move);
+		return new Plan(state.units[unit], square / state.width, square % state.width,
+				target == BattleState.NO_TARGET ? null : state.units[target], score);
+	}
+
+	/**
+	 * Walks down the tree by UCT to a node with an untried move, expands it and marks the path as
+	 * pending. The state is left as it was.
+	 *
+	 * @return the new leaf, or the last node of the path if it can't be expanded
+	 */
+	private Node select(Node root, BattleState state, int[] moves, int rootGroup) {
+		Node node = root;
+		int depth = 0;
+		while (true) {
+			node.pending++;
+			if (node.nUntried > 0) {
+				int move = node.untried[--node.nUntried];
+				state.make(move);
+				depth++;
+				//the tree ends with the phase, the rollout plays out the rest
+				int nMoves = 0;
+				if (state.getPhaseGroup() == rootGroup && state.getWinner() == -1)
+					nMoves = state.generateMoves(moves);
+				Node child = new Node(node, move, Arrays.copyOf(moves, nMoves), nMoves);
+				node.children.add(child);
+				child.pending++;
+				node = child;
+				break;
+			}
+			if (node.children.isEmpty())
+				break;
+			node = bestChild(node);
+			state.make(node.move);
+			depth++;
+		}
+		for (int i = 0; i < depth; i++)
+			state.unmake();
+		return node;
+	}
+
+	/**
+	 * Picks the child with the highest upper confidence bound, counting pending rollouts as
+	 * losses so one round spreads over several leaves.
+	 */
+	private static Node bestChild(Node node) {
+		double logVisits = Math.log(node.visits.get() + node.pending);
+		Node best = null;
+		double bestBound = Double.NEGATIVE_INFINITY;
+		for (Node child : node.children) {
+			int n = child.visits.get() + child.pending;
+			double mean = (double) child.reward.get() / REWARD_SCALE / Math.max(1, n);
+			double bound = mean + EXPLORATION * Math.sqrt(logVisits / Math.max(1, n));
+			if (bound > bestBound) {
+				bestBound = bound;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Makes the moves down to a leaf, plays out a rollout and adds its reward to every node on the
+	 * way back to the root.
+	 *
+	 * @param approachWeight the share of the reward that goes to closing in
+	 * @param rollout the number of the rollout, which decides its random sequence
+	 */
+	private void playOut(Node leaf, BattleState state, int[] moves, int rootGroup, long[] startHitPoints,
+	                     double approachWeight, int rollout) {
+		int depth = 0;
+		for (Node node = leaf; node.parent != null; node = node.parent)
+			depth++;
+		int[] path = new int[depth];
+		int i = depth;
+		for (Node node = leaf; node.parent != null; node = node.parent)
+			path[--i] = node.move;
+		for (int move : path)
+			state.make(move);
+
+		long random = mix(seed ^ mix(rollout));
+		int made = 0;
+		//phases ended since the root, including one ended in the tree
+		int phases = 0;
+		int phaseGroup = rootGroup;
+		//where the group stood once its joint move was done, before the random moves of later phases
+		double closeness = -1;
+		while (state.getWinner() == -1) {
+			if (state.getPhaseGroup() != phaseGroup) {
+				phaseGroup = state.getPhaseGroup();
+				if (phases == 0)
+					closeness = closeness(state, rootGroup);
+				if (++phases > ROLLOUT_PHASES)
+					break;
+			}
+			int nMoves = state.generateMoves(moves);
+			if (nMoves == 0)
+				break;
+			random = mix(random);
+			int nAttacks = 0;
+			if ((random & 0xff) < ATTACK_CHANCE) {
+				//keep only the attacks, in place
+				for (int m = 0; m < nMoves; m++) {
+					if (BattleState.getMoveTarget(moves[m]) != BattleState.NO_TARGET)
+						moves[nAttacks++] = moves[m];
+				}
+			}
+			int n = nAttacks > 0 ? nAttacks : nMoves;
+			state.make(moves[(int) ((random >>> 8) % n)]);
+			made++;
+		}
+
+		if (closeness < 0)
+			closeness = closeness(state, rootGroup);
+		long reward = Math.round(REWARD_SCALE * ((1 - approachWeight) * score(state, rootGroup, startHitPoints)
+				+ approachWeight * closeness));
+		for (i = 0; i < made + depth; i++)
+			state.unmake();
+		for (Node node = leaf; node != null; node = node.parent) {
+			node.reward.addAndGet(reward);
+			node.visits.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Scores the end of a rollout for the planning group: 1 for a win, 0 for a loss, otherwise
+	 * halfway plus half the difference of the shares of hit points the two sides lost.
+	 */
+	private static double score(BattleState state, int rootGroup, long[] startHitPoints) {
+		int winner = state.getWinner();
+		if (winner != -1)
+			return winner == rootGroup ? 1 : 0;
+		long[] hitPoints = new long[2];
+		for (int unit = 0; unit < state.getUnitCount(); unit++)
+			hitPoints[state.getGroup(unit)] += state.getHitPoints(unit);
+		int other = rootGroup == Character.GROUP_PLAYER ? Character.GROUP_ENEMY : Character.GROUP_PLAYER;
+		double lost = 1 - (double) hitPoints[rootGroup] / Math.max(1, startHitPoints[rootGroup]);
+		double dealt = 1 - (double) hitPoints[other] / Math.max(1, startHitPoints[other]);
+		return 0.5 + 0.5 * (dealt - lost);
+	}
+
+	/**
+	 * Gets how close a group's units stand to their nearest enemies, from 0 when they are as far as
+	 * the room allows to 1 when they all stand next to one or none are left. Rewarding it keeps a
+	 * unit that can't win an exchange from staying out of a slower opponent's reach forever.
+	 */
+	private static double closeness(BattleState state, int group) {
+		if (state.getWinner() == group)
+			return 1;
+		int maxDistance = state.width + state.length - 2;
+		long total = 0;
+		int n = 0;
+		for (int unit = 0; unit < state.getUnitCount(); unit++) {
+			if (state.getGroup(unit) != group || !state.isAlive(unit))
+				continue;
+			int row = state.getSquare(unit) / state.width;
+			int col = state.getSquare(unit) % state.width;
+			int nearest = maxDistance;
+			for (int other = 0; other < state.getUnitCount(); other++) {
+				if (state.getGroup(other) == group || !state.isAlive(other))
+					continue;
+				int otherSquare = state.getSquare(other);
+				int distance = Math.abs(otherSquare / state.width - row) + Math.abs(otherSquare % state.width - col);
+				nearest = Math.min(nearest, distance);
+			}
+			total += Math.max(0, nearest - 1);
+			n++;
+		}
+		if (n == 0 || maxDistance <= 1)
+			return 0;
+		return 1 - (double) total / n / (maxDistance - 1);
+	}
+
+	/**
+	 * The splitmix64 finalizer, a cheap random number generator that is the same everywhere.
+	 */
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Also stops the rollout threads, which planning again starts anew.
+	 */
+	@Override
+	public synchronized void shutdown() {
+		super.shutdown();
+		if (workers != null) {
+			workers.shutdown();
+			workers = null;
+		}
+	}
+
+	/**
+	 * Runs tasks on the worker threads, or on this thread if there is only one, and waits for them.
+	 * The pool is taken under the same lock shutdown() drops it with, and made again once dropped.
+	 */
+	private void runAll(List<Callable<Void>> tasks) {
+		try {
+			if (threads == 1) {
+				tasks.get(0).call();
+				return;
+			}
+			ExecutorService pool;
+			synchronized (this) {
+				if (workers == null || workers.isShutdown()) {
+					workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "MCTS Rollout Thread");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+				}
+				pool = workers;
+			}
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int i = 0; i < tasks.size(); i++) {
+				try {
+					futures.add(pool.submit(tasks.get(i)));
+				} catch (RejectedExecutionException e) {
+					//shut down meanwhile, so the tasks it didn't take run here; those it did still finish
+					for (Callable<Void> task : tasks.subList(i, tasks.size()))
+						task.call();
+					break;
+				}
+			}
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
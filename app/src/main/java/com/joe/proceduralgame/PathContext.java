@@ -0,0 +1,225 @@
+package com.joe.proceduralgame;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch memory for searches over a Room's grid.
+ *
+ * Squares are packed as row * width + col. Instead of clearing its arrays, each search bumps a
+ * generation stamp, so a search allocates nothing once the arrays have grown to the room's size.
+ * A context is not thread safe; each thread that searches needs its own.
+ */
+public class PathContext {
+
+	/** Row offsets of the four neighbours of a square, in the order right, up, left, down */
+	public static final int[] NEIGHBOR_ROWS = {0, -1, 0, 1};
+	/** Column offsets of the four neighbours of a square, in the order right, up, left, down */
+	public static final int[] NEIGHBOR_COLS = {1, 0, -1, 0};
+
+	private int generation = 0;
+	// generation in which each square was discovered
+	private int[] discovered = new int[0];
+	// cost so far of each square
+	private int[] g = new int[0];
+	// estimated total cost of each square in the frontier
+	private double[] f = new double[0];
+	// the square each square was reached from
+	private int[] prev = new int[0];
+	// binary min heap of packed squares ordered by f
+	private int[] heap = new int[0];
+	private int heapSize;
+
+	/**
+	 * Finds a shortest path between two squares that avoids squares with Entities.
+	 *
+	 * Gives exactly the same paths as the original PriorityQueue based search, including ties.
+	 *
+	 * @param room the room to search
+	 * @param startRow
+	 * @param startCol
+	 * @param destRow
+	 * @param destCol
+	 * @param includeDest if false, the path will exclude the dest square and will end on an
+	 *                    adjacent square.
+	 * @param result the path to fill, excluding the start square
+	 * @return true if a path was found, false if no such path exists
+	 */
+	public boolean findPath(Room room, int startRow, int startCol, int destRow, int destCol,
+	                        boolean includeDest, IntPath result) {
+		final int width = room.width;
+		final int length = room.length;
+		final Entity[][] grid = room.grid;
+		final int stamp = beginSearch(width * length);
+		final int start = startRow * width + startCol;
+		final int dest = destRow * width + destCol;
+
+		heapSize = 0;
+		g[start] = 0;
+		push(start, heuristic(startRow, startCol, destRow, destCol));
+
+		int cur = -1;
+		boolean found = false;
+		Outer:
+		while (heapSize > 0) {
+			cur = poll();
+			if (cur == dest) {
+				found = true;
+				break;
+			}
+			int curRow = cur / width;
+			int curCol = cur % width;
+
+			for (int i = 0; i < 4; i++) {
+				int adjRow = curRow + NEIGHBOR_ROWS[i];
+				int adjCol = curCol + NEIGHBOR_COLS[i];
+				if (adjRow < 0 || adjRow >= length || adjCol < 0 || adjCol >= width)
+					continue;
+				int adj = adjRow * width + adjCol;
+				if (discovered[adj] != stamp) {
+					discovered[adj] = stamp;
+					if (!includeDest && adj == dest) {
+						found = true;
+						break Outer;
+					}
+					if (grid[adjRow][adjCol] != null)
+						continue;
+					//set ptr to prev square
+					prev[adj] = cur;
+					//cost so far
+					g[adj] = g[cur] + 1;
+					push(adj, g[adj] + heuristic(adjRow, adjCol, destRow, destCol));
+				}
+			}
+		}
+
+		if (!found)
+			return false;
+
+		//success, reconstruct path
+		result.clear(width);
+		while (cur != start) {
+			result.add(cur);
+			cur = prev[cur];
+		}
+		result.reverse();
+		return true;
+	}
+
+	/**
+	 * Gets all squares reachable within range # of hops from a start square.
+	 *
+	 * @param room the room to search
+	 * @param startRow the row of the start square
+	 * @param startCol the column of the start square
+	 * @param range the maximum length of a path from the start square
+	 * @return the packed row * width + col of every reachable square, in ascending order
+	 */
+	public int[] getRange(Room room, int startRow, int startCol, int range) {
+		final int width = room.width;
+		final int length = room.length;
+		final Entity[][] grid = room.grid;
+		final int stamp = beginSearch(width * length);
+		final int start = startRow * width + startCol;
+
+		// the heap array doubles as a FIFO queue; every square is queued at most once
+		int head = 0, tail = 0;
+		discovered[start] = stamp;
+		g[start] = 0;
+		heap[tail++] = start;
+
+		while (head < tail) {
+			int cur = heap[head++];
+			if (g[cur] == range)
+				continue;
+			int curRow = cur / width;
+			int curCol = cur % width;
+			for (int i = 0; i < 4; i++) {
+				int adjRow = curRow + NEIGHBOR_ROWS[i];
+				int adjCol = curCol + NEIGHBOR_COLS[i];
+				if (adjRow < 0 || adjRow >= length || adjCol < 0 || adjCol >= width) //check in bounds
+					continue;
+				int adj = adjRow * width + adjCol;
+				if (discovered[adj] != stamp) { //if not discovered
+					discovered[adj] = stamp;
+					if (grid[adjRow][adjCol] != null)
+						continue;
+					//cost so far
+					g[adj] = g[cur] + 1;
+					heap[tail++] = adj;
+				}
+			}
+		}
+
+		// every dequeued square was reachable
+		int[] reachable = Arrays.copyOf(heap, tail);
+		Arrays.sort(reachable);
+		return reachable;
+	}
+
+	/**
+	 * Starts a new search over a grid of nSquares squares.
+	 *
+	 * @return the stamp that marks squares discovered by this search
+	 */
+	private int beginSearch(int nSquares) {
+		if (discovered.length < nSquares) {
+			discovered = new int[nSquares];
+			g = new int[nSquares];
+			f = new double[nSquares];
+			prev = new int[nSquares];
+			// every square is queued at most once, except the start square which may be twice
+			heap = new int[nSquares + 1];
+			generation = 0;
+		}
+		if (generation == Integer.MAX_VALUE) {
+			Arrays.fill(discovered, 0);
+			generation = 0;
+		}
+		return ++generation;
+	}
+
+	private static double heuristic(int row, int col, int destRow, int destCol) {
+		return Math.hypot(destRow - row, destCol - col);
+	}
+
+	// The heap below sifts exactly like java.util.PriorityQueue so that ties resolve identically.
+
+	private void push(int square, double cost) {
+		f[square] = cost;
+		int k = heapSize++;
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			int e = heap[parent];
+			if (cost >= f[e])
+				break;
+			heap[k] = e;
+			k = parent;
+		}
+		heap[k] = square;
+	}
+
+	private int poll() {
+		int result = heap[0];
+		int s = --heapSize;
+		if (s != 0) {
+			int x = heap[s];
+			double cost = f[x];
+			int k = 0;
+			int half = s >>> 1;
+			while (k < half) {
+				int child = 2 * k + 1;
+				int c = heap[child];
+				int right = child + 1;
+				if (right < s && f[c] > f[heap[right]])
+					c = heap[child = right];
+				if (cost <= f[c])
+					break;
+				heap[k] = c;
+				k = child;
+			}
+			heap[k] = x;
+		}
+		return result;
+	}
+
+}
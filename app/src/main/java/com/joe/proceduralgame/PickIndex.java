@@ -0,0 +1,240 @@
+package com.joe.proceduralgame;
+
+import com.joe.proceduralgame.Quad.Type;
+
+import android.opengl.Matrix;
+
+/**
+ * Accelerates picking the quad under a tap in a Room.
+ *
+ * Floor quads are looked up directly from the square a ray meets the ground at. Walls are bucketed
+ * by the grid squares on either side of them, with their inverse model matrices cached, so only
+ * the squares a ray crosses between wall height and the ground are tested. Characters move every
+ * frame and are few, so they are tested directly. The nearest hit along the ray wins.
+ *
+ * Built from the room's static quads when the room is loaded. Not thread safe.
+ */
+public class PickIndex {
+
+	/** Height of the tops of the walls */
+	private static final float WALL_HEIGHT = 1;
+
+	private final Room room;
+	// the grid is padded by one square on every side for the walls along the room's outer edge
+	private final int paddedWidth, paddedLength;
+
+	// floor quad of each square, indexed row * width + col
+	private final Quad[] floors;
+
+	private final Quad[] walls;
+	// inverse model matrix of each wall, 16 floats per wall
+	private final float[] wallInverses;
+	// walls touching each padded square: indices into walls from bucketStarts[i] to bucketStarts[i + 1]
+	private final int[] bucketStarts;
+	private final int[] bucketWalls;
+
+	// scratch for pick()
+	private final float[] inverseView = new float[16];
+	private final float[] inverseModel = new float[16];
+	private final float[] ray = new float[6]; // world space {eye x, y, z, direction x, y, z}
+	private Quad nearest;
+	private float nearestT;
+
+	/**
+	 * Indexes the static quads of a room. The quads must not move while the index is in use.
+	 *
+	 * @param room the room, with its grid and static quads in place
+	 */
+	public PickIndex(Room room) {
+		this.room = room;
+		paddedWidth = room.width + 2;
+		paddedLength = room.length + 2;
+		floors = new Quad[room.width * room.length];
+
+		int nWalls = 0;
+		for (Quad q : room.staticQuads) {
+			if (q.type == Type.FLOOR) {
+				int row = squareRow(q.getZ());
+				int col = squareCol(q.getX());
+				if (row >= 0 && row < room.length && col >= 0 && col < room.width)
+					floors[row * room.width + col] = q;
+			} else if (q.type != Type.DECORATION) {
+				nWalls++;
+			}
+		}
+
+		walls = new Quad[nWalls];
+		wallInverses = new float[16 * nWalls];
+		// each wall lies on the edge between two squares, and goes in the bucket of both
+		int[] wallSquares = new int[2 * nWalls];
+		int[] bucketSizes = new int[paddedWidth * paddedLength];
+		int w = 0;
+		for (Quad q : room.staticQuads) {
+			if (q.type == Type.FLOOR || q.type == Type.DECORATION)
+				continue;
+			walls[w] = q;
+			Matrix.invertM(wallInverses, 16 * w, q.modelMatrix, 0);
+			float[] m = q.modelMatrix;
+			//step half a square along the normal to each side of the wall
+			for (int side = 0; side < 2; side++) {
+				float offset = side == 0 ? -.5f : .5f;
+				int row = squareRow(m[14] + offset * m[10]) + 1;
+				int col = squareCol(m[12] + offset * m[8]) + 1;
+				int square = -1;
+				if (row >= 0 && row < paddedLength && col >= 0 && col < paddedWidth) {
+					square = row * paddedWidth + col;
+					bucketSizes[square]++;
+				}
+				wallSquares[2 * w + side] = square;
+			}
+			w++;
+		}
+
+		bucketStarts = new int[bucketSizes.length + 1];
+		for (int i = 0; i < bucketSizes.length; i++)
+			bucketStarts[i + 1] = bucketStarts[i] + bucketSizes[i];
+		bucketWalls = new int[bucketStarts[bucketSizes.length]];
+		int[] fill = new int[bucketSizes.length];
+		for (int i = 0; i < wallSquares.length; i++) {
+			int square = wallSquares[i];
+			if (square != -1)
+				bucketWalls[bucketStarts[square] + fill[square]++] = i / 2;
+		}
+	}
+
+	/**
+	 * Finds the nearest non-decoration quad hit by a ray cast from the camera.
+	 *
+	 * @param viewMatrix the view matrix of the camera
+	 * @param nearX the x intersection of the ray with the plane z = -1 in camera space
+	 * @param nearY the y intersection of the ray with the plane z = -1 in camera space
+	 * @return the nearest quad hit or null
+	 */
+	public Quad pick(float[] viewMatrix, float nearX, float nearY) {
+		Matrix.invertM(inverseView, 0, viewMatrix, 0);
+		float[] v = inverseView;
+		//eye is the camera space origin, the direction is towards {nearX, nearY, -1}
+		ray[0] = v[12];
+		ray[1] = v[13];
+		ray[2] = v[14];
+		ray[3] = v[0] * nearX + v[4] * nearY - v[8];
+		ray[4] = v[1] * nearX + v[5] * nearY - v[9];
+		ray[5] = v[2] * nearX + v[6] * nearY - v[10];
+
+		nearest = null;
+		nearestT = Float.POSITIVE_INFINITY;
+
+		for (Character c : room.characters) {
+			Matrix.invertM(inverseModel, 0, c.quad.modelMatrix, 0);
+			test(c.quad, inverseModel, 0);
+		}
+		pickFloor();
+		pickWalls();
+
+		Quad result = nearest;
+		nearest = null;
+		return result;
+	}
+
+	private void pickFloor() {
+		float dy = ray[4];
+		if (dy == 0)
+			return;
+		float t = -ray[1] / dy;
+		if (t <= 0 || t >= nearestT)
+			return;
+		int row = squareRow(ray[2] + ray[5] * t);
+		int col = squareCol(ray[0] + ray[3] * t);
+		if (row < 0 || row >= room.length || col < 0 || col >= room.width)
+			return;
+		Quad floor = floors[row * room.width + col];
+		if (floor != null) {
+			nearest = floor;
+			nearestT = t;
+		}
+	}
+
+	/** Tests the walls of every square the ray crosses while between the ground and the wall tops */
+	private void pickWalls() {
+		float dx = ray[3], dy = ray[4], dz = ray[5];
+		if (dy == 0)
+			return;
+		float tGround = -ray[1] / dy;
+		float tTop = (WALL_HEIGHT - ray[1]) / dy;
+		float tStart = Math.max(0, Math.min(tGround, tTop));
+		float tEnd = Math.max(tGround, tTop);
+		if (tEnd <= tStart)
+			return;
+
+		//walk the padded grid, in which the square at padded (row, col) spans [col - .5, col + .5)
+		float startX = ray[0] + dx * tStart - room.originx + 1.5f;
+		float startZ = ray[2] + dz * tStart - room.originz + 1.5f;
+		int col = (int) Math.floor(startX);
+		int row = (int) Math.floor(startZ);
+		int stepCol = dx > 0 ? 1 : -1;
+		int stepRow = dz > 0 ? 1 : -1;
+		float tDeltaX = dx != 0 ? Math.abs(1 / dx) : Float.POSITIVE_INFINITY;
+		float tDeltaZ = dz != 0 ? Math.abs(1 / dz) : Float.POSITIVE_INFINITY;
+		float tMaxX = dx != 0 ? tStart + (dx > 0 ? col + 1 - startX : startX - col) * tDeltaX
+				: Float.POSITIVE_INFINITY;
+		float tMaxZ = dz != 0 ? tStart + (dz > 0 ? row + 1 - startZ : startZ - row) * tDeltaZ
+				: Float.POSITIVE_INFINITY;
+
+		while (true) {
+			if (row >= 0 && row < paddedLength && col >= 0 && col < paddedWidth) {
+				int square = row * paddedWidth + col;
+				for (int i = bucketStarts[square]; i < bucketStarts[square + 1]; i++) {
+					int wall = bucketWalls[i];
+					test(walls[wall], wallInverses, 16 * wall);
+				}
+			}
+			float tNext = Math.min(tMaxX, tMaxZ);
+			//nothing in a later square can be nearer than a hit already found
+			if (tNext >= tEnd || tNext >= nearestT)
+				break;
+			if (tMaxX < tMaxZ) {
+				col += stepCol;
+				tMaxX += tDeltaX;
+			} else {
+				row += stepRow;
+				tMaxZ += tDeltaZ;
+			}
+		}
+	}
+
+	/**
+	 * Intersects the ray with the unit quad in the plane z = 0 of a model space, keeping the hit if
+	 * it is the nearest so far.
+	 */
+	private void test(Quad q, float[] inverse, int offset) {
+		float[] m = inverse;
+		int o = offset;
+		//the ray in model space. Affine maps keep t, so hits in different quads compare directly
+		float ex = m[o] * ray[0] + m[o + 4] * ray[1] + m[o + 8] * ray[2] + m[o + 12];
+		float ey = m[o + 1] * ray[0] + m[o + 5] * ray[1] + m[o + 9] * ray[2] + m[o + 13];
+		float ez = m[o + 2] * ray[0] + m[o + 6] * ray[1] + m[o + 10] * ray[2] + m[o + 14];
+		float dx = m[o] * ray[3] + m[o + 4] * ray[4] + m[o + 8] * ray[5];
+		float dy = m[o + 1] * ray[3] + m[o + 5] * ray[4] + m[o + 9] * ray[5];
+		float dz = m[o + 2] * ray[3] + m[o + 6] * ray[4] + m[o + 10] * ray[5];
+		if (dz == 0)
+			return;
+		float t = -ez / dz;
+		if (t <= 0 || t >= nearestT)
+			return;
+		float projectedX = ex + dx * t;
+		float projectedY = ey + dy * t;
+		if (-.5f <= projectedX && projectedX < .5f && -.5f <= projectedY && projectedY < .5f) {
+			nearest = q;
+			nearestT = t;
+		}
+	}
+
+	private int squareRow(float z) {
+		return (int) Math.floor(z - room.originz + .5f);
+	}
+
+	private int squareCol(float x) {
+		return (int) Math.floor(x - room.originx + .5f);
+	}
+
+}
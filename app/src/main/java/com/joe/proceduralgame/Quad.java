@@ -5,7 +5,6 @@ import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
 import android.opengl.GLES20;
-import android.opengl.Matrix;
 import android.util.Log;
 
 public class Quad {
@@ -13,7 +12,7 @@ public class Quad {
 	public static enum Type {FLOOR, WALL, DECORATION, CHARACTER, NONCHARACTER_ENTITY, DOOR};
 
 	public float[] modelMatrix;
-	public int textureUnit;
+	public int texture; // GL texture name, bound with TextureManager.bind() when drawn
 	public int textureID;
 	public float[] uvOrigin = {0, 0};
 	public float[] uvScale = {1, 1};
@@ -43,10 +42,22 @@ public class Quad {
 		q.textureID = textureID;
 		return q;
 	}
+
+	/**
+	 * Creates a static quad textured with a sprite packed onto an atlas.
+	 */
+	public static Quad createStaticQuad(Type type, float[] modelMatrix, AtlasRegion region) {
+		Quad q = createStaticQuad(type, modelMatrix, region.textureID);
+		q.uvOrigin[0] = region.u;
+		q.uvOrigin[1] = region.v;
+		q.uvScale[0] = region.width;
+		q.uvScale[1] = region.height;
+		return q;
+	}
 	
-	public static Quad createDynamicQuad(Type type, float[] modelMatrix, int textureUnit) {
+	public static Quad createDynamicQuad(Type type, float[] modelMatrix, int texture) {
 		Quad q = new Quad(type, modelMatrix);
-		q.textureUnit = textureUnit;
+		q.texture = texture;
 		return q;
 	}
 	
@@ -69,96 +80,32 @@ public class Quad {
 		vertexBuffer.position(0);
 	}
 	
-	public static void enableArrays(int shaderProgram) {
-		int positionHandle = GLES20.glGetAttribLocation(shaderProgram, "vPosition");
-		int texCoordsHandle = GLES20.glGetAttribLocation(shaderProgram, "vTexCoords");
-		
+	public static void enableArrays(ShaderProgram shader) {
 		vertexBuffer.position(mPositionOffset);
-		GLES20.glVertexAttribPointer(positionHandle, mPositionDataSize, GLES20.GL_FLOAT, false, mStrideBytes, vertexBuffer);
-		GLES20.glEnableVertexAttribArray(positionHandle);
+		GLES20.glVertexAttribPointer(shader.positionHandle, mPositionDataSize, GLES20.GL_FLOAT, false, mStrideBytes, vertexBuffer);
+		GLES20.glEnableVertexAttribArray(shader.positionHandle);
 		
 		vertexBuffer.position(mTexCoordsOffset);
-		GLES20.glVertexAttribPointer(texCoordsHandle, mTexCoordsDataSize, GLES20.GL_FLOAT, false, mStrideBytes, vertexBuffer);
-		GLES20.glEnableVertexAttribArray(texCoordsHandle);
-	}
-	
-	public static void disableArrays(int shaderProgram) {
-		int positionHandle = GLES20.glGetAttribLocation(shaderProgram, "vPosition");
-		int texCoordsHandle = GLES20.glGetAttribLocation(shaderProgram, "vTexCoords");
-		
-		GLES20.glDisableVertexAttribArray(positionHandle);
-		GLES20.glDisableVertexAttribArray(texCoordsHandle);
-	}
-
-	public void draw(int shaderProgram, float[] mVPMatrix) {
-		float[] mvp = new float[16];
-		Matrix.multiplyMM(mvp, 0, mVPMatrix, 0, modelMatrix, 0);
-
-		int positionHandle = GLES20.glGetAttribLocation(shaderProgram, "vPosition");
-		int texCoordsHandle = GLES20.glGetAttribLocation(shaderProgram, "vTexCoords");
-
-		vertexBuffer.position(mPositionOffset);
-		GLES20.glVertexAttribPointer(positionHandle, mPositionDataSize, GLES20.GL_FLOAT, false, mStrideBytes, vertexBuffer);
-		GLES20.glEnableVertexAttribArray(positionHandle);
+		GLES20.glVertexAttribPointer(shader.texCoordsHandle, mTexCoordsDataSize, GLES20.GL_FLOAT, false, mStrideBytes, vertexBuffer);
+		GLES20.glEnableVertexAttribArray(shader.texCoordsHandle);
 
+		//a lone quad spans its whole lightmap tile, so it reuses its texture coordinates
 		vertexBuffer.position(mTexCoordsOffset);
-		GLES20.glVertexAttribPointer(texCoordsHandle, mTexCoordsDataSize, GLES20.GL_FLOAT, false, mStrideBytes, vertexBuffer);
-		GLES20.glEnableVertexAttribArray(texCoordsHandle);
-
-		int mvpHandle = GLES20.glGetUniformLocation(shaderProgram, "MVP");
-		GLES20.glUniformMatrix4fv(mvpHandle, 1, false, mvp, 0);
-
-//		int modelHandle = GLES20.glGetUniformLocation(shaderProgram, "modelMatrix");
-//		GLES20.glUniformMatrix4fv(modelHandle, 1, false, modelMatrix, 0);
-
-		int textureHandle = GLES20.glGetUniformLocation(shaderProgram, "uTexture");
-		GLES20.glUniform1i(textureHandle, textureUnit);
-
-		int uvOriginHandle = GLES20.glGetUniformLocation(shaderProgram, "uvOrigin");
-		int uvScaleHandle = GLES20.glGetUniformLocation(shaderProgram, "uvScale");
-		GLES20.glUniform2f(uvOriginHandle, uvOrigin[0], uvOrigin[1]);
-		GLES20.glUniform2f(uvScaleHandle, uvScale[0], uvScale[1]);
-
-		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, 0, 4);
-
-		GLES20.glDisableVertexAttribArray(positionHandle);
-		GLES20.glDisableVertexAttribArray(texCoordsHandle);
-
+		GLES20.glVertexAttribPointer(shader.lightmapCoordsHandle, mTexCoordsDataSize, GLES20.GL_FLOAT, false, mStrideBytes, vertexBuffer);
+		GLES20.glEnableVertexAttribArray(shader.lightmapCoordsHandle);
+	}
+	
+	public static void disableArrays(ShaderProgram shader) {
+		GLES20.glDisableVertexAttribArray(shader.positionHandle);
+		GLES20.glDisableVertexAttribArray(shader.texCoordsHandle);
+		GLES20.glDisableVertexAttribArray(shader.lightmapCoordsHandle);
 	}
 
 	/**
-	 * Stripped version of draw() that doesn't set any texture related GL uniforms
-	 *
-	 * @param shaderProgram
-	 * @param mVPMatrix
+	 * Quads share one vertex buffer and their textures are referenced by whoever created them, so
+	 * a quad holds nothing to free. Kept so owners can destroy their quads without knowing that.
 	 */
-	public void drawWithoutTexture(int shaderProgram, float[] mVPMatrix) {
-		float[] mvp = new float[16];
-		Matrix.multiplyMM(mvp, 0, mVPMatrix, 0, modelMatrix, 0);
-
-		int positionHandle = GLES20.glGetAttribLocation(shaderProgram, "vPosition");
-		int texCoordsHandle = GLES20.glGetAttribLocation(shaderProgram, "vTexCoords");
-
-		vertexBuffer.position(mPositionOffset);
-		GLES20.glVertexAttribPointer(positionHandle, mPositionDataSize, GLES20.GL_FLOAT, false, mStrideBytes, vertexBuffer);
-		GLES20.glEnableVertexAttribArray(positionHandle);
-
-		vertexBuffer.position(mTexCoordsOffset);
-		GLES20.glVertexAttribPointer(texCoordsHandle, mTexCoordsDataSize, GLES20.GL_FLOAT, false, mStrideBytes, vertexBuffer);
-		GLES20.glEnableVertexAttribArray(texCoordsHandle);
-
-		int mvpHandle = GLES20.glGetUniformLocation(shaderProgram, "MVP");
-		GLES20.glUniformMatrix4fv(mvpHandle, 1, false, mvp, 0);
-
-		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, 0, 4);
-
-		GLES20.glDisableVertexAttribArray(positionHandle);
-		GLES20.glDisableVertexAttribArray(texCoordsHandle);
-
-	}
-
 	public void destroy() {
-
 	}
 	
 	public float getX() {
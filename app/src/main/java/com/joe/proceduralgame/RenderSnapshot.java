@@ -0,0 +1,61 @@
+package com.joe.proceduralgame;
+
+/**
+ * A description of one frame, captured by the simulation thread and drawn by the GL thread.
+ *
+ * Once published, a snapshot is not modified until the renderer has handed it back, so drawing it
+ * needs no lock on the DungeonManager.
+ */
+public class RenderSnapshot {
+
+	/** The room whose static geometry is drawn. Static geometry never changes once loaded */
+	public Room room;
+
+	// each list is drawn with its own GL state, in this order
+	public final SpriteList selector = new SpriteList();
+	public final SpriteList threats = new SpriteList();
+	public final SpriteList moveOptions = new SpriteList();
+	public final SpriteList attackOptions = new SpriteList();
+	public final SpriteList edgeEntities = new SpriteList();
+	public final SpriteList entities = new SpriteList();
+	public final SpriteList damageDigits = new SpriteList();
+
+	/** Clock time in ns up to which the simulation had run when this was captured */
+	public long stepTime;
+	/** Length of a simulation step in ns */
+	public long stepNanos;
+
+	// set by SnapshotBuffer when published, cleared when taken by the renderer
+	boolean fresh = false;
+
+	/**
+	 * Gets how far between the previous simulation step and this one to draw moving sprites.
+	 *
+	 * Sprites are drawn one step behind the simulation, sliding from where they were after the
+	 * previous step towards where they are now, so motion stays smooth whatever the frame rate.
+	 *
+	 * @param now the current time on the simulation's clock in ns
+	 * @return from 0 for the previous step's positions to 1 for this step's
+	 */
+	public float interpolationAlpha(long now) {
+		if (stepNanos <= 0)
+			return 1;
+		float alpha = (now - stepTime) / (float) stepNanos;
+		return Math.max(0, Math.min(1, alpha));
+	}
+
+	/**
+	 * Empties every list so the snapshot can be filled again.
+	 */
+	public void clear() {
+		room = null;
+		selector.clear();
+		threats.clear();
+		moveOptions.clear();
+		attackOptions.clear();
+		edgeEntities.clear();
+		entities.clear();
+		damageDigits.clear();
+	}
+
+}
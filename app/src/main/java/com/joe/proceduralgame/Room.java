@@ -3,16 +3,14 @@ package com.joe.proceduralgame;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.Map;
 
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
-
 public class Room {
 
 	public RoomGenerator generator;
@@ -26,33 +24,67 @@ public class Room {
 	int originx, originz;
 
 	//Holds the lights of this room.
-	RoomLighting lighting;
+	RoomLighting lighting = new RoomLighting(this);
 	//Holds only the static staticQuads of this room.
 	//These quads are loaded by the RoomGenerator. After load, none are added or transformed.
 	List<Quad> staticQuads = new ArrayList<Quad>();
 
 	List<Character> characters = new ArrayList<Character>();
+
+	//Simulated time spent in this room in ns, advanced one fixed step at a time by the DungeonManager
+	private long timeNanos = 0;
 	List<Entity> entities = new ArrayList<Entity>();
 	List<EdgeEntity> edgeEntities = new ArrayList<EdgeEntity>();
 
 	List<DamageDisplay> damageDisplays = new ArrayList<DamageDisplay>();
 
+	//Scratch memory for searches on the grid
+	private final PathContext pathContext = new PathContext();
+	private final IntPath scratchPath = new IntPath();
+
+	/**
+	 * Incremented every time an entity is added to, removed from or moved on the grid. Anything
+	 * derived from the grid's occupancy is valid only as long as this doesn't change.
+	 */
+	private int gridVersion = 0;
+	//Results of getRangeSquares() keyed by (start square, range), valid for rangeCacheVersion
+	private final Map<Long, int[]> rangeCache = new HashMap<Long, int[]>();
+	private int rangeCacheVersion = -1;
+	private static final int MAX_CACHED_RANGES = 64;
+	//Flow fields leading to each group's units, rebuilt lazily when the grid changes
+	private final Map<Integer, DistanceField> distanceFields = new HashMap<Integer, DistanceField>();
+	//Squares each group threatens, kept up to date square by square as the grid changes
+	private final Map<Integer, ThreatMap> threatMaps = new HashMap<Integer, ThreatMap>();
+
 	////// static geometry //////
 	// sorted first by texture then by uv patch
 	float[][] quadModels; // model matrix of each quad
 	int[] textureIndices; // indices for change of texture
 	int[] uvIndices; // indices for change of uv patch
-	int[] textures; // texture units for each texture index
+	int[] textures; // GL texture names for each texture index
+	int[] textureIDs; // resource ids for each texture index, to release them on unload
 	float[][] uvOrigins; // {u, v} origin for each uv index
 	float[][] uvScales; // size of patch on texture for each uv index
+	StaticMesh staticMesh; // all static quads baked into world space, null until loaded
+	PickIndex pickIndex; // null until prepared
+	private boolean prepared = false;
+	private boolean graphicLoaded = false;
 	////// end static geometry //////
 
+	/**
+	 * If true, static geometry is drawn from the baked StaticMesh, one draw call per texture.
+	 * If false, it is drawn one quad at a time. Kept switchable to compare the two.
+	 */
+	public static boolean batchStaticGeometry = true;
+
 	public void moveEntity(Entity entity, int fromRow, int fromCol) {
 		// XXX What if a team member moves through a team member?
 		assert grid[fromRow][fromCol] == entity;
 		assert grid[entity.gridRow][entity.gridCol] == null;
 		grid[fromRow][fromCol] = null;
 		grid[entity.gridRow][entity.gridCol] = entity;
+		gridChanged(fromRow, fromCol);
+		gridChanged(entity.gridRow, entity.gridCol);
 	}
 
 	/**
@@ -63,6 +95,7 @@ public class Room {
 	public void removeEntity(Entity entity) {
 		assert grid[entity.gridRow][entity.gridCol] == entity;
 		grid[entity.gridRow][entity.gridCol] = null;
+		gridChanged(entity.gridRow, entity.gridCol);
 		entities.remove(entity);
 		if (entity instanceof Character)
 			characters.remove(entity);
@@ -78,6 +111,7 @@ public class Room {
 		entity.gridCol = Math.round(entity.posx - originx);
 		assert grid[entity.gridRow][entity.gridCol] == null;
 		grid[entity.gridRow][entity.gridCol] = entity;
+		gridChanged(entity.gridRow, entity.gridCol);
 		entities.add(entity); //TODO handle synchronous array operations. Sycn the array, use CopyableArray, or something else.
 		entity.currentRoom = this;
 	}
@@ -125,14 +159,38 @@ public class Room {
 		addEntity(c);
 	}
 	
-	public void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion { //TODO unload rooms
-		lighting = new RoomLighting(this);
+	/**
+	 * Builds everything about this room that doesn't need a GL context: the static quads, the pick
+	 * index and the lightmap's pixels.
+	 *
+	 * Called by load() if it hasn't been called yet, so it may be done ahead of time on any thread.
+	 */
+	public synchronized void prepare() {
+		if (prepared)
+			return;
 		generator.load(this);
-		DungeonRenderer.catchGLError();
+		sortStaticQuads();
+		pickIndex = new PickIndex(this);
+		lighting.prepare();
+		prepared = true;
+	}
+
+	/**
+	 * Loads everything about this room that needs the GL context, preparing it first if that hasn't
+	 * been done. If the room is still loaded from before, only its lightmap is bound again.
+	 */
+	public synchronized void load(TextureManager tex) {
+		if (graphicLoaded) {
+			lighting.load(tex);
+			return;
+		}
+		prepare();
 		loadStaticGeometry(tex);
 		DungeonRenderer.catchGLError();
 		for (Entity e : entities) {
-			e.graphicLoad(tex);
+			//characters who came from another room are loaded already
+			if (!e.graphicLoaded)
+				e.graphicLoad(tex);
 			DungeonRenderer.catchGLError();
 		}
 		for (EdgeEntity e : edgeEntities) {
@@ -140,30 +198,89 @@ public class Room {
 			DungeonRenderer.catchGLError();
 		}
 		lighting.load(tex);
-		return;
+		if (!staticQuads.isEmpty()) {
+			staticMesh = new StaticMesh();
+			staticMesh.bake(staticQuads, textureIndices, textures, lighting);
+			staticMesh.upload();
+			DungeonRenderer.catchGLError();
+		}
+		graphicLoaded = true;
+	}
+
+	/**
+	 * Forgets the GL objects of the room and its entities, for when the GL context they were
+	 * created in has been lost. Nothing is deleted, since their names may already belong to objects
+	 * of the new context, and no texture references are released, since TextureManager.invalidate()
+	 * dropped them. What prepare() built is kept, so the next load() only uploads again.
+	 */
+	public synchronized void invalidateGraphics() {
+		staticMesh = null;
+		for (Entity e : entities)
+			e.graphicLoaded = false;
+		graphicLoaded = false;
+	}
+
+	/**
+	 * Releases everything load() and prepare() built, keeping the layout and the entities so the
+	 * room can be prepared and loaded again the same. Called on the GL thread.
+	 */
+	public synchronized void unload(TextureManager tex) {
+		if (graphicLoaded) {
+			destroy();
+			if (textureIDs != null) {
+				for (int textureID : textureIDs)
+					tex.referenceUnload(textureID);
+			}
+			for (Entity e : entities) {
+				if (e.graphicLoaded)
+					e.graphicUnload(tex);
+			}
+			for (EdgeEntity e : edgeEntities)
+				e.unload(tex);
+			graphicLoaded = false;
+		}
+		staticQuads.clear();
+		quadModels = null;
+		textureIndices = null;
+		uvIndices = null;
+		textures = null;
+		textureIDs = null;
+		uvOrigins = null;
+		uvScales = null;
+		pickIndex = null;
+		lighting.release();
+		prepared = false;
 	}
 	
-	private int hashUV(float[] uvOrigin, float[] uvScale) {
-		return (int) (uvScale[0] + 128 * (uvScale[1] + 128 * (uvOrigin[0] + 128 * uvOrigin[1])));
+	//uvs are rounded to 1/4096 of the texture, finer than any atlas region starts or ends
+	private static int hashUV(float[] uvOrigin, float[] uvScale) {
+		int hash = Math.round(uvOrigin[0] * 4096);
+		hash = 31 * hash + Math.round(uvOrigin[1] * 4096);
+		hash = 31 * hash + Math.round(uvScale[0] * 4096);
+		return 31 * hash + Math.round(uvScale[1] * 4096);
 	}
 	
-	private void loadStaticGeometry(TextureManager tex) throws NoFreeTextureUnitsExcpetion {
-		if(staticQuads.isEmpty()) {
-			//initialize
-			return;
-		}
-		
-		// sort staticQuads first by texture, then by uv patch within a texture
+	// sort staticQuads first by texture, then by uv patch within a texture
+	private void sortStaticQuads() {
 		Collections.sort(staticQuads, new Comparator<Quad>() {
 			public int compare(Quad lhs, Quad rhs) {
 				int comp = lhs.textureID - rhs.textureID;
 				if (comp != 0) {
 					return comp;
 				} else {
-					return hashUV(lhs.uvOrigin, lhs.uvScale) - hashUV(rhs.uvOrigin, lhs.uvScale);
+					int lhsHash = hashUV(lhs.uvOrigin, lhs.uvScale);
+					int rhsHash = hashUV(rhs.uvOrigin, rhs.uvScale);
+					return lhsHash < rhsHash ? -1 : (lhsHash == rhsHash ? 0 : 1);
 				}
 			}
 		});
+	}
+	
+	private void loadStaticGeometry(TextureManager tex) {
+		if(staticQuads.isEmpty()) {
+			//initialize
+			return;
+		}
 		
 		int currentTextureID = -1;
 		int currentUVHash = -1;
@@ -189,6 +306,7 @@ public class Room {
 		textureIndices = new int[nUniqueTextures];
 		uvIndices = new int[nUniqueUVs];
 		textures = new int[nUniqueTextures];
+		textureIDs = new int[nUniqueTextures];
 		uvOrigins = new float[nUniqueUVs][2];
 		uvScales = new float[nUniqueUVs][2];
 		
@@ -208,6 +326,7 @@ public class Room {
 				iTex++;
 				currentTextureID = q.textureID;
 				textures[iTex] = tex.referenceLoad(currentTextureID);
+				textureIDs[iTex] = currentTextureID;
 				textureIndices[iTex] = i;
 			}
 			
@@ -225,21 +344,22 @@ public class Room {
 
 	/**
 	 * Draws only the static geometry of the room. No Entities.
-	 * @param shaderProgram the OpenGL name of the shader to use
+	 * @param shader the shader program to use
 	 * @param mVPMatrix the view projection matrix to use
+	 * @param tex binds the room's textures
 	 */
-	public void draw(int shaderProgram, float[] mVPMatrix) {
-		int modelHandle = GLES20.glGetUniformLocation(shaderProgram, "modelMatrix");
-		int mvpHandle = GLES20.glGetUniformLocation(shaderProgram, "MVP");
-		int textureHandle = GLES20.glGetUniformLocation(shaderProgram, "uTexture");
-		int originHandle = GLES20.glGetUniformLocation(shaderProgram, "uvOrigin");
-		int scaleHandle = GLES20.glGetUniformLocation(shaderProgram, "uvScale");
-
-		int lightmapHandle = GLES20.glGetUniformLocation(shaderProgram, "uLightmap");
-		GLES20.glUniform1i(lightmapHandle, TextureManager.LIGHTMAP_UNIT);
-		int lightmapScaleHandle = GLES20.glGetUniformLocation(shaderProgram, "uLightmapScale");
-		GLES20.glUniform1f(lightmapScaleHandle, lighting.mapUVScale);
-		int lightmapUVHandle = GLES20.glGetUniformLocation(shaderProgram, "uLightmapUV");
+	public void draw(ShaderProgram shader, float[] mVPMatrix, TextureManager tex) {
+		GLES20.glUniform1i(shader.lightmapHandle, TextureManager.LIGHTMAP_UNIT);
+		float[] lightmapRects = lighting.atlas.uvRects;
+
+		if (batchStaticGeometry && staticMesh != null) {
+			staticMesh.draw(shader, mVPMatrix, tex);
+			// leave the lightmap uniforms as the per quad path would for whatever is drawn next
+			int last = quadModels.length - 1;
+			GLES20.glUniform2f(shader.lightmapScaleHandle, lightmapRects[4 * last + 2], lightmapRects[4 * last + 3]);
+			GLES20.glUniform2f(shader.lightmapUVHandle, lightmapRects[4 * last], lightmapRects[4 * last + 1]);
+			return;
+		}
 		
 		int iTex = 0;
 		int iUV = 0;
@@ -248,21 +368,20 @@ public class Room {
 		
 		float[] mvp = new float[16];
 		for (int i = 0; i < quadModels.length; i++) {
-			Quad.enableArrays(shaderProgram);
+			Quad.enableArrays(shader);
 
 			// change quad model matrix
 			Matrix.multiplyMM(mvp, 0, mVPMatrix, 0, quadModels[i], 0);
-			GLES20.glUniformMatrix4fv(mvpHandle, 1, false, mvp, 0);
-			GLES20.glUniformMatrix4fv(modelHandle, 1, false, quadModels[i], 0);
+			GLES20.glUniformMatrix4fv(shader.mvpHandle, 1, false, mvp, 0);
+			GLES20.glUniformMatrix4fv(shader.modelMatrixHandle, 1, false, quadModels[i], 0);
 
 			// change quad lightmap uv
-			float lightmapU = TextureManager.atlasU(i, lighting.nMapColumns);
-			float lightmapV = TextureManager.atlasV(i, lighting.nMapColumns);
-			GLES20.glUniform2f(lightmapUVHandle, lightmapU + lighting.mapUVOffset, lightmapV + lighting.mapUVOffset);
+			GLES20.glUniform2f(shader.lightmapUVHandle, lightmapRects[4 * i], lightmapRects[4 * i + 1]);
+			GLES20.glUniform2f(shader.lightmapScaleHandle, lightmapRects[4 * i + 2], lightmapRects[4 * i + 3]);
 
 			if (i == textureChangeIndex) {
 				// change texture
-				GLES20.glUniform1i(textureHandle, textures[iTex]);
+				GLES20.glUniform1i(shader.textureHandle, tex.bind(textures[iTex]));
 				
 				iTex++;
 				if (iTex < textureIndices.length)
@@ -270,8 +389,8 @@ public class Room {
 			}
 			if (i == uvChangeIndex) {
 				// change uv
-				GLES20.glUniform2f(originHandle, uvOrigins[iUV][0], uvOrigins[iUV][1]);
-				GLES20.glUniform2f(scaleHandle, uvScales[iUV][0], uvScales[iUV][1]);
+				GLES20.glUniform2f(shader.uvOriginHandle, uvOrigins[iUV][0], uvOrigins[iUV][1]);
+				GLES20.glUniform2f(shader.uvScaleHandle, uvScales[iUV][0], uvScales[iUV][1]);
 				
 				iUV++;
 				if (iUV < uvIndices.length)
@@ -280,12 +399,15 @@ public class Room {
 
 			//draw
 			GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, 0, 4);
-			Quad.disableArrays(shaderProgram);
+			Quad.disableArrays(shader);
 		}
 	}
 
 	public void destroy() {
-
+		if (staticMesh != null) {
+			staticMesh.destroy();
+			staticMesh = null;
+		}
 	}
 
 	/**
@@ -327,80 +449,30 @@ public class Room {
 	 * @param startCol
 	 * @param destRow
 	 * @param destCol
-	 * @param includeDest if true, the path will exclude the dest square and will end on an
+	 * @param includeDest if false, the path will exclude the dest square and will end on an
 	 *                    adjacent square.
 	 * @return a LinkedList of length 2 int[]s, each corresponding to the row and col of the next
 	 * square, or returns null if no such path exists.
 	 */
 	public LinkedList<int[]> findPath(int startRow, int startCol, final int destRow,
 									  final int destCol, boolean includeDest) {
-		boolean[][] discovered = new boolean[length][width]; //initialized to false
-		final int[][] g = new int[length][width];
-		int[][][] prev = new int[length][width][];
-
-		Comparator<int[]> squareComparator = new Comparator<int[]>() {
-			@Override
-			public int compare(int[] lhs, int[] rhs) {
-				double h_lhs = Math.hypot(destRow - lhs[0], destCol - lhs[1]);
-				double h_rhs = Math.hypot(destRow - rhs[0], destCol - rhs[1]);
-				double f_lhs = g[lhs[0]][lhs[1]] + h_lhs;
-				double f_rhs = g[rhs[0]][rhs[1]] + h_rhs;
-				if (f_lhs > f_rhs)
-					return 1;
-				else if (f_lhs < f_rhs)
-					return -1;
-				else return
-					0;
-			}
-		};
-
-		PriorityQueue<int[]> frontier = new PriorityQueue<int[]>(4, squareComparator);
-
-		int[] curSquare = new int[2];
-		curSquare[0] = startRow;
-		curSquare[1] = startCol;
-		frontier.add(curSquare);
-
-		Outer:
-		while ((curSquare = frontier.poll()) != null) {
-			if (curSquare[0] == destRow && curSquare[1] == destCol)
-				break;
-
-			for (int i = 0; i < 4; i++) {
-				double theta = Math.PI * .5 * i;
-				int adjRow = (int) Math.round(curSquare[0] - Math.sin(theta));
-				int adjCol = (int) Math.round(curSquare[1] + Math.cos(theta));
-				if (adjRow < 0 || adjRow >= length || adjCol < 0 || adjCol >= width)
-					continue;
-				if (!discovered[adjRow][adjCol]) {
-					discovered[adjRow][adjCol] = true;
-					if (!includeDest && adjRow == destRow && adjCol == destCol)
-						break Outer;
-					if (grid[adjRow][adjCol] != null)
-						continue;
-					//set ptr to prev square
-					prev[adjRow][adjCol] = curSquare;
-					//cost so far
-					g[adjRow][adjCol] = g[curSquare[0]][curSquare[1]] + 1;
-
-					int[] adjSquare = new int[2];
-					adjSquare[0] = adjRow;
-					adjSquare[1] = adjCol;
-					frontier.add(adjSquare);
-				}
-			}
-		}
-
-		if (curSquare != null) { //success, reconstruct path
-			LinkedList<int[]> path = new LinkedList<int[]>();
-			while (curSquare != null && !(curSquare[0] == startRow && curSquare[1] == startCol)) {
-				path.addFirst(curSquare);
-				curSquare = prev[curSquare[0]][curSquare[1]];
-			}
-			return path;
-		} else {
+		if (findPath(startRow, startCol, destRow, destCol, includeDest, scratchPath))
+			return scratchPath.toList();
+		else
 			return null;
-		}
+	}
+
+	/**
+	 * Allocation free version of findPath() that fills a reusable IntPath.
+	 *
+	 * Uses this room's PathContext, so it must not be called from more than one thread at a time.
+	 *
+	 * @param result the path to fill, excluding the start square
+	 * @return true if a path was found, false if no such path exists
+	 */
+	public boolean findPath(int startRow, int startCol, int destRow, int destCol,
+	                        boolean includeDest, IntPath result) {
+		return pathContext.findPath(this, startRow, startCol, destRow, destCol, includeDest, result);
 	}
 
 	/**
@@ -412,59 +484,158 @@ public class Room {
 	 * @return an array of {row, col} int[]s representing all reachable squares
 	 */
 	public int[][] getRange(int startRow, int startCol, int range) {
-		boolean[][] discovered = new boolean[length][width]; //initialized to false
-		boolean[][] reachable = new boolean[length][width]; //initialized to false
-		final int[][] g = new int[length][width]; //initialized to zero
-		int nReachable = 0;
-
-		Queue<int[]> frontier = new LinkedList<int[]>();
-
-		int[] curSquare = new int[2];
-		curSquare[0] = startRow;
-		curSquare[1] = startCol;
-		frontier.add(curSquare);
-
-		Outer:
-		while ((curSquare = frontier.poll()) != null) {
-			reachable[curSquare[0]][curSquare[1]] = true;
-			nReachable++;
-			if (g[curSquare[0]][curSquare[1]] == range)
-				continue;
-			for (int i = 0; i < 4; i++) {
-				double theta = Math.PI * .5 * i;
-				int adjRow = (int) Math.round(curSquare[0] - Math.sin(theta));
-				int adjCol = (int) Math.round(curSquare[1] + Math.cos(theta));
-				if (adjRow < 0 || adjRow >= length || adjCol < 0 || adjCol >= width) //check in bounds
-					continue;
-				if (!discovered[adjRow][adjCol]) { //if not discovered
-					discovered[adjRow][adjCol] = true;
-					if (grid[adjRow][adjCol] != null)
-						continue;
-
-					//cost so far
-					g[adjRow][adjCol] = g[curSquare[0]][curSquare[1]] + 1;
-
-					int[] adjSquare = new int[2];
-					adjSquare[0] = adjRow;
-					adjSquare[1] = adjCol;
-					frontier.add(adjSquare);
-				}
-			}
+		int[] squares = getRangeSquares(startRow, startCol, range);
+		int[][] options = new int [squares.length][2];
+		for (int i = 0; i < squares.length; i++) {
+			options[i][0] = squares[i] / width;
+			options[i][1] = squares[i] % width;
 		}
+		return options;
+	}
 
-		int[][] options = new int [nReachable][2];
-		int index = 0;
-		for (int row = 0; row < length; row++) {
-			for (int col = 0; col < width; col++) {
-				if (reachable[row][col]) {
-					options[index][0] = row;
-					options[index][1] = col;
-					index++;
-				}
-			}
+	/**
+	 * Gets all squares reachable within range # of hops from a start square.
+	 *
+	 * Results are cached until the grid changes, so asking again for the same start square and
+	 * range is a lookup. The returned array is shared and must not be modified.
+	 *
+	 * @param startRow the row of the start square
+	 * @param startCol the column of the start square
+	 * @param range the maximum length of a path from the start square
+	 * @return the packed row * width + col of every reachable square, in ascending order
+	 */
+	public int[] getRangeSquares(int startRow, int startCol, int range) {
+		if (rangeCacheVersion != gridVersion || rangeCache.size() >= MAX_CACHED_RANGES) {
+			rangeCache.clear();
+			rangeCacheVersion = gridVersion;
+		}
+		Long key = ((long) (startRow * width + startCol) << 32) | (range & 0xffffffffL);
+		int[] squares = rangeCache.get(key);
+		if (squares == null) {
+			squares = pathContext.getRange(this, startRow, startCol, range);
+			rangeCache.put(key, squares);
 		}
+		return squares;
+	}
 
-		return options;
+	/**
+	 * Gets a flow field leading to the nearest unit of a group.
+	 *
+	 * The field is shared and kept up to date with the grid, so it is only rebuilt after an entity
+	 * has been added, removed or moved.
+	 *
+	 * @param targetGroup the group id of the units to lead to
+	 * @return the up to date field
+	 */
+	public DistanceField getDistanceField(int targetGroup) {
+		DistanceField field = distanceFields.get(targetGroup);
+		if (field == null) {
+			field = new DistanceField(this, targetGroup);
+			distanceFields.put(targetGroup, field);
+		}
+		field.update();
+		return field;
+	}
+
+	/**
+	 * Gets the squares the units of a group could attack this turn.
+	 *
+	 * The map is shared and kept up to date with the grid, recounting only the units a change
+	 * could affect.
+	 *
+	 * @param group the group id of the attacking units
+	 * @return the up to date map
+	 */
+	public ThreatMap getThreatMap(int group) {
+		ThreatMap map = threatMaps.get(group);
+		if (map == null) {
+			map = new ThreatMap(this, group);
+			threatMaps.put(group, map);
+		}
+		map.update();
+		return map;
+	}
+
+	//Counts a change to a square's occupancy
+	private void gridChanged(int row, int col) {
+		gridVersion++;
+		for (ThreatMap map : threatMaps.values())
+			map.markChanged(row, col);
+	}
+
+	/**
+	 * Gets the number of changes made to the grid's occupancy so far.
+	 *
+	 * @return a counter that changes whenever an entity is added, removed or moved
+	 */
+	public int getGridVersion() {
+		return gridVersion;
+	}
+
+	/**
+	 * Gets the simulated time spent in this room. Use this rather than the wall clock to time
+	 * anything in the room, so that it plays out the same at any frame rate or simulation speed.
+	 *
+	 * @return the time in ms
+	 */
+	public long getTime() {
+		return timeNanos / 1000000;
+	}
+
+	/**
+	 * Advances the room's simulated time by one simulation step.
+	 *
+	 * @param nanos the length of the step in ns
+	 */
+	void advanceTime(long nanos) {
+		timeNanos += nanos;
+	}
+
+	/**
+	 * Advances this room's simulated time to at least another room's, so that times taken there,
+	 * such as when a character's animation started, are not in this room's future.
+	 *
+	 * @param other the room that characters are arriving from
+	 */
+	void catchUpTime(Room other) {
+		timeNanos = Math.max(timeNanos, other.timeNanos);
+	}
+
+	/**
+	 * Gets the number of columns in the grid.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the number of rows in the grid.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the entity occupying a grid square.
+	 *
+	 * @return the entity or null if the square is free
+	 */
+	public Entity getEntityAt(int row, int col) {
+		return grid[row][col];
+	}
+
+	/**
+	 * Gets the characters in this room. The list must not be modified.
+	 */
+	public List<Character> getCharacters() {
+		return characters;
+	}
+
+	/**
+	 * Gets the lighting of this room, which the generator fills with its static lights.
+	 */
+	public RoomLighting getLighting() {
+		return lighting;
 	}
 
 }
@@ -11,24 +11,74 @@ import android.opengl.Matrix;
 public class RoomGenerator {
 	
 	public static final float STANDARD_OBJECT_TILT_ANGLE = 45;
+	/** Chance of each inner square getting a solid block unless told otherwise */
+	public static final float DEFAULT_BLOCK_DENSITY = .1f;
+	/** The smallest width and length of a room with a random size */
+	public static final int MIN_WIDTH = 7, MIN_LENGTH = 5;
 	Random rand;
+	private final long seed;
+	private final int width, length;
+	private final float blockDensity;
+	//Seed of everything random in load(), so loading again after an unload gives the same room
+	private long loadSeed;
+	//Offset along each side of the room's door, indexed by Dungeon.SIDE_*, or null for random doors
+	private int[] doorOffsets;
 	
 	public RoomGenerator(long seed) {
+		this(seed, 0, 0, DEFAULT_BLOCK_DENSITY);
+	}
+
+	/**
+	 * Creates a generator for rooms of a fixed size and obstacle density, e.g. for benchmarks.
+	 *
+	 * @param seed the seed of everything random about the room
+	 * @param width the number of columns, or 0 for a random width
+	 * @param length the number of rows, or 0 for a random length
+	 * @param blockDensity the chance of each square not on the border getting a solid block
+	 */
+	public RoomGenerator(long seed, int width, int length, float blockDensity) {
 		rand = new Random(seed);
+		this.seed = seed;
+		this.width = width;
+		this.length = length;
+		this.blockDensity = blockDensity;
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Places doors where a dungeon needs them instead of at random. Must be called before generate().
+	 *
+	 * @param doorOffsets the column of the door on the north and south sides, or the row of the
+	 *                    door on the east and west sides, indexed by Dungeon.SIDE_*, -1 for no door
+	 */
+	public void setDoors(int[] doorOffsets) {
+		this.doorOffsets = doorOffsets;
 	}
 	
 	public void generate(Room room) {
-		room.width = rand.nextInt(10) + 7;
-		room.length = rand.nextInt(5) + 5;
+		room.width = width > 0 ? width : rand.nextInt(10) + MIN_WIDTH;
+		room.length = length > 0 ? length : rand.nextInt(5) + MIN_LENGTH;
 		room.grid = new Entity[room.length][room.width];
 		room.edges = new EdgeEntity[(2 * room.width + 1) * room.length + room.width];
 		for (int row = 1; row < room.length - 1; row++) {
 			for (int col = 1; col < room.width - 1; col++) {
-				if (rand.nextFloat() < .1f)
+				if (rand.nextFloat() < blockDensity)
 					room.grid[row][col] = SolidBlock.singleton;
 			}
 		}
 		
+		if (doorOffsets != null) {
+			for (int side = 0; side < 4; side++) {
+				if (doorOffsets[side] >= 0)
+					addDoor(room, side, doorOffsets[side]);
+			}
+			loadSeed = rand.nextLong();
+			return;
+		}
+
 		//gen doors
 		int dir = EdgeEntity.DIR_HORIZONTAL;
 		for (int col = 0; col < room.width - 1; col++) { // TODO generate doors smarter and so they don't overlap solid blocks
@@ -68,33 +118,55 @@ public class RoomGenerator {
 				room.addEdgeEntity(door);
 			}
 		}
+		loadSeed = rand.nextLong();
+	}
+
+	/**
+	 * Adds a door on the border of the room.
+	 *
+	 * @param side the side of the room, one of Dungeon.SIDE_*
+	 * @param offset the column of the door on the north and south sides, the row on the others
+	 */
+	private void addDoor(Room room, int side, int offset) {
+		Door door = new Door();
+		if (side == Dungeon.SIDE_NORTH || side == Dungeon.SIDE_SOUTH) {
+			door.dir = EdgeEntity.DIR_HORIZONTAL;
+			door.posx = room.originx + offset;
+			door.posz = room.originz + (side == Dungeon.SIDE_NORTH ? 0 : room.length) - .5f;
+		} else {
+			door.dir = EdgeEntity.DIR_VERTICAL;
+			door.posx = room.originx + (side == Dungeon.SIDE_WEST ? 0 : room.width) - .5f;
+			door.posz = room.originz + offset;
+		}
+		room.addEdgeEntity(door);
 	}
 	
 	public void load(Room room) {
+		rand.setSeed(loadSeed);
 		for (int row = 0; row < room.length; row++) {
 			for (int col = 0; col < room.width; col++) {
 				if (room.grid[row][col] != SolidBlock.singleton) {
-					int floorTile = R.drawable.dungeonfloortile1;
+					AtlasRegion floorTile = Atlases.DUNGEONFLOORTILE1;
 					if (rand.nextFloat() < .5f) {
 						switch (rand.nextInt(4)) {
 						case 0:
-							floorTile = R.drawable.dirt;
+							floorTile = Atlases.DIRT;
 							break;
 						case 1:
-							floorTile = R.drawable.dungeonfloortile1_1;
+							floorTile = Atlases.DUNGEONFLOORTILE1_1;
 							break;
 						case 2:
-							floorTile = R.drawable.dungeonfloortile1_2;
+							floorTile = Atlases.DUNGEONFLOORTILE1_2;
 							break;
 						case 3:
-							floorTile = R.drawable.dungeonfloortile2;
+							floorTile = Atlases.DUNGEONFLOORTILE2;
 							break;
 						}
 					}
 					addFloorQuad(room, row, col, floorTile);
 					if (rand.nextFloat() < .1f) {
 						int item = rand.nextInt(13);
-						addDecorationObject(room, row, col, R.drawable.objectsatlas1, item, 4);
+						addDecorationObject(room, row, col, Atlases.OBJECTSATLAS1.getTile(item, 4));
 					}
 					
 					for (int i = 0; i < 4; i++) {
@@ -108,16 +180,15 @@ public class RoomGenerator {
 						// load walls (if there's no door or anything already there)
 						if (room.edges[room.edgeIndexAt(posx, posz)] == null) {
 							if (adjRow < 0 || adjRow >= room.length || adjCol < 0 || adjCol >= room.width) {
-								addWallQuad(room, row, col, i, R.drawable.dungeonwalltile3);
+								addWallQuad(room, row, col, i, Atlases.DUNGEONWALLTILE3);
 								if (rand.nextFloat() < .1f)
-									addTorch(room, row, col, i, R.drawable.objtorch2);
-									///
+									addTorch(room, row, col, i, Atlases.OBJTORCH2);
 								continue;
 							}
 							if (room.grid[adjRow][adjCol] == SolidBlock.singleton) {
-								addWallQuad(room, row, col, i, R.drawable.dungeonwalltile2);
+								addWallQuad(room, row, col, i, Atlases.DUNGEONWALLTILE2);
 								if (rand.nextFloat() < .1f)
-									addTorch(room, row, col, i, R.drawable.objtorch2);
+									addTorch(room, row, col, i, Atlases.OBJTORCH2);
 							}
 						}
 					}
@@ -126,7 +197,7 @@ public class RoomGenerator {
 		}
 	}
 
-	private void addFloorQuad(Room room, int row, int col, int texture) {
+	private void addFloorQuad(Room room, int row, int col, AtlasRegion texture) {
 		float[] model = new float[16];
 		Matrix.setIdentityM(model, 0);
 		Matrix.translateM(model, 0, room.originx + col, 0, room.originz + row);
@@ -135,7 +206,7 @@ public class RoomGenerator {
 		room.staticQuads.add(floor);
 	}
 
-	private void addTorch(Room room, int row, int col, int dir, int texture) {
+	private void addTorch(Room room, int row, int col, int dir, AtlasRegion texture) {
 		float[] model = new float[16];
 		Matrix.setIdentityM(model, 0);
 		Matrix.translateM(model, 0, room.originx + col, 0, room.originz + row);
@@ -149,11 +220,10 @@ public class RoomGenerator {
 		float[] lightPos = new float[4];
 		Matrix.multiplyMV(lightPos, 0, model, 0, origin, 0);
 
-//		RoomLighting.Light light = room.lighting.createLight(lightPos[0], lightPos[1], lightPos[2], .7f, .7f, .5f);
-//		room.lighting.addStaticLight(light);
+		room.lighting.addStaticLight(new RoomLighting.Light(lightPos[0], lightPos[1], lightPos[2], .7f, .7f, .5f));
 	}
 
-	private void addWallQuad(Room room, int row, int col, int dir, int texture) {
+	private void addWallQuad(Room room, int row, int col, int dir, AtlasRegion texture) {
 		float[] model = new float[16];
 		Matrix.setIdentityM(model, 0);
 		Matrix.translateM(model, 0, room.originx + col, 0, room.originz + row);
@@ -163,7 +233,7 @@ public class RoomGenerator {
 		room.staticQuads.add(wall);
 	}
 	
-	private void addDecorationObject(Room room, int row, int col, int texture, int atlasIndex, int atlasSize) {
+	private void addDecorationObject(Room room, int row, int col, AtlasRegion texture) {
 		float[] model = new float[16];
 		Matrix.setIdentityM(model, 0);
 		Matrix.translateM(model, 0, room.originx + col, 0, room.originz + row);
@@ -171,10 +241,6 @@ public class RoomGenerator {
 		Matrix.scaleM(model, 0, -.5f, .5f, .5f);
 		Matrix.translateM(model, 0, 0, .45f, 0);
 		Quad obj = Quad.createStaticQuad(Type.DECORATION, model, texture);
-		obj.uvOrigin[0] = TextureManager.atlasU(atlasIndex, atlasSize);
-		obj.uvOrigin[1] = TextureManager.atlasV(atlasIndex, atlasSize);
-		obj.uvScale[0] = 1 / (float) atlasSize;
-		obj.uvScale[1] = 1 / (float) atlasSize;
 		room.staticQuads.add(obj);
 	}
 
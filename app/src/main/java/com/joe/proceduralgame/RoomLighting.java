@@ -1,17 +1,57 @@
 package com.joe.proceduralgame;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.joe.proceduralgame.entities.SolidBlock;
+
 import android.graphics.Bitmap;
 import android.graphics.Color;
 
 public class RoomLighting {
 
+	/**
+	 * A point light that never moves, baked into the lightmap.
+	 */
+	public static class Light {
+		public final float x, y, z;
+		public final float red, green, blue;
+
+		public Light(float x, float y, float z, float red, float green, float blue) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.red = red;
+			this.green = green;
+			this.blue = blue;
+		}
+	}
+
+	//Past this distance a light adds less than half a step of an 8 bit channel
+	private static final float MAX_LIGHT_DISTANCE = 8;
+	//Texels are traced from this far off their quad, on the light's side, so they don't hit their own wall
+	private static final float SURFACE_OFFSET = .01f;
+	//Texels are sampled this much inside their quad so edge texels belong to the quad's own square
+	private static final float TEXEL_INSET = .98f;
+	//Tasks with at most this many tiles bake them rather than splitting
+	private static final int TILES_PER_TASK = 8;
+	//Shared by every room; its threads are daemons, so it never keeps the app alive
+	private static final ForkJoinPool bakePool = new ForkJoinPool();
+	//Changed whenever baking changes, so lightmaps cached by older versions are never used
+	private static final int BAKE_VERSION = 3;
+	//Where baked lightmaps are kept between loads, or null to always bake
+	private static volatile LightmapCache cache;
+
 	private final Room room;
+	private final List<Light> staticLights = new ArrayList<Light>();
 	private Bitmap lightMap;
+	private int[] pixels; //ARGB pixels of the lightmap, row by row, null until prepared
+	private boolean[] opaque; //whether each grid square blocks light, row by row
 	private int mapSize;
-	private int mapTileSize;
-	public int nMapColumns; //The number of columns (and rows) in the lightmap
-	public float mapUVScale;
-	public float mapUVOffset;
+	private int texelBudget = LightmapAtlas.DEFAULT_TEXEL_BUDGET;
+	public LightmapAtlas atlas; //Where each static quad's tile is, null until prepared
 
 	/**
 	 * Creates a lighting system for a gen room
@@ -22,33 +62,298 @@ public class RoomLighting {
 		this.room = room;
 	}
 
-	private void computeLightmap() {
+	/**
+	 * Sets where baked lightmaps are kept, so rooms lit before are read back instead of baked.
+	 *
+	 * @param lightmapCache the cache, or null to always bake
+	 */
+	public static void setCache(LightmapCache lightmapCache) {
+		cache = lightmapCache;
+	}
+
+	/**
+	 * Adds a light that is baked into the lightmap the next time it is prepared.
+	 */
+	public void addStaticLight(Light light) {
+		staticLights.add(light);
+	}
+
+	/**
+	 * Sets how many texels the lightmap's tiles may take the next time it is prepared, trading the
+	 * sharpness of its lighting for bake time and memory.
+	 */
+	public void setTexelBudget(int texelBudget) {
+		this.texelBudget = texelBudget;
+	}
+
+	/**
+	 * Lays out the lightmap and bakes its pixels, or reads them from the cache if this room has been
+	 * baked before. Needs no GL context, so it may be done ahead of time on any thread.
+	 */
+	public void prepare() {
+		atlas = LightmapAtlas.pack(room.staticQuads, texelBudget);
+		mapSize = atlas.size;
+		if (pixels == null || pixels.length != mapSize * mapSize)
+			pixels = new int[mapSize * mapSize];
+
+		int nQuads = room.staticQuads.size();
+		if (nQuads == 0)
+			return;
+
+		opaque = new boolean[room.width * room.length];
+		for (int row = 0; row < room.length; row++) {
+			for (int col = 0; col < room.width; col++)
+				opaque[row * room.width + col] = room.grid[row][col] == SolidBlock.singleton;
+		}
+
+		LightmapCache lightmapCache = cache;
+		long key = 0;
+		if (lightmapCache != null) {
+			key = computeKey();
+			if (lightmapCache.read(key, pixels, mapSize))
+				return;
+		}
+		bakePool.invoke(new BakeTask(0, nQuads));
+		if (lightmapCache != null)
+			lightmapCache.write(key, pixels, mapSize);
+	}
+
+	/**
+	 * Hashes everything the baked lightmap depends on: the generator's seed, the room's layout, the
+	 * static quads and the lights.
+	 */
+	private long computeKey() {
+		long hash = mix(0, BAKE_VERSION);
+		hash = mix(hash, mapSize);
+		hash = mix(hash, atlas.texelsPerUnit);
+		long seed = room.generator != null ? room.generator.getSeed() : 0;
+		hash = mix(hash, (int) seed);
+		hash = mix(hash, (int) (seed >>> 32));
+		hash = mix(hash, room.width);
+		hash = mix(hash, room.length);
+		hash = mix(hash, room.originx);
+		hash = mix(hash, room.originz);
+		for (boolean blocked : opaque)
+			hash = mix(hash, blocked ? 1 : 0);
+		hash = mix(hash, room.staticQuads.size());
 		for (int i = 0; i < room.staticQuads.size(); i++) {
-			final int minX = mapSize / nMapColumns * (i % nMapColumns);
-			final int minY = mapSize / nMapColumns * (i / nMapColumns);
-			for (int pixelX = minX; pixelX < minX + mapTileSize; pixelX++) {
-				for (int pixelY = minY; pixelY < minY + mapTileSize; pixelY++) {
-					lightMap.setPixel(pixelX, pixelY, Color.rgb(200, 200, 200));
-					lightMap.setPixel(minX, pixelY, Color.rgb(0, 0, 200));
-					lightMap.setPixel(minX + mapTileSize - 1, pixelY, Color.rgb(200, 200, 0));
-				}
-				lightMap.setPixel(pixelX, minY, Color.rgb(200, 0, 0));
-				lightMap.setPixel(pixelX, minY + mapTileSize - 1, Color.rgb(0, 200, 0));
+			Quad q = room.staticQuads.get(i);
+			hash = mix(hash, q.type.ordinal());
+			for (float f : q.modelMatrix)
+				hash = mix(hash, Float.floatToIntBits(f));
+		}
+		hash = mix(hash, staticLights.size());
+		for (Light light : staticLights) {
+			hash = mix(hash, Float.floatToIntBits(light.x));
+			hash = mix(hash, Float.floatToIntBits(light.y));
+			hash = mix(hash, Float.floatToIntBits(light.z));
+			hash = mix(hash, Float.floatToIntBits(light.red));
+			hash = mix(hash, Float.floatToIntBits(light.green));
+			hash = mix(hash, Float.floatToIntBits(light.blue));
+		}
+		return hash;
+	}
+
+	//folds a value into a hash, scrambling it with the splitmix64 finalizer
+	private static long mix(long hash, int value) {
+		long z = (hash ^ (value & 0xffffffffL)) + 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Bakes a range of the static quads' tiles, splitting it among the pool's threads.
+	 *
+	 * Every tile is written by exactly one task and everything else is only read, so tasks share
+	 * nothing that needs locking.
+	 */
+	private class BakeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int fromQuad, toQuad;
+
+		BakeTask(int fromQuad, int toQuad) {
+			this.fromQuad = fromQuad;
+			this.toQuad = toQuad;
+		}
+
+		@Override
+		protected void compute() {
+			if (toQuad - fromQuad <= TILES_PER_TASK) {
+				for (int i = fromQuad; i < toQuad; i++)
+					bakeTile(i);
+			} else {
+				int middle = (fromQuad + toQuad) >>> 1;
+				invokeAll(new BakeTask(fromQuad, middle), new BakeTask(middle, toQuad));
 			}
 		}
 	}
 
-	public void load(TextureManager tex) {
-		mapSize = 128;
-		lightMap = Bitmap.createBitmap(mapSize, mapSize, Bitmap.Config.RGB_565);
+	/**
+	 * Computes the light falling on each texel of a static quad's tile.
+	 *
+	 * @param i the index of the quad in the room's static quads
+	 */
+	private void bakeTile(int i) {
+		float[] m = room.staticQuads.get(i).modelMatrix;
+		final int minX = atlas.tileX[i];
+		final int minY = atlas.tileY[i];
+		final int tileWidth = atlas.tileWidth[i];
+		final int tileHeight = atlas.tileHeight[i];
+
+		//normal in world space, the cross product of the quad's x and y axes. model * {0, 0, 1, 0}
+		//would be zero for quads flattened with a z scale of 0, like torches
+		float nx = m[1] * m[6] - m[2] * m[5];
+		float ny = m[2] * m[4] - m[0] * m[6];
+		float nz = m[0] * m[5] - m[1] * m[4];
+		float nLength = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+		//a quad with no area is left with no normal, which no light faces, rather than NaN
+		if (nLength > 0) {
+			nx /= nLength;
+			ny /= nLength;
+			nz /= nLength;
+		}
+
+		//the texels span the quad edge to edge, as the lightmap uvs do
+		float stepX = TEXEL_INSET / (tileWidth - 1);
+		float stepY = TEXEL_INSET / (tileHeight - 1);
+		float first = -.5f * TEXEL_INSET;
+		for (int texelY = 0; texelY < tileHeight; texelY++) {
+			float y = -first - texelY * stepY; //v runs down the quad
+			for (int texelX = 0; texelX < tileWidth; texelX++) {
+				float x = first + texelX * stepX;
+				//model * {x, y, 0, 1}
+				float px = m[0] * x + m[4] * y + m[12];
+				float py = m[1] * x + m[5] * y + m[13];
+				float pz = m[2] * x + m[6] * y + m[14];
+				pixels[(minY + texelY) * mapSize + minX + texelX] = shade(px, py, pz, nx, ny, nz);
+			}
+		}
+	}
+
+	/**
+	 * Sums the light from every static light that can see a point.
+	 *
+	 * Quads are lit from either side, since walls between the point and a light block it anyway.
+	 *
+	 * @return the light as an opaque color
+	 */
+	private int shade(float px, float py, float pz, float nx, float ny, float nz) {
+		float red = 0, green = 0, blue = 0;
+		for (int i = 0; i < staticLights.size(); i++) {
+			Light light = staticLights.get(i);
+			float dx = light.x - px;
+			float dy = light.y - py;
+			float dz = light.z - pz;
+			float dist = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+			if (dist >= MAX_LIGHT_DISTANCE || dist == 0)
+				continue;
+			float facing = nx * dx + ny * dy + nz * dz;
+			if (facing == 0)
+				continue;
+			float offset = facing > 0 ? SURFACE_OFFSET : -SURFACE_OFFSET;
+			if (isOccluded(px + nx * offset, pz + nz * offset, light.x, light.z))
+				continue;
+			//same falloff the shader used for dynamic lights
+			float ndot = Math.abs(facing) / dist;
+			float intensity = ndot * (dist + 1) / (2 * dist * dist * dist + dist + 1);
+			red += intensity * light.red;
+			green += intensity * light.green;
+			blue += intensity * light.blue;
+		}
+		return Color.rgb(toChannel(red), toChannel(green), toChannel(blue));
+	}
+
+	private static int toChannel(float light) {
+		return Math.min(255, Math.round(light * 255));
+	}
+
+	/**
+	 * Checks if a wall or solid block stands between two points, looking from above.
+	 *
+	 * Walks every grid square the segment passes through. Squares outside the room count as walls.
+	 */
+	private boolean isOccluded(float fromX, float fromZ, float toX, float toZ) {
+		//grid coordinates, where square (row, col) spans [col, col + 1) x [row, row + 1)
+		float x0 = fromX - room.originx + .5f;
+		float z0 = fromZ - room.originz + .5f;
+		float x1 = toX - room.originx + .5f;
+		float z1 = toZ - room.originz + .5f;
+		int col = (int) Math.floor(x0);
+		int row = (int) Math.floor(z0);
+		int endCol = (int) Math.floor(x1);
+		int endRow = (int) Math.floor(z1);
+
+		float dx = x1 - x0;
+		float dz = z1 - z0;
+		int stepCol = dx > 0 ? 1 : -1;
+		int stepRow = dz > 0 ? 1 : -1;
+		//fraction of the segment between crossings of column and row lines
+		float tDeltaX = dx != 0 ? Math.abs(1 / dx) : Float.POSITIVE_INFINITY;
+		float tDeltaZ = dz != 0 ? Math.abs(1 / dz) : Float.POSITIVE_INFINITY;
+		//fraction of the segment at which the next column and row lines are crossed
+		float tMaxX = dx > 0 ? (col + 1 - x0) * tDeltaX : dx < 0 ? (x0 - col) * tDeltaX : Float.POSITIVE_INFINITY;
+		float tMaxZ = dz > 0 ? (row + 1 - z0) * tDeltaZ : dz < 0 ? (z0 - row) * tDeltaZ : Float.POSITIVE_INFINITY;
+
+		while (true) {
+			if (row < 0 || row >= room.length || col < 0 || col >= room.width || opaque[row * room.width + col])
+				return true;
+			if (row == endRow && col == endCol)
+				return false;
+			if (tMaxX < tMaxZ) {
+				if (tMaxX > 1)
+					return false;
+				col += stepCol;
+				tMaxX += tDeltaX;
+			} else {
+				if (tMaxZ > 1)
+					return false;
+				row += stepRow;
+				tMaxZ += tDeltaZ;
+			}
+		}
+	}
+
+	/**
+	 * Gets the baked lightmap's ARGB pixels, row by row, or null until prepared. Must not be
+	 * modified.
+	 */
+	int[] getPixels() {
+		return pixels;
+	}
 
-		nMapColumns = (int) Math.round(Math.pow(2, Math.ceil(Math.log10(room.staticQuads.size()) * Math.log(10) / Math.log(4))));
-		mapTileSize = mapSize / nMapColumns;
-		mapUVScale = (mapTileSize - 1) / (float) mapSize;
-		mapUVOffset = .5f / mapSize;
+	/**
+	 * Gets the lights baked into the lightmap. Must not be modified.
+	 */
+	List<Light> getStaticLights() {
+		return staticLights;
+	}
 
-		computeLightmap();
+	/**
+	 * Drops the lights and the lightmap, so the next prepare() starts over from the lights the
+	 * generator adds again.
+	 */
+	public void release() {
+		staticLights.clear();
+		atlas = null;
+		pixels = null;
+		opaque = null;
+		if (lightMap != null) {
+			lightMap.recycle();
+			lightMap = null;
+		}
+	}
 
+	/**
+	 * Uploads the lightmap, preparing it first if that hasn't been done.
+	 */
+	public void load(TextureManager tex) {
+		if (pixels == null)
+			prepare();
+		if (lightMap != null)
+			lightMap.recycle();
+		lightMap = Bitmap.createBitmap(pixels, mapSize, mapSize, Bitmap.Config.RGB_565);
 		tex.setLightmap(lightMap);
 	}
 
@@ -0,0 +1,92 @@
+package com.joe.proceduralgame;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * A linked vbasic/fbasic shader program and the locations of all of its uniforms and attributes.
+ *
+ * Locations are resolved once when the program is created so drawing code never looks them up by
+ * name.
+ */
+public class ShaderProgram {
+
+	/** The OpenGL name of the program */
+	public final int program;
+
+	// attributes
+	public final int positionHandle;
+	public final int texCoordsHandle;
+	public final int lightmapCoordsHandle;
+	public final int colorHandle;
+
+	// vertex uniforms
+	public final int modelMatrixHandle;
+	public final int mvpHandle;
+	public final int uvOriginHandle;
+	public final int uvScaleHandle;
+	public final int lightmapUVHandle;
+	public final int lightmapScaleHandle;
+
+	// fragment uniforms
+	public final int textureHandle;
+	public final int lightmapHandle;
+	public final int colorMultiplierHandle;
+	public final int texturelessHandle;
+	public final int normallessHandle;
+	public final int emissiveHandle;
+
+	/**
+	 * Resolves every location of a linked program.
+	 *
+	 * A missing location is logged here, once, instead of being silently ignored every frame.
+	 *
+	 * @param program the OpenGL name of a linked vbasic/fbasic program
+	 */
+	public ShaderProgram(int program) {
+		this.program = program;
+
+		positionHandle = attribute("vPosition");
+		texCoordsHandle = attribute("vTexCoords");
+		lightmapCoordsHandle = attribute("vLightmapCoords");
+		colorHandle = attribute("vColor");
+		//only SpriteBatch streams colors, everything else is drawn with this constant one
+		GLES20.glVertexAttrib4f(colorHandle, 1, 1, 1, 1);
+
+		modelMatrixHandle = uniform("modelMatrix");
+		mvpHandle = uniform("MVP");
+		uvOriginHandle = uniform("uvOrigin");
+		uvScaleHandle = uniform("uvScale");
+		lightmapUVHandle = uniform("uLightmapUV");
+		lightmapScaleHandle = uniform("uLightmapScale");
+
+		textureHandle = uniform("uTexture");
+		lightmapHandle = uniform("uLightmap");
+		colorMultiplierHandle = uniform("uColorMultiplier");
+		texturelessHandle = uniform("uTextureless");
+		normallessHandle = uniform("uNormalless");
+		emissiveHandle = uniform("uEmissive");
+	}
+
+	/**
+	 * Makes this the active program.
+	 */
+	public void use() {
+		GLES20.glUseProgram(program);
+	}
+
+	private int attribute(String name) {
+		int location = GLES20.glGetAttribLocation(program, name);
+		if (location == -1)
+			Log.e("game", "Shader attribute not found: " + name);
+		return location;
+	}
+
+	private int uniform(String name) {
+		int location = GLES20.glGetUniformLocation(program, name);
+		if (location == -1)
+			Log.e("game", "Shader uniform not found (or optimized out): " + name);
+		return location;
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.joe.proceduralgame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands RenderSnapshots from one producer thread to one consumer thread without locking.
+ *
+ * Triple buffered: the producer fills its back snapshot while the consumer draws its front one,
+ * and the most recently published snapshot waits in the middle. Publishing swaps back with middle
+ * and taking swaps front with middle, so neither thread ever waits for the other, and the consumer
+ * always gets the newest complete frame.
+ */
+public class SnapshotBuffer {
+
+	private RenderSnapshot back = new RenderSnapshot(); // producer only
+	private final AtomicReference<RenderSnapshot> middle =
+			new AtomicReference<RenderSnapshot>(new RenderSnapshot());
+	private RenderSnapshot front = new RenderSnapshot(); // consumer only
+	private boolean hasFront = false; // consumer only
+
+	/**
+	 * Gets the cleared snapshot for the producer to fill.
+	 */
+	public RenderSnapshot beginWrite() {
+		back.clear();
+		return back;
+	}
+
+	/**
+	 * Publishes the snapshot returned by beginWrite(). It must not be touched afterwards.
+	 */
+	public void publish() {
+		back.fresh = true;
+		back = middle.getAndSet(back);
+	}
+
+	/**
+	 * Gets the newest published snapshot for the consumer to draw.
+	 *
+	 * The snapshot stays valid until the next call. The same snapshot is returned again if nothing
+	 * new has been published.
+	 *
+	 * @return the newest snapshot, or null if nothing has been published yet
+	 */
+	public RenderSnapshot acquire() {
+		if (middle.get().fresh) {
+			//only the producer changes middle in between, and only ever to a fresh snapshot
+			front = middle.getAndSet(front);
+			front.fresh = false;
+			hasFront = true;
+		}
+		return hasFront ? front : null;
+	}
+
+}
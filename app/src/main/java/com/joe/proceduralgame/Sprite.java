@@ -0,0 +1,47 @@
+package com.joe.proceduralgame;
+
+/**
+ * Everything the renderer needs to draw one textured unit quad, copied out of the simulation.
+ *
+ * Sprites are owned and reused by a SpriteList.
+ */
+public class Sprite {
+
+	public final float[] modelMatrix = new float[16];
+	public int texture; // GL texture name
+	public final float[] uvOrigin = {0, 0};
+	public final float[] uvScale = {1, 1};
+	/** Multiplied with the sampled color, {r, g, b, a} */
+	public final float[] color = {1, 1, 1, 1};
+	/** How far the sprite moved in world x and z during the last simulation step */
+	public float motionX, motionZ;
+
+	/**
+	 * Copies a quad's current model matrix, texture and uv patch, and resets the color and motion.
+	 *
+	 * @param quad the quad to copy
+	 */
+	public void set(Quad quad) {
+		System.arraycopy(quad.modelMatrix, 0, modelMatrix, 0, 16);
+		texture = quad.texture;
+		uvOrigin[0] = quad.uvOrigin[0];
+		uvOrigin[1] = quad.uvOrigin[1];
+		uvScale[0] = quad.uvScale[0];
+		uvScale[1] = quad.uvScale[1];
+		setColor(1, 1, 1, 1);
+		setMotion(0, 0);
+	}
+
+	public void setMotion(float motionX, float motionZ) {
+		this.motionX = motionX;
+		this.motionZ = motionZ;
+	}
+
+	public void setColor(float r, float g, float b, float a) {
+		color[0] = r;
+		color[1] = g;
+		color[2] = b;
+		color[3] = a;
+	}
+
+}
@@ -0,0 +1,172 @@
+package com.joe.proceduralgame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Draws lists of sprites with a few draw calls, by transforming them into world space on the CPU
+ * and streaming them through one vertex buffer.
+ *
+ * Every vertex carries its sprite's texture uvs and color, so a run of sprites on the same texture
+ * is drawn with one glDrawElements call. Lightmap coordinates span the unit quad, as lone quads get
+ * from Quad.enableArrays(), so sprites are lit as before.
+ */
+public class SpriteBatch {
+
+	public static final int FLOATS_PER_VERTEX = 11;
+	public static final int STRIDE_BYTES = FLOATS_PER_VERTEX * Quad.mBytesPerFloat;
+	public static final int POSITION_OFFSET = 0;
+	public static final int TEX_COORDS_OFFSET = 3;
+	public static final int LIGHTMAP_COORDS_OFFSET = 5;
+	public static final int COLOR_OFFSET = 7;
+	/** The most sprites streamed at once, more are drawn in several passes */
+	public static final int MAX_SPRITES = 512;
+
+	private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+	private final FloatBuffer vertices = ByteBuffer.allocateDirect(
+			MAX_SPRITES * StaticMesh.VERTICES_PER_QUAD * STRIDE_BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	//{vertex buffer, index buffer} OpenGL names, 0 until first drawn
+	private final int[] buffers = new int[2];
+
+	/**
+	 * Creates the streaming vertex buffer and the index buffer, which is the same for every batch.
+	 */
+	private void createBuffers() {
+		ShortBuffer indices = ByteBuffer.allocateDirect(MAX_SPRITES * StaticMesh.INDICES_PER_QUAD * 2)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		for (int i = 0; i < MAX_SPRITES; i++) {
+			// same winding as GL_TRIANGLE_FAN 0, 1, 2, 3
+			short first = (short) (i * StaticMesh.VERTICES_PER_QUAD);
+			indices.put(first);
+			indices.put((short) (first + 1));
+			indices.put((short) (first + 2));
+			indices.put(first);
+			indices.put((short) (first + 2));
+			indices.put((short) (first + 3));
+		}
+		indices.position(0);
+
+		GLES20.glGenBuffers(2, buffers, 0);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+		GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.capacity() * 2, indices,
+				GLES20.GL_STATIC_DRAW);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Draws a list of sprites as unit quads, sorting them by texture first.
+	 *
+	 * Moving sprites are drawn back along their last step's motion by 1 - alpha. Leaves the
+	 * vertex color at white and the uv uniforms at the identity.
+	 *
+	 * @param sprites the sprites to draw
+	 * @param shader the shader program in use
+	 * @param mVPMatrix the view projection matrix to use
+	 * @param alpha the interpolation alpha of the frame
+	 * @param tex binds the textures, or null to draw without setting any texture uniforms
+	 */
+	public void draw(SpriteList sprites, ShaderProgram shader, float[] mVPMatrix, float alpha, TextureManager tex) {
+		int n = sprites.size();
+		if (n == 0)
+			return;
+		if (buffers[0] == 0)
+			createBuffers();
+		if (tex != null)
+			sprites.sortByTexture();
+
+		//vertices are already in world space and carry their final UVs
+		GLES20.glUniformMatrix4fv(shader.mvpHandle, 1, false, mVPMatrix, 0);
+		GLES20.glUniformMatrix4fv(shader.modelMatrixHandle, 1, false, IDENTITY, 0);
+		GLES20.glUniform2f(shader.uvOriginHandle, 0, 0);
+		GLES20.glUniform2f(shader.uvScaleHandle, 1, 1);
+
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+		enableArray(shader.positionHandle, 3, POSITION_OFFSET);
+		enableArray(shader.texCoordsHandle, 2, TEX_COORDS_OFFSET);
+		enableArray(shader.lightmapCoordsHandle, 2, LIGHTMAP_COORDS_OFFSET);
+		enableArray(shader.colorHandle, 4, COLOR_OFFSET);
+
+		int unit = -1;
+		for (int first = 0; first < n; first += MAX_SPRITES) {
+			int count = Math.min(MAX_SPRITES, n - first);
+			vertices.clear();
+			for (int i = first; i < first + count; i++)
+				put(sprites.get(i), alpha);
+			vertices.position(0);
+			//a new store each time, so the driver needn't wait for the last draw from the old one
+			GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, count * StaticMesh.VERTICES_PER_QUAD * STRIDE_BYTES,
+					vertices, GLES20.GL_STREAM_DRAW);
+
+			int runStart = 0;
+			for (int i = 1; i <= count; i++) {
+				int texture = sprites.get(first + runStart).texture;
+				if (i < count && (tex == null || sprites.get(first + i).texture == texture))
+					continue;
+				if (tex != null) {
+					int spriteUnit = tex.bind(texture);
+					if (spriteUnit != unit) {
+						unit = spriteUnit;
+						GLES20.glUniform1i(shader.textureHandle, unit);
+					}
+				}
+				GLES20.glDrawElements(GLES20.GL_TRIANGLES, (i - runStart) * StaticMesh.INDICES_PER_QUAD,
+						GLES20.GL_UNSIGNED_SHORT, runStart * StaticMesh.INDICES_PER_QUAD * 2);
+				runStart = i;
+			}
+		}
+
+		GLES20.glDisableVertexAttribArray(shader.positionHandle);
+		GLES20.glDisableVertexAttribArray(shader.texCoordsHandle);
+		GLES20.glDisableVertexAttribArray(shader.lightmapCoordsHandle);
+		GLES20.glDisableVertexAttribArray(shader.colorHandle);
+		GLES20.glVertexAttrib4f(shader.colorHandle, 1, 1, 1, 1);
+		//the rest of the scene uses client side arrays
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	private static void enableArray(int handle, int size, int offset) {
+		GLES20.glVertexAttribPointer(handle, size, GLES20.GL_FLOAT, false, STRIDE_BYTES,
+				offset * Quad.mBytesPerFloat);
+		GLES20.glEnableVertexAttribArray(handle);
+	}
+
+	/**
+	 * Transforms a sprite's corners into world space and appends its vertices.
+	 */
+	private void put(Sprite sprite, float alpha) {
+		float[] m = sprite.modelMatrix;
+		float dx = 0, dz = 0;
+		if (alpha < 1) {
+			dx = (1 - alpha) * sprite.motionX;
+			dz = (1 - alpha) * sprite.motionZ;
+		}
+		float[] color = sprite.color;
+		for (int corner = 0; corner < StaticMesh.VERTICES_PER_QUAD; corner++) {
+			int c = corner * Quad.mStrideBytes / Quad.mBytesPerFloat;
+			float x = Quad.squareCoords[c];
+			float y = Quad.squareCoords[c + 1];
+			float u = Quad.squareCoords[c + Quad.mTexCoordsOffset];
+			float v = Quad.squareCoords[c + Quad.mTexCoordsOffset + 1];
+			// model * {x, y, 0, 1}
+			vertices.put(m[0] * x + m[4] * y + m[12] - dx);
+			vertices.put(m[1] * x + m[5] * y + m[13]);
+			vertices.put(m[2] * x + m[6] * y + m[14] - dz);
+			vertices.put(sprite.uvOrigin[0] + u * sprite.uvScale[0]);
+			vertices.put(sprite.uvOrigin[1] + v * sprite.uvScale[1]);
+			vertices.put(u);
+			vertices.put(v);
+			vertices.put(color[0]);
+			vertices.put(color[1]);
+			vertices.put(color[2]);
+			vertices.put(color[3]);
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.joe.proceduralgame;
+
+/**
+ * A growable list of Sprites that keeps its Sprite objects between frames.
+ *
+ * Clearing the list only resets its size, so filling it again allocates nothing once it has grown
+ * to the largest number of sprites seen.
+ */
+public class SpriteList {
+
+	private Sprite[] sprites = new Sprite[0];
+	private int size;
+
+	/**
+	 * Gets the number of sprites in this list.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the sprite at index i.
+	 */
+	public Sprite get(int i) {
+		return sprites[i];
+	}
+
+	/**
+	 * Empties this list.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Appends a sprite copied from a quad.
+	 *
+	 * @param quad the quad to copy
+	 * @return the new sprite, which may still be modified
+	 */
+	public Sprite add(Quad quad) {
+		if (size == sprites.length) {
+			Sprite[] grown = new Sprite[Math.max(8, sprites.length * 2)];
+			System.arraycopy(sprites, 0, grown, 0, size);
+			for (int i = size; i < grown.length; i++)
+				grown[i] = new Sprite();
+			sprites = grown;
+		}
+		Sprite sprite = sprites[size++];
+		sprite.set(quad);
+		return sprite;
+	}
+
+	/**
+	 * Orders the sprites by texture, keeping the order of sprites with the same texture, so they
+	 * are drawn with as few texture binds as possible.
+	 */
+	public void sortByTexture() {
+		//insertion sort, since the lists are short and mostly sorted already
+		for (int i = 1; i < size; i++) {
+			Sprite sprite = sprites[i];
+			int j = i - 1;
+			while (j >= 0 && sprites[j].texture > sprite.texture) {
+				sprites[j + 1] = sprites[j];
+				j--;
+			}
+			sprites[j + 1] = sprite;
+		}
+	}
+
+}
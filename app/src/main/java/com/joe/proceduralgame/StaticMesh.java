@@ -0,0 +1,167 @@
+package com.joe.proceduralgame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+
+import android.opengl.GLES20;
+
+/**
+ * The static quads of a room baked into one vertex buffer and one index buffer.
+ *
+ * Every quad is pre-transformed into world space and carries its own atlas and lightmap UVs, so
+ * the whole room is drawn with one glDrawElements call per texture.
+ */
+public class StaticMesh {
+
+	public static final int FLOATS_PER_VERTEX = 7;
+	public static final int STRIDE_BYTES = FLOATS_PER_VERTEX * Quad.mBytesPerFloat;
+	public static final int POSITION_OFFSET = 0;
+	public static final int TEX_COORDS_OFFSET = 3;
+	public static final int LIGHTMAP_COORDS_OFFSET = 5;
+	public static final int VERTICES_PER_QUAD = 4, INDICES_PER_QUAD = 6;
+	//Indices are unsigned shorts
+	public static final int MAX_QUADS = 65536 / VERTICES_PER_QUAD;
+
+	private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+	private FloatBuffer vertices;
+	private ShortBuffer indices;
+	//{vertex buffer, index buffer} OpenGL names
+	private final int[] buffers = new int[2];
+
+	private int[] groupTextures; // GL texture name of each texture group
+	private int[] groupOffsets; // byte offset of each texture group in the index buffer
+	private int[] groupCounts; // number of indices in each texture group
+
+	/**
+	 * Bakes the quads into client side buffers.
+	 *
+	 * @param quads the static quads, sorted by texture
+	 * @param textureIndices the index of the first quad of each texture group
+	 * @param textures the GL texture name of each texture group
+	 * @param lighting the loaded lighting of the room the quads belong to
+	 */
+	public void bake(List<Quad> quads, int[] textureIndices, int[] textures, RoomLighting lighting) {
+		int nQuads = quads.size();
+		if (nQuads > MAX_QUADS)
+			throw new IllegalArgumentException("Too many static quads to bake: " + nQuads);
+
+		vertices = ByteBuffer.allocateDirect(nQuads * VERTICES_PER_QUAD * STRIDE_BYTES)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		indices = ByteBuffer.allocateDirect(nQuads * INDICES_PER_QUAD * 2)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+
+		for (int i = 0; i < nQuads; i++) {
+			Quad q = quads.get(i);
+			float[] m = q.modelMatrix;
+			float[] lightmapRects = lighting.atlas.uvRects;
+			for (int corner = 0; corner < VERTICES_PER_QUAD; corner++) {
+				int c = corner * Quad.mStrideBytes / Quad.mBytesPerFloat;
+				float x = Quad.squareCoords[c];
+				float y = Quad.squareCoords[c + 1];
+				float u = Quad.squareCoords[c + Quad.mTexCoordsOffset];
+				float v = Quad.squareCoords[c + Quad.mTexCoordsOffset + 1];
+				// model * {x, y, 0, 1}
+				vertices.put(m[0] * x + m[4] * y + m[12]);
+				vertices.put(m[1] * x + m[5] * y + m[13]);
+				vertices.put(m[2] * x + m[6] * y + m[14]);
+				vertices.put(q.uvOrigin[0] + u * q.uvScale[0]);
+				vertices.put(q.uvOrigin[1] + v * q.uvScale[1]);
+				vertices.put(lightmapRects[4 * i] + u * lightmapRects[4 * i + 2]);
+				vertices.put(lightmapRects[4 * i + 1] + v * lightmapRects[4 * i + 3]);
+			}
+			// same winding as GL_TRIANGLE_FAN 0, 1, 2, 3
+			short first = (short) (i * VERTICES_PER_QUAD);
+			indices.put(first);
+			indices.put((short) (first + 1));
+			indices.put((short) (first + 2));
+			indices.put(first);
+			indices.put((short) (first + 2));
+			indices.put((short) (first + 3));
+		}
+		vertices.position(0);
+		indices.position(0);
+
+		groupTextures = textures.clone();
+		groupOffsets = new int[textureIndices.length];
+		groupCounts = new int[textureIndices.length];
+		for (int i = 0; i < textureIndices.length; i++) {
+			int end = i + 1 < textureIndices.length ? textureIndices[i + 1] : nQuads;
+			groupOffsets[i] = textureIndices[i] * INDICES_PER_QUAD * 2;
+			groupCounts[i] = (end - textureIndices[i]) * INDICES_PER_QUAD;
+		}
+	}
+
+	/**
+	 * Uploads the baked buffers to OpenGL. Must be called on the GL thread after bake().
+	 */
+	public void upload() {
+		GLES20.glGenBuffers(2, buffers, 0);
+
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertices.capacity() * Quad.mBytesPerFloat,
+				vertices, GLES20.GL_STATIC_DRAW);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+		GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.capacity() * 2,
+				indices, GLES20.GL_STATIC_DRAW);
+
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Draws the whole mesh, one draw call per texture.
+	 *
+	 * @param shader the shader program to use
+	 * @param mVPMatrix the view projection matrix to use
+	 * @param tex binds the textures
+	 */
+	public void draw(ShaderProgram shader, float[] mVPMatrix, TextureManager tex) {
+		//vertices are already in world space and carry their final UVs
+		GLES20.glUniformMatrix4fv(shader.mvpHandle, 1, false, mVPMatrix, 0);
+		GLES20.glUniformMatrix4fv(shader.modelMatrixHandle, 1, false, IDENTITY, 0);
+		GLES20.glUniform2f(shader.uvOriginHandle, 0, 0);
+		GLES20.glUniform2f(shader.uvScaleHandle, 1, 1);
+		GLES20.glUniform2f(shader.lightmapUVHandle, 0, 0);
+		GLES20.glUniform2f(shader.lightmapScaleHandle, 1, 1);
+
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+		GLES20.glVertexAttribPointer(shader.positionHandle, 3, GLES20.GL_FLOAT, false, STRIDE_BYTES,
+				POSITION_OFFSET * Quad.mBytesPerFloat);
+		GLES20.glEnableVertexAttribArray(shader.positionHandle);
+		GLES20.glVertexAttribPointer(shader.texCoordsHandle, 2, GLES20.GL_FLOAT, false, STRIDE_BYTES,
+				TEX_COORDS_OFFSET * Quad.mBytesPerFloat);
+		GLES20.glEnableVertexAttribArray(shader.texCoordsHandle);
+		GLES20.glVertexAttribPointer(shader.lightmapCoordsHandle, 2, GLES20.GL_FLOAT, false, STRIDE_BYTES,
+				LIGHTMAP_COORDS_OFFSET * Quad.mBytesPerFloat);
+		GLES20.glEnableVertexAttribArray(shader.lightmapCoordsHandle);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+
+		for (int i = 0; i < groupTextures.length; i++) {
+			GLES20.glUniform1i(shader.textureHandle, tex.bind(groupTextures[i]));
+			GLES20.glDrawElements(GLES20.GL_TRIANGLES, groupCounts[i], GLES20.GL_UNSIGNED_SHORT, groupOffsets[i]);
+		}
+
+		GLES20.glDisableVertexAttribArray(shader.positionHandle);
+		GLES20.glDisableVertexAttribArray(shader.texCoordsHandle);
+		GLES20.glDisableVertexAttribArray(shader.lightmapCoordsHandle);
+		//the rest of the scene uses client side arrays
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Releases the OpenGL buffers. Must be called on the GL thread.
+	 */
+	public void destroy() {
+		if (buffers[0] != 0) {
+			GLES20.glDeleteBuffers(2, buffers, 0);
+			buffers[0] = 0;
+			buffers[1] = 0;
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.joe.proceduralgame;
+
+/**
+ * Scores plans by the damage they trade and where they leave the actor.
+ *
+ * An attack is worth the damage it deals, more if it kills, less the damage of the counter attack.
+ * Wherever the actor ends up, it loses a little for every opposing unit that could reach and hit
+ * it next phase, as counted by the room's threat maps, and for each step it is still away from
+ * the nearest opposing unit, so units that can't attack close in rather than wait.
+ */
+public class TacticalEvaluator implements EnemyPlanner.Evaluator {
+
+	public static final float DAMAGE_WEIGHT = 10;
+	public static final float KILL_BONUS = 40;
+	public static final float COUNTER_WEIGHT = 8;
+	public static final float EXPOSURE_WEIGHT = 1;
+	public static final float APPROACH_WEIGHT = 2;
+
+	@Override
+	public float evaluate(EnemyPlanner.Situation s, int unit, int square, int target) {
+		float score = 0;
+		int killed = -1;
+		if (target != -1) {
+			int dealt = Math.min(damage(s, unit, target), s.hitPoints[target]);
+			score += DAMAGE_WEIGHT * dealt;
+			if (dealt == s.hitPoints[target]) {
+				score += KILL_BONUS;
+				killed = target;
+			} else {
+				//the target hits back, as in DungeonManager.update()
+				int taken = Math.min(damage(s, target, unit), s.hitPoints[unit]);
+				score -= COUNTER_WEIGHT * taken;
+				if (taken == s.hitPoints[unit])
+					return score - KILL_BONUS;
+			}
+		}
+
+		int nearest = DistanceField.UNREACHABLE;
+		int opponents = 0, totalDamage = 0;
+		int threats = s.threat[square];
+		for (int other = 0; other < s.units.length; other++) {
+			if (s.group[other] == s.group[unit])
+				continue;
+			if (other == killed) {
+				//steps to stand next to the square, then one to attack
+				if (threats > 0 && s.getDistances(other)[square] - 1 <= s.moveDistance[other])
+					threats--;
+				continue;
+			}
+			opponents++;
+			totalDamage += Math.min(damage(s, other, unit), s.hitPoints[unit]);
+			nearest = Math.min(nearest, s.getDistances(other)[square]);
+		}
+		//each threat is weighed by the damage of an average opponent
+		if (opponents > 0 && threats > 0)
+			score -= EXPOSURE_WEIGHT * threats * totalDamage / opponents;
+		if (nearest != DistanceField.UNREACHABLE)
+			score -= APPROACH_WEIGHT * nearest;
+		return score;
+	}
+
+	/**
+	 * Gets the damage of one unit's basic attack on another.
+	 */
+	private static int damage(EnemyPlanner.Situation s, int attacker, int defender) {
+		return Math.max(0, s.strength[attacker] - s.defense[defender]);
+	}
+
+}
@@ -1,117 +1,458 @@
 package com.joe.proceduralgame;
 
-import java.util.Hashtable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.opengl.ETC1;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
+import android.util.Log;
 
+/**
+ * Loads textures from resources and binds them into texture units when they are drawn.
+ *
+ * Textures are referred to by their GL texture names. Any number can be loaded, and they are
+ * bound on demand into the few units the device has: bind() returns the unit to point a sampler
+ * at, skipping the GL calls if the texture is bound already and otherwise evicting the least
+ * recently used unit. The lightmap has a unit of its own that is never evicted.
+ *
+ * Images are decoded on background threads. A texture is usable as soon as referenceLoad()
+ * returns, as a transparent placeholder texel, and its image is uploaded into it by a later
+ * uploadDecoded() on the GL thread, so nothing waits on a decode.
+ *
+ * Drawables listed in CompressedTextures are loaded from their mipmapped ETC1 versions when the
+ * device can sample ETC1, and the rest are mipmapped when they are uploaded if they are a power of
+ * 2 on each side, so zooming out doesn't shimmer.
+ */
 public final class TextureManager {
 
 	private static final int MIN_UNIT = 2; //Units less than this are reserved
 	public static final int LIGHTMAP_UNIT = 1;
-	public static final int MAX_COUNT = 30;
+	/** The most texture units that textures are bound into, fewer if the device has fewer */
+	public static final int MAX_UNITS = 8;
+	/** The most decoded image bytes uploaded by one uploadDecoded(), though at least one is */
+	public static final int UPLOAD_BYTES_PER_FRAME = 2 * 1024 * 1024;
+	private static final int DECODER_THREADS = 2;
+	//KTX header fields, as offsets in bytes
+	private static final int KTX_ENDIANNESS = 12, KTX_INTERNAL_FORMAT = 28, KTX_WIDTH = 36,
+			KTX_HEIGHT = 40, KTX_LEVELS = 56, KTX_KEY_VALUE_BYTES = 60, KTX_HEADER_BYTES = 64;
+	//One transparent RGBA texel, drawn until a texture's image is uploaded
+	private static final ByteBuffer PLACEHOLDER = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
 
-	public final int[][] unitToName = new int[MAX_COUNT][1];
-	public Map<Integer, TextureEntry> idToUnit = new Hashtable<Integer, TextureEntry>();
+	private final Map<Integer, TextureEntry> idToEntry = new HashMap<Integer, TextureEntry>();
 	public Context context;
-	
-	public static class NoFreeTextureUnitsExcpetion extends Exception {}
-	
+
+	////// bind state, only touched on the GL thread //////
+	private final int[] unitToName = new int[MAX_UNITS]; // texture bound to each unit, 0 for none
+	private final long[] unitLastUse = new long[MAX_UNITS]; // when each unit was last asked for
+	private long useCount = 0;
+	private int unitCount = 0; // units textures may be bound into, 0 until queried
+	private int activeUnit = -1; // the unit glActiveTexture last selected, -1 if unknown
+	private int lightmapName = 0;
+	private final int[] nameScratch = new int[1];
+	private int bindCount = 0, skippedBindCount = 0;
+	private boolean extensionsQueried = false, etc1Supported = false;
+	////// end bind state //////
+
+	//Textures whose last reference was released, deleted on the GL thread unless referenced again
+	private final List<Integer> unreferenced = new ArrayList<Integer>();
+	//Accounting of what is in GL, to catch textures that are never released
+	private long loadedBytes = 0, lightmapBytes = 0;
+	private int totalLoads = 0, totalDeletes = 0, unbalancedUnloads = 0, decoding = 0;
+
+	//Images decoded to RGBA, waiting for the GL thread to upload them
+	private final Queue<DecodedImage> decoded = new ConcurrentLinkedQueue<DecodedImage>();
+	private final ExecutorService decoder = Executors.newFixedThreadPool(DECODER_THREADS, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Texture Decoder Thread");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
 	private static class TextureEntry {
-		int glTextureUnit;
+		int name;
 		int referenceCount = 0;
-		public TextureEntry(int unit, int refCount) {
-			this.glTextureUnit = unit;
+		int bytes; // 0 until the image is uploaded
+		public TextureEntry(int name, int refCount, int bytes) {
+			this.name = name;
 			this.referenceCount = refCount;
+			this.bytes = bytes;
+		}
+	}
+
+	private static class DecodedImage {
+		final int textureID;
+		final TextureEntry entry; // the texture it was decoded for, which may be deleted since
+		final int format; // the compressed format of the levels, 0 for RGBA
+		final int width, height; // of the first level, each next one is half as big down to 1x1
+		final ByteBuffer[] levels;
+		final int bytes;
+		DecodedImage(int textureID, TextureEntry entry, int format, int width, int height, ByteBuffer... levels) {
+			this.textureID = textureID;
+			this.entry = entry;
+			this.format = format;
+			this.width = width;
+			this.height = height;
+			this.levels = levels;
+			int bytes = 0;
+			for (ByteBuffer level : levels)
+				bytes += level.capacity();
+			this.bytes = bytes;
 		}
 	}
-	
+
 	public TextureManager(Context context) {
 		this.context = context;
 	}
 
 	/**
-	 * Binds a bitmap to a texture unit
+	 * Binds a texture into a unit for drawing, unless it is bound already. Must be called on the
+	 * GL thread.
 	 *
-	 * @param targetUnit the texture unit to bind the bitmap to
-	 * @param bitmap the Bitmap to load with OpenGL
+	 * @param name the GL texture name returned by referenceLoad()
+	 * @return the unit the texture is bound to, for the sampler uniform
 	 */
-	private void setBitmap(int targetUnit, Bitmap bitmap){
-		if (unitToName[targetUnit][0] != 0)
-			GLES20.glDeleteTextures(1, unitToName[targetUnit], 0);
+	public int bind(int name) {
+		if (unitCount == 0) {
+			GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_IMAGE_UNITS, nameScratch, 0);
+			unitCount = Math.max(MIN_UNIT + 1, Math.min(MAX_UNITS, nameScratch[0]));
+		}
+		useCount++;
+		int leastRecent = MIN_UNIT;
+		for (int unit = MIN_UNIT; unit < unitCount; unit++) {
+			if (unitToName[unit] == name) {
+				unitLastUse[unit] = useCount;
+				skippedBindCount++;
+				return unit;
+			}
+			if (unitLastUse[unit] < unitLastUse[leastRecent])
+				leastRecent = unit;
+		}
+		bindToUnit(leastRecent, name);
+		unitLastUse[leastRecent] = useCount;
+		return leastRecent;
+	}
 
-		GLES20.glGenTextures(1, unitToName[targetUnit], 0);
+	/**
+	 * Binds a texture into a unit, replacing whatever was there.
+	 */
+	private void bindToUnit(int unit, int name) {
+		selectUnit(unit);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, name);
+		unitToName[unit] = name;
+		bindCount++;
+	}
+
+	/**
+	 * Makes a unit the active one, which glTexImage2D and glTexParameter act on.
+	 */
+	private void selectUnit(int unit) {
+		if (activeUnit != unit) {
+			GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+			activeUnit = unit;
+		}
+	}
+
+	/**
+	 * Binds a texture for its image or parameters to be set. bind() alone isn't enough, since it
+	 * leaves the active unit alone when the texture is bound already, and that may be another
+	 * texture's unit, like the lightmap's after setLightmap().
+	 */
+	private void bindForUpload(int name) {
+		selectUnit(bind(name));
+	}
+
+	/**
+	 * Forgets what is bound where.
+	 */
+	private void invalidateBindings() {
+		for (int unit = 0; unit < MAX_UNITS; unit++) {
+			unitToName[unit] = 0;
+			unitLastUse[unit] = 0;
+		}
+		activeUnit = -1;
+		lightmapName = 0;
+	}
 
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + targetUnit);
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, unitToName[targetUnit][0]);
+	/**
+	 * Forgets every texture, reference and binding, for when the GL context has been recreated and
+	 * its textures were lost with it. Nothing is deleted, since the names may already belong to
+	 * textures of the new context. Everything that held a reference must load again from scratch.
+	 */
+	public synchronized void invalidate() {
+		invalidateBindings();
+		idToEntry.clear();
+		unreferenced.clear();
+		loadedBytes = 0;
+		lightmapBytes = 0;
+	}
 
-		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+	/**
+	 * Sets the filtering of the texture bound to the active unit.
+	 *
+	 * @param mipmapped true to blend between mipmaps, which the texture must have
+	 */
+	private static void setFilters(boolean mipmapped) {
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+				mipmapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
 		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+	}
 
+	/**
+	 * Uploads a bitmap into the texture bound to the active unit.
+	 */
+	private static void texImage(Bitmap bitmap) {
+		setFilters(false);
 		GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
 		DungeonRenderer.catchGLError();
 	}
 
 	/**
-	 * Finds a texture unit not in use and binds the provided bitmap to it.
+	 * Uploads RGBA pixels into the texture bound to the active unit.
+	 */
+	private static void texImage(int width, int height, ByteBuffer pixels) {
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA,
+				GLES20.GL_UNSIGNED_BYTE, pixels);
+		DungeonRenderer.catchGLError();
+	}
+
+	/**
+	 * Creates a placeholder texture for a resource and has its image decoded in the background.
 	 *
-	 * @param bitmap the bitmap to load with OpenGL
-	 * @return the texture unit assigned to the bitmap
-	 * @throws NoFreeTextureUnitsExcpetion throw when there are no free texture units left
-	 */
-	private int loadBitmap(Bitmap bitmap) throws NoFreeTextureUnitsExcpetion {
-		int unit = -1;
-		for (int i = MIN_UNIT; i < MAX_COUNT; i++) {
-			if (unitToName[i][0] == 0) {
-				unit = i;
-				break;
-			}
+	 * @param textureID the resource id of the image to load
+	 * @return the GL texture name
+	 */
+	private int loadTextureResource(final int textureID) {
+		if (!extensionsQueried) {
+			String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+			etc1Supported = extensions != null && extensions.contains("GL_OES_compressed_ETC1_RGB8_texture");
+			extensionsQueried = true;
 		}
-		if (unit == -1)
-			throw new NoFreeTextureUnitsExcpetion();
-		setBitmap(unit, bitmap);
+		GLES20.glGenTextures(1, nameScratch, 0);
+		int name = nameScratch[0];
+		bindForUpload(name);
+		setFilters(false);
+		texImage(1, 1, PLACEHOLDER);
 
-		return unit;
+		final TextureEntry entry = new TextureEntry(name, 1, 0);
+		final int ktxID = etc1Supported ? CompressedTextures.getETC1(textureID) : 0;
+		idToEntry.put(textureID, entry);
+		decoding++;
+		decoder.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (ktxID == 0 || !readKtx(textureID, ktxID, entry))
+					decode(textureID, entry);
+			}
+		});
+		totalLoads++;
+		return name;
 	}
 
 	/**
-	 * Finds a texture unit not in use and binds bitmap of the provided resource to it.
-	 *
-	 * @param textureID the resource id of the image to load
-	 * @return the texture unit assigned to the bitmap
-	 * @throws NoFreeTextureUnitsExcpetion throw when there are no free texture units left
+	 * Decodes the image of a resource to RGBA pixels and queues them for upload. Runs on a
+	 * decoder thread.
 	 */
-	private int loadTextureResource(int textureID) throws NoFreeTextureUnitsExcpetion {
-		Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), textureID);
-		int unit = loadBitmap(bitmap);
+	private void decode(int textureID, TextureEntry entry) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+		//textures are sampled by uv, so scaling them to the screen's density only costs memory
+		options.inScaled = false;
+		Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), textureID, options);
+		if (bitmap == null) {
+			Log.e("game", "Couldn't decode texture " + textureID);
+			synchronized (this) {
+				decoding--;
+			}
+			return;
+		}
+		if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+			Bitmap converted = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+			bitmap.recycle();
+			bitmap = converted;
+		}
+		//ARGB_8888 is laid out as RGBA bytes, so the pixels go to GL as they are
+		ByteBuffer pixels = ByteBuffer.allocateDirect(bitmap.getByteCount()).order(ByteOrder.nativeOrder());
+		bitmap.copyPixelsToBuffer(pixels);
+		pixels.position(0);
+		decoded.add(new DecodedImage(textureID, entry, 0, bitmap.getWidth(), bitmap.getHeight(), pixels));
 		bitmap.recycle();
+	}
+
+	/**
+	 * Reads a KTX file of ETC1 mipmaps written by tools/textures and queues its levels for upload.
+	 * Runs on a decoder thread.
+	 *
+	 * @return false if the file couldn't be read, to decode the drawable instead
+	 */
+	private boolean readKtx(int textureID, int ktxID, TextureEntry entry) {
+		ByteBuffer ktx;
+		try {
+			InputStream in = context.getResources().openRawResource(ktxID);
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[16 * 1024];
+				for (int n; (n = in.read(buffer)) != -1; )
+					bytes.write(buffer, 0, n);
+				ktx = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		if (ktx.capacity() < KTX_HEADER_BYTES || ktx.getInt(KTX_ENDIANNESS) != 0x04030201
+				|| ktx.getInt(KTX_INTERNAL_FORMAT) != ETC1.ETC1_RGB8_OES) {
+			Log.e("game", "Texture " + ktxID + " isn't a little endian ETC1 KTX file");
+			return false;
+		}
+		int width = ktx.getInt(KTX_WIDTH), height = ktx.getInt(KTX_HEIGHT);
+		ByteBuffer[] levels = new ByteBuffer[ktx.getInt(KTX_LEVELS)];
+		ktx.position(KTX_HEADER_BYTES + ktx.getInt(KTX_KEY_VALUE_BYTES));
+		for (int i = 0; i < levels.length; i++) {
+			int size = ktx.getInt();
+			levels[i] = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+			ktx.limit(ktx.position() + size);
+			levels[i].put(ktx);
+			levels[i].position(0);
+			ktx.limit(ktx.capacity());
+			ktx.position((ktx.position() + 3) & ~3); // levels are padded to 4 bytes
+		}
+		decoded.add(new DecodedImage(textureID, entry, ETC1.ETC1_RGB8_OES, width, height, levels));
+		return true;
+	}
 
-	    idToUnit.put(textureID, new TextureEntry(unit, 1));
-		return unit;
+	/**
+	 * Uploads images that have finished decoding into their textures, up to
+	 * UPLOAD_BYTES_PER_FRAME. Must be called on the GL thread, once a frame.
+	 */
+	public void uploadDecoded() {
+		int uploaded = 0;
+		DecodedImage image;
+		while (uploaded < UPLOAD_BYTES_PER_FRAME && (image = decoded.poll()) != null) {
+			synchronized (this) {
+				decoding--;
+				//dropped if the texture was deleted while its image was decoding
+				if (idToEntry.get(image.textureID) != image.entry)
+					continue;
+				bindForUpload(image.entry.name);
+				upload(image);
+				image.entry.bytes = image.bytes;
+				loadedBytes += image.bytes;
+			}
+			uploaded += image.bytes;
+		}
 	}
-	
+
+	/**
+	 * Deletes the texture of a resource, which unbinds it from any unit.
+	 *
+	 * @param textureID the resource id of the loaded image
+	 */
 	private void unloadTextureResource(int textureID) {
+		TextureEntry entry = idToEntry.remove(textureID);
+		nameScratch[0] = entry.name;
+		GLES20.glDeleteTextures(1, nameScratch, 0);
+		for (int unit = MIN_UNIT; unit < MAX_UNITS; unit++) {
+			if (unitToName[unit] == entry.name) {
+				unitToName[unit] = 0;
+				unitLastUse[unit] = 0;
+			}
+		}
+		loadedBytes -= entry.bytes;
+		totalDeletes++;
 	}
 
-	public int referenceLoad(int textureID) throws NoFreeTextureUnitsExcpetion {
-		TextureEntry entry = idToUnit.get(textureID);
+	/**
+	 * Uploads a decoded image into the texture bound to the active unit, with its mipmaps if it
+	 * has them and otherwise generating them if it is a power of 2 on each side.
+	 */
+	private static void upload(DecodedImage image) {
+		if (image.format == 0) {
+			texImage(image.width, image.height, image.levels[0]);
+			boolean powerOf2 = Integer.bitCount(image.width) == 1 && Integer.bitCount(image.height) == 1;
+			if (powerOf2)
+				GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+			setFilters(powerOf2);
+		} else {
+			int width = image.width, height = image.height;
+			for (int level = 0; level < image.levels.length; level++) {
+				GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, image.format, width, height, 0,
+						image.levels[level].capacity(), image.levels[level]);
+				width = Math.max(1, width / 2);
+				height = Math.max(1, height / 2);
+			}
+			setFilters(image.levels.length > 1);
+		}
+		DungeonRenderer.catchGLError();
+	}
+
+	/**
+	 * Takes a reference to the texture of a resource, loading it if nobody else holds one.
+	 * Must be called on the GL thread. The texture is a placeholder until its image has been
+	 * decoded and uploaded.
+	 *
+	 * @param textureID the resource id of the image
+	 * @return the GL texture name, to be bound with bind() when drawing
+	 */
+	public synchronized int referenceLoad(int textureID) {
+		TextureEntry entry = idToEntry.get(textureID);
 		if (entry != null) {
+			//revives a texture still waiting to be deleted
 			entry.referenceCount++;
-			return entry.glTextureUnit;
+			return entry.name;
 		} else {
 			return loadTextureResource(textureID);
 		}
 	}
-	
-	public void referenceUnload(int textureID) {
-		TextureEntry entry = idToUnit.get(textureID);
+
+	/**
+	 * Releases a reference taken by referenceLoad(). May be called on any thread: the texture is
+	 * deleted by the next deleteUnreferenced() if nothing has referenced it again by then.
+	 *
+	 * @param textureID the resource id of the image
+	 */
+	public synchronized void referenceUnload(int textureID) {
+		TextureEntry entry = idToEntry.get(textureID);
+		if (entry == null || entry.referenceCount == 0) {
+			unbalancedUnloads++;
+			Log.e("game", "Texture " + textureID + " released more times than it was loaded");
+			return;
+		}
 		entry.referenceCount--;
 		if (entry.referenceCount == 0)
-			unloadTextureResource(textureID);
+			unreferenced.add(textureID);
+	}
+
+	/**
+	 * Deletes the textures that nothing references any more.
+	 * Must be called on the GL thread.
+	 */
+	public synchronized void deleteUnreferenced() {
+		for (int textureID : unreferenced) {
+			TextureEntry entry = idToEntry.get(textureID);
+			if (entry != null && entry.referenceCount == 0)
+				unloadTextureResource(textureID);
+		}
+		unreferenced.clear();
 	}
 
 	/**
@@ -120,10 +461,52 @@ public final class TextureManager {
 	 *
 	 * @param lightmap the Bitmap to load as the lightmap
 	 */
-	public void setLightmap(Bitmap lightmap) {
-		setBitmap(LIGHTMAP_UNIT, lightmap);
+	public synchronized void setLightmap(Bitmap lightmap) {
+		if (lightmapName == 0) {
+			GLES20.glGenTextures(1, nameScratch, 0);
+			lightmapName = nameScratch[0];
+		}
+		bindToUnit(LIGHTMAP_UNIT, lightmapName);
+		texImage(lightmap);
+		lightmapBytes = lightmap.getByteCount();
 	}
-	
+
+	/**
+	 * Gets the number of textures loaded from resources, not counting the lightmap.
+	 */
+	public synchronized int getLoadedTextureCount() {
+		return idToEntry.size();
+	}
+
+	/**
+	 * Gets the memory taken by every loaded texture and the lightmap, as the bitmaps were uploaded.
+	 *
+	 * @return the size in bytes
+	 */
+	public synchronized long getLoadedTextureBytes() {
+		return loadedBytes + lightmapBytes;
+	}
+
+	/**
+	 * Gets the number of references held to the texture of a resource.
+	 *
+	 * @return the count, 0 if the texture isn't loaded
+	 */
+	public synchronized int getReferenceCount(int textureID) {
+		TextureEntry entry = idToEntry.get(textureID);
+		return entry == null ? 0 : entry.referenceCount;
+	}
+
+	/**
+	 * Sums up what is loaded, for logging. Loads minus deletes that keeps growing over a session
+	 * means something takes references it never releases.
+	 */
+	public synchronized String getUsageSummary() {
+		return idToEntry.size() + " textures, " + decoding + " decoding, "
+				+ getLoadedTextureBytes() / 1024 + " KB, " + totalLoads + " loads, " + totalDeletes + " deletes, " + unbalancedUnloads
+				+ " unbalanced unloads, " + bindCount + " binds, " + skippedBindCount + " binds skipped";
+	}
+
 	/**
 	 * utility, given an index on a width x width tiled atlas, get the U coordinate of the origin of the texture at that index
 	 * @param index
@@ -133,7 +516,7 @@ public final class TextureManager {
 	public static float atlasU(int index, int width) {
 		return (index % width) / (float) width;
 	}
-	
+
 	/**
 	 * utility, given an index on a width x width tiled atlas, get the V coordinate of the origin of the texture at that index
 	 * @param index
@@ -143,5 +526,5 @@ public final class TextureManager {
 	public static float atlasV(int index, int width) {
 		return (index / width) / (float) width;
 	}
-	
-}
\ No newline at end of file
+
+}
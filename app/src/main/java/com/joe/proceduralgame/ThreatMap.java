@@ -0,0 +1,188 @@
+package com.joe.proceduralgame;
+
+import com.joe.proceduralgame.entities.SolidBlock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Counts, for every square of a Room, how many units of one group could walk within their move
+ * distance and then hit a unit standing there with Action.basicAttack.
+ *
+ * Each unit's threatened squares are kept, so when the grid changes only the units that moved or
+ * whose threatened squares hold a changed square are recounted. The Room marks the squares that
+ * change, and the map catches up on the next update(), which costs little more than a look at
+ * each unit when nothing nearby has changed.
+ */
+public class ThreatMap {
+
+	private final Room room;
+	private final int group;
+	private boolean built = false;
+
+	//units of the group threatening each packed square
+	private final int[] counts;
+	private final Map<Character, Reach> reaches = new HashMap<Character, Reach>();
+	private int updates = 0;
+
+	//squares whose occupancy changed since the last update, each listed once
+	private final int[] changed;
+	private final boolean[] isChanged;
+	private int nChanged = 0;
+
+	//scratch for gathering a unit's threatened squares without duplicates
+	private final int[] stamps;
+	private int stamp = 0;
+	private final int[] scratch;
+
+	/** The squares a unit threatened when it was last counted */
+	private static class Reach {
+		int square;
+		//packed squares in ascending order
+		int[] threatened;
+		//the update() that last saw the unit in the room
+		int seen;
+	}
+
+	/**
+	 * Creates a map of the squares a group threatens. It is built lazily on first use.
+	 *
+	 * @param room the room whose grid the map covers
+	 * @param group the group id of the attacking units
+	 */
+	public ThreatMap(Room room, int group) {
+		this.room = room;
+		this.group = group;
+		int nSquares = room.width * room.length;
+		counts = new int[nSquares];
+		changed = new int[nSquares];
+		isChanged = new boolean[nSquares];
+		stamps = new int[nSquares];
+		scratch = new int[nSquares];
+	}
+
+	/**
+	 * Notes that a square has been filled or emptied. Called by the Room.
+	 */
+	void markChanged(int row, int col) {
+		int square = row * room.width + col;
+		if (built && !isChanged[square]) {
+			isChanged[square] = true;
+			changed[nChanged++] = square;
+		}
+	}
+
+	/**
+	 * Recounts the units affected by changes to the grid since the last update, and any that have
+	 * died or joined the room.
+	 */
+	public void update() {
+		updates++;
+		for (Character c : room.characters) {
+			if (c.getGroupID() != group || c.getHitPoints() <= 0)
+				continue;
+			int square = c.gridRow * room.width + c.gridCol;
+			Reach reach = reaches.get(c);
+			if (reach == null) {
+				reach = new Reach();
+				reaches.put(c, reach);
+			} else if (reach.square == square && !touchesChange(reach.threatened)) {
+				reach.seen = updates;
+				continue;
+			} else {
+				count(reach.threatened, -1);
+			}
+			reach.square = square;
+			reach.threatened = findThreatened(c);
+			reach.seen = updates;
+			count(reach.threatened, 1);
+		}
+
+		//units that died, left or changed sides
+		Iterator<Reach> it = reaches.values().iterator();
+		while (it.hasNext()) {
+			Reach reach = it.next();
+			if (reach.seen != updates) {
+				count(reach.threatened, -1);
+				it.remove();
+			}
+		}
+
+		for (int i = 0; i < nChanged; i++)
+			isChanged[changed[i]] = false;
+		nChanged = 0;
+		built = true;
+	}
+
+	/**
+	 * Gets the number of units of the group that could attack a square.
+	 */
+	public int getThreat(int row, int col) {
+		update();
+		return counts[row * room.width + col];
+	}
+
+	/**
+	 * Adds the number of units of the group that could attack each packed square to an array, to
+	 * sum the threat of several groups.
+	 *
+	 * @param dest an array of at least width * length squares
+	 */
+	public void addTo(int[] dest) {
+		update();
+		for (int i = 0; i < counts.length; i++)
+			dest[i] += counts[i];
+	}
+
+	//whether any changed square is among the sorted squares
+	private boolean touchesChange(int[] squares) {
+		for (int i = 0; i < nChanged; i++) {
+			if (Arrays.binarySearch(squares, changed[i]) >= 0)
+				return true;
+		}
+		return false;
+	}
+
+	private void count(int[] squares, int delta) {
+		for (int square : squares)
+			counts[square] += delta;
+	}
+
+	/**
+	 * Gathers the squares a unit could reach, with every square next to them that
+	 * Action.basicAttack could hit. Those are also the only squares whose filling or emptying can
+	 * change how far the unit walks, which is what lets update() skip the others.
+	 */
+	private int[] findThreatened(Character c) {
+		final int width = room.width;
+		final int length = room.length;
+		int[] reachable = room.getRangeSquares(c.gridRow, c.gridCol, c.getMoveDistance());
+		stamp++;
+		int n = 0;
+		for (int square : reachable) {
+			if (stamps[square] != stamp) {
+				stamps[square] = stamp;
+				scratch[n++] = square;
+			}
+			int row = square / width;
+			int col = square % width;
+			for (int i = 0; i < 4; i++) {
+				int adjRow = row + PathContext.NEIGHBOR_ROWS[i];
+				int adjCol = col + PathContext.NEIGHBOR_COLS[i];
+				if (adjRow < 0 || adjRow >= length || adjCol < 0 || adjCol >= width)
+					continue;
+				int adj = adjRow * width + adjCol;
+				if (stamps[adj] != stamp && room.grid[adjRow][adjCol] != SolidBlock.singleton) {
+					stamps[adj] = stamp;
+					scratch[n++] = adj;
+				}
+			}
+		}
+		int[] threatened = Arrays.copyOf(scratch, n);
+		Arrays.sort(threatened);
+		return threatened;
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.joe.proceduralgame;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size table of results keyed by hashes of battle states, for planners to reuse work on
+ * states they have seen before.
+ *
+ * Entries are kept in buckets of two. The first of a bucket keeps the deepest result, where depth
+ * is however much work the result took, unless it is from an older generation; the second takes
+ * whatever the first turns away or displaces. Planners start a new generation for each decision,
+ * so results of old decisions make way for new ones. Keys are 64 bit hashes, so a probe can in
+ * rare cases give another state's result, and planners should check a result still makes sense
+ * before using it.
+ *
+ * Not thread safe.
+ */
+public class TranspositionTable {
+
+	/** The default number of entries, as a power of 2 */
+	public static final int DEFAULT_SIZE_BITS = 12;
+
+	private final long[] keys;
+	private final long[] values;
+	//work each result took, -1 for an empty entry
+	private final int[] depths;
+	private final int[] generations;
+	private final int mask;
+	private int generation = 0;
+	private long hits = 0, misses = 0;
+
+	public TranspositionTable() {
+		this(DEFAULT_SIZE_BITS);
+	}
+
+	/**
+	 * @param sizeBits the base 2 log of the number of entries, at least 1
+	 */
+	public TranspositionTable(int sizeBits) {
+		int size = 1 << sizeBits;
+		keys = new long[size];
+		values = new long[size];
+		depths = new int[size];
+		generations = new int[size];
+		mask = size - 1;
+		Arrays.fill(depths, -1);
+	}
+
+	/**
+	 * Starts a new generation. Entries of earlier ones stay until something replaces them.
+	 */
+	public void newGeneration() {
+		generation++;
+	}
+
+	/**
+	 * Looks up a key, counting a hit or a miss.
+	 *
+	 * @return the index of its entry for getValue() and getDepth(), or -1 if it isn't in the table
+	 */
+	public int find(long key) {
+		int bucket = (int) key & mask & ~1;
+		for (int i = bucket; i < bucket + 2; i++) {
+			if (depths[i] != -1 && keys[i] == key) {
+				hits++;
+				return i;
+			}
+		}
+		misses++;
+		return -1;
+	}
+
+	public long getValue(int entry) {
+		return values[entry];
+	}
+
+	public int getDepth(int entry) {
+		return depths[entry];
+	}
+
+	/**
+	 * Stores a result, replacing the key's old result if it has one.
+	 *
+	 * @param key the hash of the state
+	 * @param value the result
+	 * @param depth how much work the result took, at least 0
+	 */
+	public void store(long key, long value, int depth) {
+		int bucket = (int) key & mask & ~1;
+		if (depths[bucket] == -1 || keys[bucket] == key || generations[bucket] != generation
+				|| depth >= depths[bucket]) {
+			//the result it displaces gets the second entry
+			if (depths[bucket] != -1 && keys[bucket] != key)
+				put(bucket + 1, keys[bucket], values[bucket], depths[bucket], generations[bucket]);
+			put(bucket, key, value, depth, generation);
+		} else {
+			put(bucket + 1, key, value, depth, generation);
+		}
+	}
+
+	private void put(int entry, long key, long value, int depth, int generation) {
+		keys[entry] = key;
+		values[entry] = value;
+		depths[entry] = depth;
+		generations[entry] = generation;
+	}
+
+	/**
+	 * Empties the table and resets its counters.
+	 */
+	public void clear() {
+		Arrays.fill(depths, -1);
+		hits = 0;
+		misses = 0;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+}
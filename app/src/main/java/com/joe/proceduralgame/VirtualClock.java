@@ -0,0 +1,33 @@
+package com.joe.proceduralgame;
+
+/**
+ * A GameClock that only moves when it is slept on or advanced, never waiting for real time.
+ *
+ * Running the simulation loop on a virtual clock makes it step as fast as the CPU allows.
+ */
+public class VirtualClock implements GameClock {
+
+	private volatile long now = 0;
+
+	@Override
+	public long nanoTime() {
+		return now;
+	}
+
+	/** Advances the clock instead of waiting */
+	@Override
+	public void sleep(long nanos) {
+		if (nanos > 0)
+			now += nanos;
+	}
+
+	/**
+	 * Moves the clock forward.
+	 *
+	 * @param nanos the time to advance by in ns
+	 */
+	public void advance(long nanos) {
+		now += nanos;
+	}
+
+}
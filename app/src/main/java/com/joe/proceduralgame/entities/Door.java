@@ -6,16 +6,18 @@ import com.joe.proceduralgame.DungeonRenderer;
 import com.joe.proceduralgame.EdgeEntity;
 import com.joe.proceduralgame.Quad;
 import com.joe.proceduralgame.R;
+import com.joe.proceduralgame.SpriteList;
 import com.joe.proceduralgame.TextureManager;
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
 
 public class Door extends EdgeEntity {
 	public int dir;
 	public Quad doorQuad, frameQuad;
 	public float openAngle = 0;
+	/** The door on the other side in the neighbouring room, or null if this door leads nowhere */
+	public Door link;
 	
 	@Override
-	public void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion { // TODO load all entities in a room
+	public void load(TextureManager tex) { // TODO load all entities in a room
 		float[] frameModel = new float[16];
 		Matrix.setIdentityM(frameModel, 0);
 		Matrix.translateM(frameModel, 0, posx, .55f, posz);
@@ -28,14 +30,20 @@ public class Door extends EdgeEntity {
 	}
 
 	@Override
-	public void draw(int shaderProgram, float[] mVPMatrix) {
+	public void unload(TextureManager tex) {
+		tex.referenceUnload(R.drawable.doorframe1);
+		tex.referenceUnload(R.drawable.door1);
+	}
+
+	@Override
+	public void emitSprites(SpriteList sprites) {
 		final float doorShift = .25f;
 		Matrix.translateM(doorQuad.modelMatrix, 0, frameQuad.modelMatrix, 0, -doorShift, 0, 0);
 		Matrix.rotateM(doorQuad.modelMatrix, 0, openAngle, 0, 1, 0);
 		Matrix.translateM(doorQuad.modelMatrix, 0, doorShift, 0, 0);
 		
-		frameQuad.draw(shaderProgram, mVPMatrix);
-		doorQuad.draw(shaderProgram, mVPMatrix);
+		sprites.add(frameQuad);
+		sprites.add(doorQuad);
 	}
 
 }
@@ -2,16 +2,16 @@ package com.joe.proceduralgame.entities;
 
 import com.joe.proceduralgame.Entity;
 import com.joe.proceduralgame.Quad;
+import com.joe.proceduralgame.SpriteList;
 import com.joe.proceduralgame.TextureManager;
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
 
 public class SolidBlock extends Entity {
 	public static final SolidBlock singleton = new SolidBlock();
 
 	@Override
-	protected void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion {}
+	protected void load(TextureManager tex) {}
 	@Override
-	public void draw(int shaderProgram, float[] mVPMatrix) {}
+	public void emitSprites(SpriteList sprites) {}
 	@Override
 	public boolean ownsQuad(Quad quad) {return false;}
 }
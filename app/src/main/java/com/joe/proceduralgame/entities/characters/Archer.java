@@ -5,8 +5,8 @@ import android.media.MediaPlayer;
 import com.joe.proceduralgame.Quad;
 import com.joe.proceduralgame.Quad.Type;
 import com.joe.proceduralgame.R;
+import com.joe.proceduralgame.SpriteList;
 import com.joe.proceduralgame.TextureManager;
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
 
 public class Archer extends com.joe.proceduralgame.Character {
 
@@ -32,7 +32,7 @@ public class Archer extends com.joe.proceduralgame.Character {
 	}
 
 	@Override
-	protected void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion {
+	protected void load(TextureManager tex) {
 		texture = tex.referenceLoad(R.drawable.atlas_demo2);
 		quad = Quad.createDynamicQuad(Type.CHARACTER, new float[16], texture);
 		attackSound = MediaPlayer.create(tex.context, R.raw.bow_and_arrow_attack);
@@ -40,20 +40,26 @@ public class Archer extends com.joe.proceduralgame.Character {
 	}
 
 	@Override
-	public void draw(int shaderProgram, float[] mVPMatrix) {
+	protected void unload(TextureManager tex) {
+		super.unload(tex);
+		tex.referenceUnload(R.drawable.atlas_demo2);
+	}
+
+	@Override
+	public void emitSprites(SpriteList sprites) {
 		int newIndex = 0;
 
 		long animTime;
 		switch (state) {
 		case STATE_WAITING:
-			animTime = (System.currentTimeMillis() - stateStartTime) % 1400;
+			animTime = (currentRoom.getTime() - stateStartTime) % 1400;
 			if (animTime < 700)
 				newIndex = 40;
 			else
 				newIndex = 48;
 			break;
 		case STATE_WALKING:
-			animTime = (System.currentTimeMillis() - stateStartTime) % 600;
+			animTime = (currentRoom.getTime() - stateStartTime) % 600;
 			if (animTime < 150)
 				newIndex = 49;
 			else if (animTime < 300)
@@ -64,7 +70,7 @@ public class Archer extends com.joe.proceduralgame.Character {
 				newIndex = 52;
 			break;
 		case STATE_ATTACKING:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime < 100)
 				newIndex = 56;
 			else if (animTime < 300)
@@ -77,7 +83,7 @@ public class Archer extends com.joe.proceduralgame.Character {
 				newIndex = 60;
 			break;
 		case STATE_TAKING_DAMAGE:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime < 400) {
 				if (animTime % 160 >= 120)
 					return;
@@ -88,7 +94,7 @@ public class Archer extends com.joe.proceduralgame.Character {
 			}
 			break;
 		case STATE_DEAD:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime % 160 >= 120)
 				return;
 			else
@@ -96,16 +102,12 @@ public class Archer extends com.joe.proceduralgame.Character {
 			break;
 		}
 
-		synchronized (this) {
-			quad.uvOrigin[0] = (newIndex % N_COL) / (float) N_COL; // u coord
-			quad.uvOrigin[1] = (newIndex / N_COL) / (float) N_COL; // v coord
-			quad.uvScale[0] = scaleX / (float) N_COL; // u scale
-			quad.uvScale[1] = scaleY / (float) N_COL; // v scale
+		quad.uvOrigin[0] = (newIndex % N_COL) / (float) N_COL; // u coord
+		quad.uvOrigin[1] = (newIndex / N_COL) / (float) N_COL; // v coord
+		quad.uvScale[0] = scaleX / (float) N_COL; // u scale
+		quad.uvScale[1] = scaleY / (float) N_COL; // v scale
 
-			preDraw(shaderProgram, mVPMatrix);
-			quad.draw(shaderProgram, mVPMatrix);
-			postDraw(shaderProgram, mVPMatrix);
-		}
+		emitSprite(sprites);
 	}
 
 }
@@ -2,7 +2,6 @@ package com.joe.proceduralgame.entities.characters;
 
 import com.joe.proceduralgame.*;
 import com.joe.proceduralgame.Quad.Type;
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
 
 public class Ghoul extends com.joe.proceduralgame.Character {
 	
@@ -23,27 +22,33 @@ public class Ghoul extends com.joe.proceduralgame.Character {
 	}
 
 	@Override
-	protected void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion {
+	protected void load(TextureManager tex) {
 		texture = tex.referenceLoad(R.drawable.atlas_demo2);
 		quad = Quad.createDynamicQuad(Type.CHARACTER, new float[16], texture);
 	}
 
 	@Override
-	public void draw(int shaderProgram, float[] mVPMatrix) {
+	protected void unload(TextureManager tex) {
+		super.unload(tex);
+		tex.referenceUnload(R.drawable.atlas_demo2);
+	}
+
+	@Override
+	public void emitSprites(SpriteList sprites) {
 		int newIndex = 0;
 
 		long animTime;
 		switch (state) {
 		case STATE_WAITING:
 		case STATE_WALKING:
-			animTime = (System.currentTimeMillis() - stateStartTime) % 400;
+			animTime = (currentRoom.getTime() - stateStartTime) % 400;
 			if (animTime < 200)
 				newIndex = 24;
 			else
 				newIndex = 25;
 			break;
 		case STATE_ATTACKING:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime < 200)
 				newIndex = 26;
 			else if (animTime < 400)
@@ -52,7 +57,7 @@ public class Ghoul extends com.joe.proceduralgame.Character {
 				newIndex = 30;
 			break;
 		case STATE_TAKING_DAMAGE:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime < 400) {
 				if (animTime % 160 >= 120)
 					return;
@@ -63,7 +68,7 @@ public class Ghoul extends com.joe.proceduralgame.Character {
 			}
 			break;
 		case STATE_DEAD:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime % 160 >= 120)
 				return;
 			else
@@ -71,37 +76,33 @@ public class Ghoul extends com.joe.proceduralgame.Character {
 			break;
 		}
 
-		synchronized (this) {
-			if (newIndex != atlasIndex) {
-				atlasIndex = newIndex;
-				switch (newIndex) {
-				case 24:
-				case 25: // waiting/walking, standard
-				case 26: // attack, 1x1
-					offsetX = 0;
-					scaleX = 1;
-					scaleY = 1;
-					updateModelMatrix();
-					break;
-				case 28:
-				case 30: // attack, outstretched
-					offsetX = .5f;
-					scaleX = 2;
-					scaleY = 1;
-					updateModelMatrix();
-					break;
-				}
+		if (newIndex != atlasIndex) {
+			atlasIndex = newIndex;
+			switch (newIndex) {
+			case 24:
+			case 25: // waiting/walking, standard
+			case 26: // attack, 1x1
+				offsetX = 0;
+				scaleX = 1;
+				scaleY = 1;
+				updateModelMatrix();
+				break;
+			case 28:
+			case 30: // attack, outstretched
+				offsetX = .5f;
+				scaleX = 2;
+				scaleY = 1;
+				updateModelMatrix();
+				break;
 			}
-			
-			quad.uvOrigin[0] = (newIndex % N_COL) / (float) N_COL; // u coord
-			quad.uvOrigin[1] = (newIndex / N_COL) / (float) N_COL; // v coord
-			quad.uvScale[0] = scaleX / (float) N_COL; // u scale
-			quad.uvScale[1] = scaleY / (float) N_COL; // v scale
-
-			preDraw(shaderProgram, mVPMatrix);
-			quad.draw(shaderProgram, mVPMatrix);
-			postDraw(shaderProgram, mVPMatrix);
 		}
+		
+		quad.uvOrigin[0] = (newIndex % N_COL) / (float) N_COL; // u coord
+		quad.uvOrigin[1] = (newIndex / N_COL) / (float) N_COL; // v coord
+		quad.uvScale[0] = scaleX / (float) N_COL; // u scale
+		quad.uvScale[1] = scaleY / (float) N_COL; // v scale
+
+		emitSprite(sprites);
 	}
 
 }
@@ -3,8 +3,8 @@ package com.joe.proceduralgame.entities.characters;
 import com.joe.proceduralgame.Quad;
 import com.joe.proceduralgame.Quad.Type;
 import com.joe.proceduralgame.R;
+import com.joe.proceduralgame.SpriteList;
 import com.joe.proceduralgame.TextureManager;
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
 
 public class Serpul extends com.joe.proceduralgame.Character {
 
@@ -25,27 +25,33 @@ public class Serpul extends com.joe.proceduralgame.Character {
 	}
 
 	@Override
-	protected void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion {
+	protected void load(TextureManager tex) {
 		texture = tex.referenceLoad(R.drawable.atlas_demo2);
 		quad = Quad.createDynamicQuad(Type.CHARACTER, new float[16], texture);
 		updateModelMatrix();
 	}
 
 	@Override
-	public void draw(int shaderProgram, float[] mVPMatrix) {
+	protected void unload(TextureManager tex) {
+		super.unload(tex);
+		tex.referenceUnload(R.drawable.atlas_demo2);
+	}
+
+	@Override
+	public void emitSprites(SpriteList sprites) {
 		int newIndex = 0;
 
 		long animTime;
 		switch (state) {
 		case STATE_WAITING:
-			animTime = (System.currentTimeMillis() - stateStartTime) % 1200;
+			animTime = (currentRoom.getTime() - stateStartTime) % 1200;
 			if (animTime < 600)
 				newIndex = 39;
 			else
 				newIndex = 38;
 			break;
 		case STATE_WALKING:
-			animTime = (System.currentTimeMillis() - stateStartTime) % 600;
+			animTime = (currentRoom.getTime() - stateStartTime) % 600;
 			if (animTime < 200)
 				newIndex = 46;
 			else if (animTime < 200)
@@ -54,7 +60,7 @@ public class Serpul extends com.joe.proceduralgame.Character {
 				newIndex = 44;
 			break;
 		case STATE_ATTACKING:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime < 100)
 				newIndex = 46;
 			else if (animTime < 200)
@@ -67,7 +73,7 @@ public class Serpul extends com.joe.proceduralgame.Character {
 				newIndex = 63;
 			break;
 		case STATE_TAKING_DAMAGE:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime < 400) {
 				if (animTime % 160 >= 120)
 					return;
@@ -78,7 +84,7 @@ public class Serpul extends com.joe.proceduralgame.Character {
 			}
 			break;
 		case STATE_DEAD:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime % 160 >= 120)
 				return;
 			else
@@ -86,16 +92,12 @@ public class Serpul extends com.joe.proceduralgame.Character {
 			break;
 		}
 
-		synchronized (this) {
-			quad.uvOrigin[0] = (newIndex % N_COL) / (float) N_COL; // u coord
-			quad.uvOrigin[1] = (newIndex / N_COL) / (float) N_COL; // v coord
-			quad.uvScale[0] = scaleX / (float) N_COL; // u scale
-			quad.uvScale[1] = scaleY / (float) N_COL; // v scale
+		quad.uvOrigin[0] = (newIndex % N_COL) / (float) N_COL; // u coord
+		quad.uvOrigin[1] = (newIndex / N_COL) / (float) N_COL; // v coord
+		quad.uvScale[0] = scaleX / (float) N_COL; // u scale
+		quad.uvScale[1] = scaleY / (float) N_COL; // v scale
 
-			preDraw(shaderProgram, mVPMatrix);
-			quad.draw(shaderProgram, mVPMatrix);
-			postDraw(shaderProgram, mVPMatrix);
-		}
+		emitSprite(sprites);
 	}
 
 }
@@ -3,7 +3,6 @@ package com.joe.proceduralgame.entities.characters;
 import android.media.MediaPlayer;
 import com.joe.proceduralgame.*;
 import com.joe.proceduralgame.Quad.Type;
-import com.joe.proceduralgame.TextureManager.NoFreeTextureUnitsExcpetion;
 
 public class Swordsman extends com.joe.proceduralgame.Character {
 
@@ -29,27 +28,33 @@ public class Swordsman extends com.joe.proceduralgame.Character {
 	}
 
 	@Override
-	protected void load(TextureManager tex) throws NoFreeTextureUnitsExcpetion {
+	protected void load(TextureManager tex) {
 		texture = tex.referenceLoad(R.drawable.atlas_demo2);
 		quad = Quad.createDynamicQuad(Type.CHARACTER, new float[16], texture);
 		attackSound = MediaPlayer.create(tex.context, R.raw.sword_attack);
 	}
 
 	@Override
-	public void draw(int shaderProgram, float[] mVPMatrix) {
+	protected void unload(TextureManager tex) {
+		super.unload(tex);
+		tex.referenceUnload(R.drawable.atlas_demo2);
+	}
+
+	@Override
+	public void emitSprites(SpriteList sprites) {
 		int newIndex = 0;
 
 		long animTime;
 		switch (state) {
 		case STATE_WAITING:
-			animTime = (System.currentTimeMillis() - stateStartTime) % 1400;
+			animTime = (currentRoom.getTime() - stateStartTime) % 1400;
 			if (animTime < 700)
 				newIndex = 8;
 			else
 				newIndex = 9;
 			break;
 		case STATE_WALKING:
-			animTime = (System.currentTimeMillis() - stateStartTime) % 600;
+			animTime = (currentRoom.getTime() - stateStartTime) % 600;
 			if (animTime < 150)
 				newIndex = 0;
 			else if (animTime < 300)
@@ -60,7 +65,7 @@ public class Swordsman extends com.joe.proceduralgame.Character {
 				newIndex = 2;
 			break;
 		case STATE_ATTACKING:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime < 200)
 				newIndex = 10;
 			else if (animTime < 250)
@@ -71,7 +76,7 @@ public class Swordsman extends com.joe.proceduralgame.Character {
 				newIndex = 17;
 			break;
 		case STATE_TAKING_DAMAGE:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime < 400) {
 				if (animTime % 160 >= 120)
 					return;
@@ -82,7 +87,7 @@ public class Swordsman extends com.joe.proceduralgame.Character {
 			}
 			break;
 		case STATE_DEAD:
-			animTime = System.currentTimeMillis() - stateStartTime;
+			animTime = currentRoom.getTime() - stateStartTime;
 			if (animTime % 160 >= 120)
 				return;
 			else
@@ -90,57 +95,53 @@ public class Swordsman extends com.joe.proceduralgame.Character {
 			break;
 		}
 
-		synchronized (this) {
-			if (newIndex != atlasIndex) {
-				atlasIndex = newIndex;
-				switch (newIndex) {
-				case 8:
-				case 9: // idle
-					offsetX = 0;
-					scaleX = 1;
-					scaleY = 1;
-					updateModelMatrix();
-					break;
-				case 0:
-				case 1:
-				case 2: // walking, standard
-					offsetX = 0;
-					scaleX = 1;
-					scaleY = 1;
-					updateModelMatrix();
-					break;
-				case 3: // walking, odd frame
-					offsetX = .5f;
-					scaleX = 2;
-					scaleY = 1;
-					updateModelMatrix();
-					break;
-				case 10:
-				case 11: // attack, standard
-					offsetX = 0;
-					scaleX = 1;
-					scaleY = 1;
-					updateModelMatrix();
-					break;
-				case 12:
-				case 17: //attack, arm extended
-					offsetX = .5f;
-					scaleX = 2;
-					scaleY = 1;
-					updateModelMatrix();
-					break;
-				}
+		if (newIndex != atlasIndex) {
+			atlasIndex = newIndex;
+			switch (newIndex) {
+			case 8:
+			case 9: // idle
+				offsetX = 0;
+				scaleX = 1;
+				scaleY = 1;
+				updateModelMatrix();
+				break;
+			case 0:
+			case 1:
+			case 2: // walking, standard
+				offsetX = 0;
+				scaleX = 1;
+				scaleY = 1;
+				updateModelMatrix();
+				break;
+			case 3: // walking, odd frame
+				offsetX = .5f;
+				scaleX = 2;
+				scaleY = 1;
+				updateModelMatrix();
+				break;
+			case 10:
+			case 11: // attack, standard
+				offsetX = 0;
+				scaleX = 1;
+				scaleY = 1;
+				updateModelMatrix();
+				break;
+			case 12:
+			case 17: //attack, arm extended
+				offsetX = .5f;
+				scaleX = 2;
+				scaleY = 1;
+				updateModelMatrix();
+				break;
 			}
-			
-			quad.uvOrigin[0] = (newIndex % N_COL) / (float) N_COL; // u coord
-			quad.uvOrigin[1] = (newIndex / N_COL) / (float) N_COL; // v coord
-			quad.uvScale[0] = scaleX / (float) N_COL; // u scale
-			quad.uvScale[1] = scaleY / (float) N_COL; // v scale
-
-			preDraw(shaderProgram, mVPMatrix);
-			quad.draw(shaderProgram, mVPMatrix);
-			postDraw(shaderProgram, mVPMatrix);
 		}
+		
+		quad.uvOrigin[0] = (newIndex % N_COL) / (float) N_COL; // u coord
+		quad.uvOrigin[1] = (newIndex / N_COL) / (float) N_COL; // v coord
+		quad.uvScale[0] = scaleX / (float) N_COL; // u scale
+		quad.uvScale[1] = scaleY / (float) N_COL; // v scale
+
+		emitSprite(sprites);
 	}
 
 }
@@ -0,0 +1,65 @@
+package com.joe.proceduralgame.headless;
+
+import com.joe.proceduralgame.Character;
+import com.joe.proceduralgame.EnemyPlanner;
+import com.joe.proceduralgame.MctsPlanner;
+
+/**
+ * Plays out many headless battles and prints how they went, for balancing and AI tuning.
+ *
+ * Usage: BattleSimulator [battles] [seed] [players] [enemies] [max steps] [enemy planner]
+ *
+ * The enemy planner is "tactical" by default, or "mcts" for an MctsPlanner on every core.
+ */
+public class BattleSimulator {
+
+	public static void main(String[] args) {
+		int battles = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		int nPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		int nEnemies = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+		int maxSteps = args.length > 4 ? Integer.parseInt(args[4]) : 100000;
+		boolean mcts = args.length > 5 && args[5].equals("mcts");
+
+		int playerWins = 0, enemyWins = 0, unfinished = 0;
+		long totalTime = 0, totalSurvivors = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < battles; i++) {
+			HeadlessBattle battle = new HeadlessBattle(seed + i, nPlayers, nEnemies);
+			EnemyPlanner planner = null;
+			if (mcts) {
+				planner = new MctsPlanner(seed + i, Runtime.getRuntime().availableProcessors(),
+						MctsPlanner.DEFAULT_ITERATIONS, EnemyPlanner.NO_BUDGET);
+				battle.getManager().setPlanner(Character.GROUP_ENEMY, planner);
+			}
+			HeadlessBattle.Result result = battle.run(maxSteps);
+			//each planner has a thread per core, which would pile up over thousands of battles
+			if (planner != null)
+				planner.shutdown();
+			if (result.winner == Character.GROUP_PLAYER)
+				playerWins++;
+			else if (result.winner == Character.GROUP_ENEMY)
+				enemyWins++;
+			else
+				unfinished++;
+			//unfinished battles were cut off at the step limit, so they'd skew the averages
+			if (result.winner != -1) {
+				totalTime += result.time;
+				totalSurvivors += result.survivors;
+			}
+		}
+		double seconds = (System.nanoTime() - start) * 1e-9;
+
+		int finished = battles - unfinished;
+		System.out.println("battles: " + battles + " (" + nPlayers + " players vs " + nEnemies + " enemies)");
+		System.out.println("player wins: " + playerWins + ", enemy wins: " + enemyWins
+				+ ", unfinished: " + unfinished);
+		if (finished > 0) {
+			System.out.println("of finished battles, average simulated length: "
+					+ totalTime / finished / 1000.0 + " s, average survivors: "
+					+ (double) totalSurvivors / finished);
+		}
+		System.out.println("battles per minute: " + Math.round(battles / seconds * 60));
+	}
+
+}
@@ -0,0 +1,166 @@
+package com.joe.proceduralgame.headless;
+
+import java.util.Random;
+
+import com.joe.proceduralgame.Character;
+import com.joe.proceduralgame.DungeonManager;
+import com.joe.proceduralgame.EnemyPlanner;
+import com.joe.proceduralgame.Room;
+import com.joe.proceduralgame.RoomGenerator;
+import com.joe.proceduralgame.TacticalEvaluator;
+import com.joe.proceduralgame.entities.characters.Archer;
+import com.joe.proceduralgame.entities.characters.Ghoul;
+import com.joe.proceduralgame.entities.characters.Serpul;
+import com.joe.proceduralgame.entities.characters.SkeletonWarrior;
+import com.joe.proceduralgame.entities.characters.Swordsman;
+
+/**
+ * A battle in a generated room between AI controlled players and enemies, played out without a
+ * display.
+ *
+ * Nothing here touches Android classes, so battles run on a plain JVM. The DungeonManager is
+ * stepped directly rather than on its own thread, so simulated time never waits for real time and
+ * animation timers like attackHitTime complete as fast as the CPU allows.
+ */
+public class HeadlessBattle {
+
+	/** Steps per simulated second. Coarser than the game's, which only matters for smoothness */
+	public static final int DEFAULT_TICK_RATE = 20;
+
+	/**
+	 * The outcome of a battle.
+	 */
+	public static class Result {
+		/** The group id of the group left standing, or -1 if the step limit was reached first */
+		public final int winner;
+		/** The number of simulation steps taken */
+		public final int steps;
+		/** The simulated time the battle took in ms */
+		public final long time;
+		/** The number of units of the winning group left alive */
+		public final int survivors;
+
+		Result(int winner, int steps, long time, int survivors) {
+			this.winner = winner;
+			this.steps = steps;
+			this.time = time;
+			this.survivors = survivors;
+		}
+	}
+
+	private final Room room;
+	private final DungeonManager manager;
+
+	/**
+	 * Generates a room and places the units of both sides at random free squares.
+	 *
+	 * The same seed always gives the same battle.
+	 *
+	 * @param seed the seed for the room and the placement of units
+	 * @param nPlayers the number of player units
+	 * @param nEnemies the number of enemy units
+	 */
+	public HeadlessBattle(long seed, int nPlayers, int nEnemies) {
+		Random rand = new Random(seed);
+		room = new Room();
+		room.generator = new RoomGenerator(rand.nextLong());
+		room.generator.generate(room);
+
+		for (int i = 0; i < nPlayers; i++)
+			place(rand, rand.nextBoolean() ? new Swordsman() : new Archer());
+		for (int i = 0; i < nEnemies; i++) {
+			switch (rand.nextInt(3)) {
+			case 0:
+				place(rand, new Ghoul());
+				break;
+			case 1:
+				place(rand, new SkeletonWarrior());
+				break;
+			default:
+				place(rand, new Serpul());
+				break;
+			}
+		}
+
+		manager = new DungeonManager(room);
+		manager.setAIControlled(Character.GROUP_PLAYER, true);
+		manager.setAIControlled(Character.GROUP_ENEMY, true);
+		manager.setTickRate(DEFAULT_TICK_RATE);
+		//score every plan, so battles play out the same however fast the machine is
+		manager.setPlanner(Character.GROUP_PLAYER, new EnemyPlanner(new TacticalEvaluator(), EnemyPlanner.NO_BUDGET));
+		manager.setPlanner(Character.GROUP_ENEMY, new EnemyPlanner(new TacticalEvaluator(), EnemyPlanner.NO_BUDGET));
+	}
+
+	/**
+	 * Gets the manager that runs the battle, e.g. to change its tick rate before running.
+	 */
+	public DungeonManager getManager() {
+		return manager;
+	}
+
+	/**
+	 * Plays out the battle until one side has no units left.
+	 *
+	 * @param maxSteps the most steps to take before giving up
+	 * @return the outcome
+	 */
+	public Result run(int maxSteps) {
+		manager.startBattle();
+		int steps = 0;
+		int winner = getWinner();
+		while (winner == -1 && steps < maxSteps) {
+			manager.step();
+			steps++;
+			winner = getWinner();
+		}
+
+		int survivors = 0;
+		for (Character c : room.getCharacters()) {
+			if (c.getGroupID() == winner && c.getHitPoints() > 0)
+				survivors++;
+		}
+		return new Result(winner, steps, room.getTime(), survivors);
+	}
+
+	/**
+	 * Gets the group id of the only group with units left alive.
+	 *
+	 * @return the group id, or -1 if both groups still have units
+	 */
+	private int getWinner() {
+		int players = 0, enemies = 0;
+		for (Character c : room.getCharacters()) {
+			if (c.getHitPoints() == 0)
+				continue;
+			if (c.isPlayerOwned())
+				players++;
+			else
+				enemies++;
+		}
+		if (enemies == 0)
+			return Character.GROUP_PLAYER;
+		if (players == 0)
+			return Character.GROUP_ENEMY;
+		return -1;
+	}
+
+	/**
+	 * Adds a character to the room at a random free square, or not at all if the room is full.
+	 */
+	private void place(Random rand, Character c) {
+		int nSquares = room.getWidth() * room.getLength();
+		int start = rand.nextInt(nSquares);
+		for (int i = 0; i < nSquares; i++) {
+			int square = (start + i) % nSquares;
+			int row = square / room.getWidth();
+			int col = square % room.getWidth();
+			if (room.getEntityAt(row, col) == null) {
+				c.posx = col;
+				c.posz = row;
+				room.addCharacter(c);
+				return;
+			}
+		}
+	}
+
+}
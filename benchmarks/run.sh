@@ -0,0 +1,19 @@
+#!/bin/sh
+# Builds the JMH benchmarks and runs them on a desktop JVM.
+#
+# The app's compiled classes run against the pure Java stand-ins in src/standins instead of the
+# Android framework, so only code that needs no GL context or device can be benchmarked.
+#
+# Usage: APP_CLASSES=<app's compiled classes> [ANDROID_JAR=<android.jar>] benchmarks/run.sh [JMH options]
+# e.g. benchmarks/run.sh -p size=16x9 FindPath. See java -jar target/benchmarks.jar -h for the options.
+set -e
+
+if [ -z "$APP_CLASSES" ]; then
+	echo "APP_CLASSES must point at the app's compiled classes" >&2
+	exit 1
+fi
+ANDROID_JAR=${ANDROID_JAR:-$ANDROID_HOME/platforms/android-21/android.jar}
+
+cd "$(dirname "$0")"
+mvn -q -B package -Dapp.classes="$APP_CLASSES" -Dandroid.jar="$ANDROID_JAR"
+exec java -jar target/benchmarks.jar "$@"
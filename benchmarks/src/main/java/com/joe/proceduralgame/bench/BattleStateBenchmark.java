@@ -0,0 +1,58 @@
+package com.joe.proceduralgame.bench;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.joe.proceduralgame.BattleState;
+import com.joe.proceduralgame.Character;
+import com.joe.proceduralgame.Room;
+import com.joe.proceduralgame.entities.characters.Ghoul;
+import com.joe.proceduralgame.entities.characters.Swordsman;
+
+/**
+ * One node of a search over a BattleState: generating the moves of the phase, making a random one
+ * and unmaking it again, from random points of a random playout.
+ */
+public class BattleStateBenchmark extends RoomBenchmark {
+
+	private static final int N_PLAYERS = 2, N_ENEMIES = 4;
+	//Moves into the playout before starting over
+	private static final int PLAYOUT_LENGTH = 16;
+
+	private BattleState state;
+	private int[] moves;
+	private Random rand;
+	private int depth;
+
+	@Setup
+	public void setUp() {
+		RoomConfig config = getConfig();
+		Room room = config.createRoom();
+		rand = new Random(config.seed);
+		for (int i = 0; i < N_PLAYERS + N_ENEMIES; i++)
+			RoomConfig.place(rand, room, i < N_PLAYERS ? new Swordsman() : new Ghoul());
+		state = new BattleState(room, Character.GROUP_ENEMY);
+		moves = new int[state.getMaxMoves()];
+		depth = 0;
+	}
+
+	@Benchmark
+	public int searchNode() {
+		int n = state.generateMoves(moves);
+		if (n == 0 || depth == PLAYOUT_LENGTH || state.getWinner() != -1) {
+			for (; depth > 0; depth--)
+				state.unmake();
+			n = state.generateMoves(moves);
+		}
+		state.make(moves[rand.nextInt(n)]);
+		long hash = state.getHash();
+		state.unmake();
+		//carry on down the playout
+		state.make(moves[rand.nextInt(n)]);
+		depth++;
+		return (int) hash;
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.joe.proceduralgame.bench;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.joe.proceduralgame.IntPath;
+import com.joe.proceduralgame.Room;
+
+/**
+ * Room.findPath() between random pairs of free squares, side by side with the LegacyFindPath it
+ * replaced.
+ */
+public class FindPathBenchmark extends RoomBenchmark {
+
+	private static final int N_QUERIES = 256;
+
+	private Room room;
+	private final IntPath path = new IntPath();
+	private int[] starts, dests;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		RoomConfig config = getConfig();
+		room = config.createRoom();
+		int[] free = RoomConfig.getFreeSquares(room);
+		Random rand = new Random(config.seed);
+		starts = new int[N_QUERIES];
+		dests = new int[N_QUERIES];
+		for (int i = 0; i < N_QUERIES; i++) {
+			starts[i] = free[rand.nextInt(free.length)];
+			dests[i] = free[rand.nextInt(free.length)];
+		}
+		next = 0;
+	}
+
+	@Benchmark
+	public int findPath() {
+		int i = next;
+		next = (next + 1) % N_QUERIES;
+		int width = room.getWidth();
+		if (room.findPath(starts[i] / width, starts[i] % width, dests[i] / width, dests[i] % width, true, path))
+			return path.size();
+		return -1;
+	}
+
+	@Benchmark
+	public LinkedList<int[]> legacyFindPath() {
+		int i = next;
+		next = (next + 1) % N_QUERIES;
+		int width = room.getWidth();
+		return LegacyFindPath.findPath(room, starts[i] / width, starts[i] % width, dests[i] / width,
+				dests[i] % width, true);
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.joe.proceduralgame.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.joe.proceduralgame.Room;
+
+/**
+ * RoomGenerator.generate(), or generate() followed by RoomGenerator.load() which builds the static
+ * quads.
+ */
+public class GenerateBenchmark extends RoomBenchmark {
+
+	private RoomConfig config;
+
+	@Setup
+	public void setUp() {
+		config = getConfig();
+	}
+
+	@Benchmark
+	public Room generate() {
+		Room room = new Room();
+		room.generator = config.createGenerator();
+		room.generator.generate(room);
+		return room;
+	}
+
+	@Benchmark
+	public Room generateAndLoad() {
+		Room room = generate();
+		room.generator.load(room);
+		return room;
+	}
+
+}
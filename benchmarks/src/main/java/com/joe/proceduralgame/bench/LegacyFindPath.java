@@ -0,0 +1,99 @@
+package com.joe.proceduralgame.bench;
+
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+import com.joe.proceduralgame.Room;
+
+/**
+ * Room.findPath() as it was before PathContext, which allocates its arrays, squares and queue on
+ * every search. Kept to compare the two, in speed and in the paths they find.
+ */
+public class LegacyFindPath {
+
+	/**
+	 * Finds a shortest path in a room between two squares that avoids squares with Entities.
+	 *
+	 * Excludes the starting square, includes the destination square. Returns a list of length 0 if
+	 * the start square is the end square.
+	 *
+	 * @param includeDest if false, the path will exclude the dest square and will end on an
+	 *                    adjacent square.
+	 * @return a LinkedList of length 2 int[]s, each corresponding to the row and col of the next
+	 * square, or returns null if no such path exists.
+	 */
+	public static LinkedList<int[]> findPath(Room room, int startRow, int startCol, final int destRow,
+											 final int destCol, boolean includeDest) {
+		final int width = room.getWidth();
+		final int length = room.getLength();
+		boolean[][] discovered = new boolean[length][width]; //initialized to false
+		final int[][] g = new int[length][width];
+		int[][][] prev = new int[length][width][];
+
+		Comparator<int[]> squareComparator = new Comparator<int[]>() {
+			@Override
+			public int compare(int[] lhs, int[] rhs) {
+				double h_lhs = Math.hypot(destRow - lhs[0], destCol - lhs[1]);
+				double h_rhs = Math.hypot(destRow - rhs[0], destCol - rhs[1]);
+				double f_lhs = g[lhs[0]][lhs[1]] + h_lhs;
+				double f_rhs = g[rhs[0]][rhs[1]] + h_rhs;
+				if (f_lhs > f_rhs)
+					return 1;
+				else if (f_lhs < f_rhs)
+					return -1;
+				else return
+					0;
+			}
+		};
+
+		PriorityQueue<int[]> frontier = new PriorityQueue<int[]>(4, squareComparator);
+
+		int[] curSquare = new int[2];
+		curSquare[0] = startRow;
+		curSquare[1] = startCol;
+		frontier.add(curSquare);
+
+		Outer:
+		while ((curSquare = frontier.poll()) != null) {
+			if (curSquare[0] == destRow && curSquare[1] == destCol)
+				break;
+
+			for (int i = 0; i < 4; i++) {
+				double theta = Math.PI * .5 * i;
+				int adjRow = (int) Math.round(curSquare[0] - Math.sin(theta));
+				int adjCol = (int) Math.round(curSquare[1] + Math.cos(theta));
+				if (adjRow < 0 || adjRow >= length || adjCol < 0 || adjCol >= width)
+					continue;
+				if (!discovered[adjRow][adjCol]) {
+					discovered[adjRow][adjCol] = true;
+					if (!includeDest && adjRow == destRow && adjCol == destCol)
+						break Outer;
+					if (room.getEntityAt(adjRow, adjCol) != null)
+						continue;
+					//set ptr to prev square
+					prev[adjRow][adjCol] = curSquare;
+					//cost so far
+					g[adjRow][adjCol] = g[curSquare[0]][curSquare[1]] + 1;
+
+					int[] adjSquare = new int[2];
+					adjSquare[0] = adjRow;
+					adjSquare[1] = adjCol;
+					frontier.add(adjSquare);
+				}
+			}
+		}
+
+		if (curSquare != null) { //success, reconstruct path
+			LinkedList<int[]> path = new LinkedList<int[]>();
+			while (curSquare != null && !(curSquare[0] == startRow && curSquare[1] == startCol)) {
+				path.addFirst(curSquare);
+				curSquare = prev[curSquare[0]][curSquare[1]];
+			}
+			return path;
+		} else {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.joe.proceduralgame.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.joe.proceduralgame.Room;
+import com.joe.proceduralgame.RoomLighting;
+
+/**
+ * Baking a loaded room's lightmap from its torches with RoomLighting.prepare().
+ */
+public class LightmapBenchmark extends RoomBenchmark {
+
+	/** The most texels the lightmap may take, which sets how densely it is baked */
+	@Param({"4096", "16384", "65536"})
+	public int texelBudget;
+
+	private RoomLighting lighting;
+
+	@Setup
+	public void setUp() {
+		Room room = getConfig().createRoom();
+		room.generator.load(room);
+		lighting = room.getLighting();
+		lighting.setTexelBudget(texelBudget);
+	}
+
+	@Benchmark
+	public int computeLightmap() {
+		lighting.prepare();
+		return lighting.atlas.size;
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.joe.proceduralgame.bench;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+import android.opengl.Matrix;
+
+import com.joe.proceduralgame.DungeonRenderer;
+import com.joe.proceduralgame.Quad;
+import com.joe.proceduralgame.RaycastUtils;
+import com.joe.proceduralgame.Room;
+
+/**
+ * RaycastUtils.pick() through random points of the screen, with the camera above the middle of
+ * the room the way the game places it.
+ */
+public class PickBenchmark extends RoomBenchmark {
+
+	private static final int N_QUERIES = 256;
+	private static final float CAMERA_HEIGHT = 8;
+
+	private Room room;
+	private final float[] viewMatrix = new float[16];
+	private float[] nearXs, nearYs;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		RoomConfig config = getConfig();
+		room = config.createRoom();
+		room.prepare();
+
+		Matrix.setIdentityM(viewMatrix, 0);
+		Matrix.translateM(viewMatrix, 0, 0, 0, -CAMERA_HEIGHT);
+		Matrix.rotateM(viewMatrix, 0, DungeonRenderer.CAMERA_ANGLE, 1, 0, 0);
+		Matrix.translateM(viewMatrix, 0, -(room.getWidth() - 1) * .5f, 0, -(room.getLength() - 1) * .5f);
+
+		Random rand = new Random(config.seed);
+		nearXs = new float[N_QUERIES];
+		nearYs = new float[N_QUERIES];
+		for (int i = 0; i < N_QUERIES; i++) {
+			nearXs[i] = (rand.nextFloat() * 2 - 1) * .8f;
+			nearYs[i] = (rand.nextFloat() * 2 - 1) * .5f;
+		}
+		next = 0;
+	}
+
+	@Benchmark
+	public int pick() {
+		int i = next;
+		next = (next + 1) % N_QUERIES;
+		Quad hit = RaycastUtils.pick(room, viewMatrix, nearXs[i], nearYs[i]);
+		return hit == null ? 0 : hit.type.ordinal() + 1;
+	}
+
+}
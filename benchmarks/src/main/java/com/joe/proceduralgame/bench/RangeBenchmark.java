@@ -0,0 +1,76 @@
+package com.joe.proceduralgame.bench;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.joe.proceduralgame.Character;
+import com.joe.proceduralgame.Room;
+import com.joe.proceduralgame.entities.characters.Swordsman;
+
+/**
+ * Room.getRange() from random free squares.
+ *
+ * getRange() computes each range once and then answers from the room's cache until the grid
+ * changes. To time the computation, every query first steps a marker unit between two squares,
+ * which changes the grid as a walking unit would, so the cache never answers it. The step is
+ * part of the time. getRangeCached() repeats one query to time a cache hit.
+ */
+public class RangeBenchmark extends RoomBenchmark {
+
+	private static final int N_QUERIES = 256;
+	private static final int RANGE = 5;
+
+	private Room room;
+	private int[] starts;
+	private int next;
+	//stepped back and forth between two free squares, or null if the room has no two side by side
+	private Character marker;
+	private int markerFrom, markerTo;
+
+	@Setup
+	public void setUp() {
+		RoomConfig config = getConfig();
+		room = config.createRoom();
+		int width = room.getWidth();
+		int[] free = RoomConfig.getFreeSquares(room);
+		marker = null;
+		for (int square : free) {
+			if (square % width + 1 < width && room.getEntityAt(square / width, square % width + 1) == null) {
+				marker = new Swordsman();
+				marker.posx = square % width;
+				marker.posz = square / width;
+				room.addCharacter(marker);
+				markerFrom = square;
+				markerTo = square + 1;
+				break;
+			}
+		}
+
+		free = RoomConfig.getFreeSquares(room);
+		Random rand = new Random(config.seed);
+		starts = new int[N_QUERIES];
+		for (int i = 0; i < N_QUERIES; i++)
+			starts[i] = free[rand.nextInt(free.length)];
+		next = 0;
+	}
+
+	@Benchmark
+	public int getRange() {
+		if (marker != null) {
+			int width = room.getWidth();
+			int square = marker.gridRow * width + marker.gridCol == markerFrom ? markerTo : markerFrom;
+			marker.setPosition(square % width, square / width);
+		}
+		int i = next;
+		next = (next + 1) % N_QUERIES;
+		return room.getRange(starts[i] / room.getWidth(), starts[i] % room.getWidth(), RANGE).length;
+	}
+
+	@Benchmark
+	public int getRangeCached() {
+		return room.getRange(starts[0] / room.getWidth(), starts[0] % room.getWidth(), RANGE).length;
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.joe.proceduralgame.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The state of a benchmark run over every combination of room size, obstacle density and seed.
+ *
+ * Rooms and queries only depend on the parameters, so runs on different machines measure the same
+ * work. Narrow the sweep with JMH's -p, e.g. -p size=16x9 -p seed=1.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+public abstract class RoomBenchmark {
+
+	/** The width x length of the room */
+	@Param({"8x6", "16x9", "32x32"})
+	public String size;
+
+	/** The chance of each square holding a block */
+	@Param({"0", ".1", ".3"})
+	public float density;
+
+	@Param({"1", "2", "3"})
+	public long seed;
+
+	/**
+	 * Gets the room configuration of the current parameters.
+	 */
+	protected RoomConfig getConfig() {
+		String[] dims = size.split("x");
+		return new RoomConfig(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]), density, seed);
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.joe.proceduralgame.bench;
+
+import java.util.Random;
+
+import com.joe.proceduralgame.Character;
+import com.joe.proceduralgame.Room;
+import com.joe.proceduralgame.RoomGenerator;
+
+/**
+ * The parameters of a benchmarked room: its size, obstacle density and seed.
+ */
+public class RoomConfig {
+
+	public final int width, length;
+	public final float density;
+	public final long seed;
+
+	public RoomConfig(int width, int length, float density, long seed) {
+		this.width = width;
+		this.length = length;
+		this.density = density;
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates a generator for this configuration. Equal configs generate equal rooms.
+	 */
+	public RoomGenerator createGenerator() {
+		return new RoomGenerator(seed, width, length, density);
+	}
+
+	/**
+	 * Creates a room with its grid generated but nothing loaded.
+	 */
+	public Room createRoom() {
+		Room room = new Room();
+		room.generator = createGenerator();
+		room.generator.generate(room);
+		return room;
+	}
+
+	/**
+	 * Gets every square of a room without an entity on it.
+	 *
+	 * @return the packed row * width + col of each free square, in ascending order
+	 */
+	public static int[] getFreeSquares(Room room) {
+		int[] squares = new int[room.getWidth() * room.getLength()];
+		int nFree = 0;
+		for (int row = 0; row < room.getLength(); row++) {
+			for (int col = 0; col < room.getWidth(); col++) {
+				if (room.getEntityAt(row, col) == null)
+					squares[nFree++] = row * room.getWidth() + col;
+			}
+		}
+		int[] free = new int[nFree];
+		System.arraycopy(squares, 0, free, 0, nFree);
+		return free;
+	}
+
+	/**
+	 * Adds a character to a room at a random free square.
+	 *
+	 * @return false if the room had no free square
+	 */
+	public static boolean place(Random rand, Room room, Character c) {
+		int[] free = getFreeSquares(room);
+		if (free.length == 0)
+			return false;
+		int square = free[rand.nextInt(free.length)];
+		c.posx = square % room.getWidth();
+		c.posz = square / room.getWidth();
+		room.addCharacter(c);
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return width + "x" + length + " density=" + density + " seed=" + seed;
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.joe.proceduralgame.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.joe.proceduralgame.Action;
+import com.joe.proceduralgame.Character;
+import com.joe.proceduralgame.Room;
+import com.joe.proceduralgame.entities.characters.Ghoul;
+import com.joe.proceduralgame.entities.characters.Swordsman;
+
+/**
+ * Action.getTargets() of the basic attack for each unit of a battle at random squares.
+ */
+public class TargetsBenchmark extends RoomBenchmark {
+
+	private static final int N_PLAYERS = 2, N_ENEMIES = 4;
+
+	private final List<Character> actors = new ArrayList<>();
+	private int next;
+
+	@Setup
+	public void setUp() {
+		RoomConfig config = getConfig();
+		Room room = config.createRoom();
+		Random rand = new Random(config.seed);
+		actors.clear();
+		for (int i = 0; i < N_PLAYERS + N_ENEMIES; i++) {
+			Character c = i < N_PLAYERS ? new Swordsman() : new Ghoul();
+			if (RoomConfig.place(rand, room, c))
+				actors.add(c);
+		}
+		next = 0;
+	}
+
+	@Benchmark
+	public int getTargets() {
+		Character actor = actors.get(next);
+		next = (next + 1) % actors.size();
+		return Action.basicAttack.getTargets(actor).size();
+	}
+
+}
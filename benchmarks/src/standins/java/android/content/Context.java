@@ -0,0 +1,16 @@
+package android.content;
+
+import android.content.res.Resources;
+
+/**
+ * Pure Java stand-in for android.content.Context, with only the app's resources.
+ */
+public class Context {
+
+	private final Resources resources = new Resources();
+
+	public Resources getResources() {
+		return resources;
+	}
+
+}
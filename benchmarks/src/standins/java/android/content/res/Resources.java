@@ -0,0 +1,30 @@
+package android.content.res;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+/**
+ * Pure Java stand-in for android.content.res.Resources, holding drawables added by tests instead
+ * of reading them from an apk.
+ */
+public class Resources {
+
+	private final Map<Integer, Bitmap> drawables = new HashMap<Integer, Bitmap>();
+
+	/**
+	 * Adds the image of a drawable resource, for BitmapFactory.decodeResource().
+	 */
+	public synchronized void addDrawable(int id, Bitmap bitmap) {
+		drawables.put(id, bitmap);
+	}
+
+	/**
+	 * Gets the image of a drawable resource, or null if none was added.
+	 */
+	public synchronized Bitmap getDrawable(int id) {
+		return drawables.get(id);
+	}
+
+}
@@ -0,0 +1,81 @@
+package android.graphics;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Pure Java stand-in for android.graphics.Bitmap, holding its pixels in an int[] of ARGB colors.
+ */
+public class Bitmap {
+
+	public enum Config {ALPHA_8, RGB_565, ARGB_4444, ARGB_8888}
+
+	private final int width, height;
+	private final Config config;
+	private final int[] colors;
+	private boolean recycled = false;
+
+	private Bitmap(int[] colors, int width, int height, Config config) {
+		this.colors = colors;
+		this.width = width;
+		this.height = height;
+		this.config = config;
+	}
+
+	public static Bitmap createBitmap(int width, int height, Config config) {
+		return new Bitmap(new int[width * height], width, height, config);
+	}
+
+	public static Bitmap createBitmap(int[] colors, int width, int height, Config config) {
+		return new Bitmap(colors.clone(), width, height, config);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public Config getConfig() {
+		return config;
+	}
+
+	public int getByteCount() {
+		switch (config) {
+		case ALPHA_8:
+			return width * height;
+		case ARGB_8888:
+			return 4 * width * height;
+		default:
+			return 2 * width * height;
+		}
+	}
+
+	public Bitmap copy(Config config, boolean isMutable) {
+		return new Bitmap(colors.clone(), width, height, config);
+	}
+
+	/**
+	 * Copies the pixels as RGBA bytes, as an ARGB_8888 bitmap's are laid out.
+	 */
+	public void copyPixelsToBuffer(Buffer dst) {
+		ByteBuffer bytes = (ByteBuffer) dst;
+		for (int color : colors) {
+			bytes.put((byte) (color >> 16));
+			bytes.put((byte) (color >> 8));
+			bytes.put((byte) color);
+			bytes.put((byte) (color >>> 24));
+		}
+	}
+
+	public void recycle() {
+		recycled = true;
+	}
+
+	public boolean isRecycled() {
+		return recycled;
+	}
+
+}
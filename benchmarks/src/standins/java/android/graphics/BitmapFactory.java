@@ -0,0 +1,21 @@
+package android.graphics;
+
+import android.content.res.Resources;
+
+/**
+ * Pure Java stand-in for android.graphics.BitmapFactory, "decoding" the drawables added to the
+ * Resources stand-in.
+ */
+public class BitmapFactory {
+
+	public static class Options {
+		public Bitmap.Config inPreferredConfig;
+		public boolean inScaled = true;
+	}
+
+	public static Bitmap decodeResource(Resources res, int id, Options opts) {
+		Bitmap drawable = res.getDrawable(id);
+		return drawable == null ? null : drawable.copy(drawable.getConfig(), false);
+	}
+
+}
@@ -0,0 +1,24 @@
+package android.graphics;
+
+/**
+ * Pure Java stand-in for android.graphics.Color, so the game's GL-free code runs on a desktop JVM.
+ */
+public class Color {
+
+	public static int rgb(int red, int green, int blue) {
+		return 0xff000000 | (red << 16) | (green << 8) | blue;
+	}
+
+	public static int red(int color) {
+		return (color >> 16) & 0xff;
+	}
+
+	public static int green(int color) {
+		return (color >> 8) & 0xff;
+	}
+
+	public static int blue(int color) {
+		return color & 0xff;
+	}
+
+}
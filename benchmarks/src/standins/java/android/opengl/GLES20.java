@@ -0,0 +1,138 @@
+package android.opengl;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pure Java stand-in for android.opengl.GLES20, so code that loads textures and buffers runs on a
+ * desktop JVM. Nothing is drawn: it only keeps track of the names it has generated, what is bound
+ * to each unit and the size of the image last uploaded into each texture, for tests to check.
+ */
+public class GLES20 {
+
+	public static final int GL_TEXTURE_2D = 0x0DE1;
+	public static final int GL_TEXTURE0 = 0x84C0;
+	public static final int GL_MAX_TEXTURE_IMAGE_UNITS = 0x8872;
+	public static final int GL_EXTENSIONS = 0x1F03;
+	public static final int GL_NO_ERROR = 0;
+	private static final int UNITS = 8;
+
+	private static int activeUnit;
+	private static int[] unitToTexture;
+	private static int nextName;
+	private static int nextBuffer;
+	//{width, height} of the level 0 image last uploaded into each texture
+	private static Map<Integer, int[]> textureSizes;
+
+	static {
+		reset();
+	}
+
+	/**
+	 * Forgets every texture and binding, as if the context were new.
+	 */
+	public static void reset() {
+		activeUnit = 0;
+		unitToTexture = new int[UNITS];
+		nextName = 1;
+		nextBuffer = 1;
+		textureSizes = new HashMap<Integer, int[]>();
+	}
+
+	/**
+	 * Gets the texture bound to a unit, 0 for none.
+	 */
+	public static int getBoundTexture(int unit) {
+		return unitToTexture[unit];
+	}
+
+	/**
+	 * Gets the {width, height} of the image last uploaded into a texture, or null if none was.
+	 */
+	public static int[] getTextureSize(int texture) {
+		return textureSizes.get(texture);
+	}
+
+	/**
+	 * Gets the number of buffers generated since the context was new.
+	 */
+	public static int getGeneratedBufferCount() {
+		return nextBuffer - 1;
+	}
+
+	/**
+	 * Records an upload into the texture bound to the active unit, for GLUtils too.
+	 */
+	static void texImage(int level, int width, int height) {
+		if (level == 0)
+			textureSizes.put(unitToTexture[activeUnit], new int[] {width, height});
+	}
+
+	public static void glGetIntegerv(int pname, int[] params, int offset) {
+		params[offset] = pname == GL_MAX_TEXTURE_IMAGE_UNITS ? UNITS : 0;
+	}
+
+	public static String glGetString(int name) {
+		return "";
+	}
+
+	public static int glGetError() {
+		return GL_NO_ERROR;
+	}
+
+	public static void glGenTextures(int n, int[] textures, int offset) {
+		for (int i = 0; i < n; i++)
+			textures[offset + i] = nextName++;
+	}
+
+	public static void glDeleteTextures(int n, int[] textures, int offset) {
+		for (int i = 0; i < n; i++) {
+			int texture = textures[offset + i];
+			textureSizes.remove(texture);
+			for (int unit = 0; unit < UNITS; unit++) {
+				if (unitToTexture[unit] == texture)
+					unitToTexture[unit] = 0;
+			}
+		}
+	}
+
+	public static void glGenBuffers(int n, int[] buffers, int offset) {
+		for (int i = 0; i < n; i++)
+			buffers[offset + i] = nextBuffer++;
+	}
+
+	public static void glDeleteBuffers(int n, int[] buffers, int offset) {
+	}
+
+	public static void glBindBuffer(int target, int buffer) {
+	}
+
+	public static void glBufferData(int target, int size, Buffer data, int usage) {
+	}
+
+	public static void glActiveTexture(int texture) {
+		activeUnit = texture - GL_TEXTURE0;
+	}
+
+	public static void glBindTexture(int target, int texture) {
+		unitToTexture[activeUnit] = texture;
+	}
+
+	public static void glTexParameterf(int target, int pname, float param) {
+	}
+
+	public static void glGenerateMipmap(int target) {
+	}
+
+	public static void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+	                                int format, int type, Buffer pixels) {
+		texImage(level, width, height);
+	}
+
+	public static void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height,
+	                                          int border, int imageSize, Buffer data) {
+		texImage(level, width, height);
+	}
+
+}
@@ -0,0 +1,14 @@
+package android.opengl;
+
+import android.graphics.Bitmap;
+
+/**
+ * Pure Java stand-in for android.opengl.GLUtils, recording uploads with the GLES20 stand-in.
+ */
+public class GLUtils {
+
+	public static void texImage2D(int target, int level, Bitmap bitmap, int border) {
+		GLES20.texImage(level, bitmap.getWidth(), bitmap.getHeight());
+	}
+
+}
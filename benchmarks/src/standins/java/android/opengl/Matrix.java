@@ -0,0 +1,150 @@
+package android.opengl;
+
+/**
+ * Pure Java stand-in for android.opengl.Matrix, so the game's GL-free code runs on a desktop JVM.
+ *
+ * Only the methods used outside of rendering are provided. Matrices are column-major float[16]
+ * like Android's, and the results match Android's up to float rounding.
+ */
+public class Matrix {
+
+	public static void setIdentityM(float[] sm, int smOffset) {
+		for (int i = 0; i < 16; i++)
+			sm[smOffset + i] = 0;
+		for (int i = 0; i < 16; i += 5)
+			sm[smOffset + i] = 1;
+	}
+
+	public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+	                              float[] rhs, int rhsOffset) {
+		float[] product = new float[16];
+		for (int col = 0; col < 4; col++) {
+			for (int row = 0; row < 4; row++) {
+				float sum = 0;
+				for (int k = 0; k < 4; k++)
+					sum += lhs[lhsOffset + k * 4 + row] * rhs[rhsOffset + col * 4 + k];
+				product[col * 4 + row] = sum;
+			}
+		}
+		System.arraycopy(product, 0, result, resultOffset, 16);
+	}
+
+	public static void multiplyMV(float[] resultVec, int resultVecOffset, float[] lhsMat,
+	                              int lhsMatOffset, float[] rhsVec, int rhsVecOffset) {
+		float x = rhsVec[rhsVecOffset];
+		float y = rhsVec[rhsVecOffset + 1];
+		float z = rhsVec[rhsVecOffset + 2];
+		float w = rhsVec[rhsVecOffset + 3];
+		for (int row = 0; row < 4; row++) {
+			resultVec[resultVecOffset + row] = lhsMat[lhsMatOffset + row] * x
+					+ lhsMat[lhsMatOffset + 4 + row] * y
+					+ lhsMat[lhsMatOffset + 8 + row] * z
+					+ lhsMat[lhsMatOffset + 12 + row] * w;
+		}
+	}
+
+	public static void translateM(float[] m, int mOffset, float x, float y, float z) {
+		for (int i = 0; i < 4; i++) {
+			int mi = mOffset + i;
+			m[12 + mi] += m[mi] * x + m[4 + mi] * y + m[8 + mi] * z;
+		}
+	}
+
+	public static void scaleM(float[] m, int mOffset, float x, float y, float z) {
+		for (int i = 0; i < 4; i++) {
+			int mi = mOffset + i;
+			m[mi] *= x;
+			m[4 + mi] *= y;
+			m[8 + mi] *= z;
+		}
+	}
+
+	public static void setRotateM(float[] rm, int rmOffset, float a, float x, float y, float z) {
+		setIdentityM(rm, rmOffset);
+		a *= (float) (Math.PI / 180);
+		float s = (float) Math.sin(a);
+		float c = (float) Math.cos(a);
+		float len = (float) Math.sqrt(x * x + y * y + z * z);
+		if (len != 1) {
+			x /= len;
+			y /= len;
+			z /= len;
+		}
+		float nc = 1 - c;
+		rm[rmOffset] = x * x * nc + c;
+		rm[rmOffset + 1] = x * y * nc + z * s;
+		rm[rmOffset + 2] = z * x * nc - y * s;
+		rm[rmOffset + 4] = x * y * nc - z * s;
+		rm[rmOffset + 5] = y * y * nc + c;
+		rm[rmOffset + 6] = y * z * nc + x * s;
+		rm[rmOffset + 8] = z * x * nc + y * s;
+		rm[rmOffset + 9] = y * z * nc - x * s;
+		rm[rmOffset + 10] = z * z * nc + c;
+	}
+
+	public static void rotateM(float[] m, int mOffset, float a, float x, float y, float z) {
+		float[] rotation = new float[16];
+		setRotateM(rotation, 0, a, x, y, z);
+		multiplyMM(m, mOffset, m, mOffset, rotation, 0);
+	}
+
+	public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset) {
+		//cofactor expansion on pairs of 2x2 determinants of the transpose
+		float src0 = m[mOffset], src4 = m[mOffset + 1], src8 = m[mOffset + 2], src12 = m[mOffset + 3];
+		float src1 = m[mOffset + 4], src5 = m[mOffset + 5], src9 = m[mOffset + 6], src13 = m[mOffset + 7];
+		float src2 = m[mOffset + 8], src6 = m[mOffset + 9], src10 = m[mOffset + 10], src14 = m[mOffset + 11];
+		float src3 = m[mOffset + 12], src7 = m[mOffset + 13], src11 = m[mOffset + 14], src15 = m[mOffset + 15];
+
+		float atmp0 = src10 * src15, atmp1 = src11 * src14, atmp2 = src9 * src15;
+		float atmp3 = src11 * src13, atmp4 = src9 * src14, atmp5 = src10 * src13;
+		float atmp6 = src8 * src15, atmp7 = src11 * src12, atmp8 = src8 * src14;
+		float atmp9 = src10 * src12, atmp10 = src8 * src13, atmp11 = src9 * src12;
+
+		float dst0 = (atmp0 * src5 + atmp3 * src6 + atmp4 * src7) - (atmp1 * src5 + atmp2 * src6 + atmp5 * src7);
+		float dst1 = (atmp1 * src4 + atmp6 * src6 + atmp9 * src7) - (atmp0 * src4 + atmp7 * src6 + atmp8 * src7);
+		float dst2 = (atmp2 * src4 + atmp7 * src5 + atmp10 * src7) - (atmp3 * src4 + atmp6 * src5 + atmp11 * src7);
+		float dst3 = (atmp5 * src4 + atmp8 * src5 + atmp11 * src6) - (atmp4 * src4 + atmp9 * src5 + atmp10 * src6);
+		float dst4 = (atmp1 * src1 + atmp2 * src2 + atmp5 * src3) - (atmp0 * src1 + atmp3 * src2 + atmp4 * src3);
+		float dst5 = (atmp0 * src0 + atmp7 * src2 + atmp8 * src3) - (atmp1 * src0 + atmp6 * src2 + atmp9 * src3);
+		float dst6 = (atmp3 * src0 + atmp6 * src1 + atmp11 * src3) - (atmp2 * src0 + atmp7 * src1 + atmp10 * src3);
+		float dst7 = (atmp4 * src0 + atmp9 * src1 + atmp10 * src2) - (atmp5 * src0 + atmp8 * src1 + atmp11 * src2);
+
+		float btmp0 = src2 * src7, btmp1 = src3 * src6, btmp2 = src1 * src7;
+		float btmp3 = src3 * src5, btmp4 = src1 * src6, btmp5 = src2 * src5;
+		float btmp6 = src0 * src7, btmp7 = src3 * src4, btmp8 = src0 * src6;
+		float btmp9 = src2 * src4, btmp10 = src0 * src5, btmp11 = src1 * src4;
+
+		float dst8 = (btmp0 * src13 + btmp3 * src14 + btmp4 * src15) - (btmp1 * src13 + btmp2 * src14 + btmp5 * src15);
+		float dst9 = (btmp1 * src12 + btmp6 * src14 + btmp9 * src15) - (btmp0 * src12 + btmp7 * src14 + btmp8 * src15);
+		float dst10 = (btmp2 * src12 + btmp7 * src13 + btmp10 * src15) - (btmp3 * src12 + btmp6 * src13 + btmp11 * src15);
+		float dst11 = (btmp5 * src12 + btmp8 * src13 + btmp11 * src14) - (btmp4 * src12 + btmp9 * src13 + btmp10 * src14);
+		float dst12 = (btmp2 * src10 + btmp5 * src11 + btmp1 * src9) - (btmp4 * src11 + btmp0 * src9 + btmp3 * src10);
+		float dst13 = (btmp8 * src11 + btmp0 * src8 + btmp7 * src10) - (btmp6 * src10 + btmp9 * src11 + btmp1 * src8);
+		float dst14 = (btmp6 * src9 + btmp11 * src11 + btmp3 * src8) - (btmp10 * src11 + btmp2 * src8 + btmp7 * src9);
+		float dst15 = (btmp10 * src10 + btmp4 * src8 + btmp9 * src9) - (btmp8 * src9 + btmp11 * src10 + btmp5 * src8);
+
+		float det = src0 * dst0 + src1 * dst1 + src2 * dst2 + src3 * dst3;
+		if (det == 0)
+			return false;
+
+		float invdet = 1 / det;
+		mInv[mInvOffset] = dst0 * invdet;
+		mInv[mInvOffset + 1] = dst1 * invdet;
+		mInv[mInvOffset + 2] = dst2 * invdet;
+		mInv[mInvOffset + 3] = dst3 * invdet;
+		mInv[mInvOffset + 4] = dst4 * invdet;
+		mInv[mInvOffset + 5] = dst5 * invdet;
+		mInv[mInvOffset + 6] = dst6 * invdet;
+		mInv[mInvOffset + 7] = dst7 * invdet;
+		mInv[mInvOffset + 8] = dst8 * invdet;
+		mInv[mInvOffset + 9] = dst9 * invdet;
+		mInv[mInvOffset + 10] = dst10 * invdet;
+		mInv[mInvOffset + 11] = dst11 * invdet;
+		mInv[mInvOffset + 12] = dst12 * invdet;
+		mInv[mInvOffset + 13] = dst13 * invdet;
+		mInv[mInvOffset + 14] = dst14 * invdet;
+		mInv[mInvOffset + 15] = dst15 * invdet;
+		return true;
+	}
+
+}
@@ -0,0 +1,26 @@
+package android.util;
+
+/**
+ * Pure Java stand-in for android.util.Log, writing warnings and errors to standard error.
+ */
+public class Log {
+
+	public static int d(String tag, String msg) {
+		return 0;
+	}
+
+	public static int i(String tag, String msg) {
+		return 0;
+	}
+
+	public static int w(String tag, String msg) {
+		System.err.println(tag + ": " + msg);
+		return 0;
+	}
+
+	public static int e(String tag, String msg) {
+		System.err.println(tag + ": " + msg);
+		return 0;
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.joe.proceduralgame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.joe.proceduralgame.bench.RoomConfig;
+
+/**
+ * Packs the lightmaps of generated rooms and checks the sizes and densities a texel budget picks.
+ */
+public class LightmapAtlasTest {
+
+	private static final int[] BUDGETS = {1, 64 * 64, 128 * 128, 256 * 256, Integer.MAX_VALUE};
+
+	@Test
+	public void generatedRoomsFitTheDefaultBudget() {
+		//recorded from a run: the generator's 9x7 to 15x7 rooms get 9 to 12 texels per unit
+		int[] densities = {9, 9, 12, 11, 9};
+		for (long seed = 1; seed <= 5; seed++) {
+			LightmapAtlas atlas = LightmapAtlas.pack(loadRoom(seed).staticQuads);
+			assertEquals("seed " + seed, 128, atlas.size);
+			assertEquals("seed " + seed, densities[(int) seed - 1], atlas.texelsPerUnit);
+			assertTilesFit(atlas);
+		}
+	}
+
+	@Test
+	public void biggerBudgetsGiveDenserLighting() {
+		for (long seed = 1; seed <= 5; seed++) {
+			Room room = loadRoom(seed);
+			LightmapAtlas previous = null;
+			for (int budget : BUDGETS) {
+				LightmapAtlas atlas = LightmapAtlas.pack(room.staticQuads, budget);
+				assertTilesFit(atlas);
+				assertTrue((long) atlas.size * atlas.size <= Math.max(budget, LightmapAtlas.MIN_SIZE * LightmapAtlas.MIN_SIZE)
+						|| atlas.texelsPerUnit == 1);
+				if (previous != null) {
+					assertTrue(atlas.size >= previous.size);
+					assertTrue(atlas.texelsPerUnit >= previous.texelsPerUnit);
+				}
+				previous = atlas;
+			}
+			assertEquals(LightmapAtlas.MAX_TEXELS_PER_UNIT, previous.texelsPerUnit);
+		}
+	}
+
+	@Test
+	public void roomTooBigForTheBudgetGetsALargerTexture() {
+		Room room = new RoomConfig(32, 32, .1f, 1).createRoom();
+		room.generator.load(room);
+		LightmapAtlas atlas = LightmapAtlas.pack(room.staticQuads, 64 * 64);
+		assertEquals(128, atlas.size);
+		assertEquals(1, atlas.texelsPerUnit);
+		assertTilesFit(atlas);
+	}
+
+	private static Room loadRoom(long seed) {
+		Room room = new Room();
+		room.generator = new RoomGenerator(seed);
+		room.generator.generate(room);
+		room.generator.load(room);
+		return room;
+	}
+
+	//every tile lies on the texture and no two overlap
+	private static void assertTilesFit(LightmapAtlas atlas) {
+		boolean[] used = new boolean[atlas.size * atlas.size];
+		for (int i = 0; i < atlas.tileX.length; i++) {
+			assertTrue(atlas.tileX[i] >= 0 && atlas.tileX[i] + atlas.tileWidth[i] <= atlas.size);
+			assertTrue(atlas.tileY[i] >= 0 && atlas.tileY[i] + atlas.tileHeight[i] <= atlas.size);
+			for (int y = atlas.tileY[i]; y < atlas.tileY[i] + atlas.tileHeight[i]; y++) {
+				for (int x = atlas.tileX[i]; x < atlas.tileX[i] + atlas.tileWidth[i]; x++) {
+					assertTrue(!used[y * atlas.size + x]);
+					used[y * atlas.size + x] = true;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.joe.proceduralgame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.joe.proceduralgame.headless.HeadlessBattle;
+
+/**
+ * Plans the enemies' opening move of seeded battles and checks the search is deterministic.
+ */
+public class MctsPlannerTest {
+
+	private static final int ITERATIONS = 1000;
+
+	@Test
+	public void sameSeedAndThreadsPlanTheSame() {
+		for (long seed = 1; seed <= 4; seed++) {
+			for (int threads = 1; threads <= 3; threads++) {
+				Room room = new HeadlessBattle(seed, 2, 4).getManager().currentRoom;
+				EnemyPlanner.Plan first = plan(room, seed, threads);
+				EnemyPlanner.Plan second = plan(room, seed, threads);
+				String where = "seed " + seed + ", " + threads + " threads";
+				assertNotNull(where, first);
+				assertSamePlan(where, first, second);
+			}
+		}
+	}
+
+	@Test
+	public void plansAgainAfterShutdown() {
+		Room room = new HeadlessBattle(1, 2, 4).getManager().currentRoom;
+		EnemyPlanner.Plan[] expected = planInTurn(room, 1, 3, 3);
+		MctsPlanner planner = new MctsPlanner(1, 3, ITERATIONS, EnemyPlanner.NO_BUDGET);
+		try {
+			for (int i = 0; i < expected.length; i++) {
+				assertSamePlan("plan " + i, expected[i],
+						planner.plan(new EnemyPlanner.Situation(room, Character.GROUP_ENEMY)));
+				planner.shutdown();
+			}
+		} finally {
+			planner.shutdown();
+		}
+	}
+
+	@Test
+	public void plansWhileShutDownFromAnotherThread() throws InterruptedException {
+		Room room = new HeadlessBattle(2, 2, 4).getManager().currentRoom;
+		EnemyPlanner.Plan[] expected = planInTurn(room, 2, 3, 5);
+		final MctsPlanner planner = new MctsPlanner(2, 3, ITERATIONS, EnemyPlanner.NO_BUDGET);
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread stopper = new Thread() {
+			@Override
+			public void run() {
+				while (!done.get())
+					planner.shutdown();
+			}
+		};
+		stopper.start();
+		try {
+			for (int i = 0; i < expected.length; i++) {
+				assertSamePlan("plan " + i, expected[i],
+						planner.plan(new EnemyPlanner.Situation(room, Character.GROUP_ENEMY)));
+			}
+		} finally {
+			done.set(true);
+			stopper.join();
+			planner.shutdown();
+		}
+	}
+
+	private static void assertSamePlan(String where, EnemyPlanner.Plan expected, EnemyPlanner.Plan actual) {
+		assertNotNull(where, actual);
+		assertEquals(where, expected.actor, actual.actor);
+		assertEquals(where, expected.row, actual.row);
+		assertEquals(where, expected.col, actual.col);
+		assertEquals(where, expected.target, actual.target);
+		assertEquals(where, expected.score, actual.score, 0);
+	}
+
+	//plans count times with one planner that is never shut down in between, since what it decides
+	//depends on the decisions before
+	private static EnemyPlanner.Plan[] planInTurn(Room room, long seed, int threads, int count) {
+		MctsPlanner planner = new MctsPlanner(seed, threads, ITERATIONS, EnemyPlanner.NO_BUDGET);
+		try {
+			EnemyPlanner.Plan[] plans = new EnemyPlanner.Plan[count];
+			for (int i = 0; i < count; i++)
+				plans[i] = planner.plan(new EnemyPlanner.Situation(room, Character.GROUP_ENEMY));
+			return plans;
+		} finally {
+			planner.shutdown();
+		}
+	}
+
+	//plans with a fresh planner, so nothing is left over from an earlier search
+	private static EnemyPlanner.Plan plan(Room room, long seed, int threads) {
+		MctsPlanner planner = new MctsPlanner(seed, threads, ITERATIONS, EnemyPlanner.NO_BUDGET);
+		try {
+			return planner.plan(new EnemyPlanner.Situation(room, Character.GROUP_ENEMY));
+		} finally {
+			planner.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.joe.proceduralgame;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import android.opengl.Matrix;
+
+import com.joe.proceduralgame.bench.RoomConfig;
+
+/**
+ * Bakes lightmaps on the JVM and checks that surfaces facing a light are lit.
+ */
+public class RoomLightingTest {
+
+	@Test
+	public void flattenedQuadFacingALightIsLit() {
+		Room room = new RoomConfig(4, 4, 0, 1).createRoom();
+		float x = room.originx + 1;
+		float z = room.originz + 1;
+
+		//flattened like a torch, so its model matrix maps every z to its own plane
+		float[] model = new float[16];
+		Matrix.setIdentityM(model, 0);
+		Matrix.translateM(model, 0, x, .75f, z);
+		Matrix.scaleM(model, 0, .3f, .3f, 0);
+		room.staticQuads.add(Quad.createStaticQuad(Quad.Type.DECORATION, model, 0));
+		RoomLighting lighting = room.getLighting();
+		lighting.addStaticLight(new RoomLighting.Light(x, .75f, z + .3f, 1, 1, 1));
+		lighting.prepare();
+
+		assertTrue(isLit(lighting, 0));
+	}
+
+	@Test
+	public void wallsWithTorchesAreLit() {
+		int nChecked = 0;
+		for (long seed = 1; seed <= 5; seed++) {
+			Room room = new Room();
+			room.generator = new RoomGenerator(seed);
+			room.generator.generate(room);
+			room.generator.load(room);
+			RoomLighting lighting = room.getLighting();
+			lighting.prepare();
+
+			for (RoomLighting.Light light : lighting.getStaticLights()) {
+				for (int i = 0; i < room.staticQuads.size(); i++) {
+					Quad q = room.staticQuads.get(i);
+					if (q.type == Quad.Type.WALL && isInFront(q.modelMatrix, light)) {
+						assertTrue("seed " + seed + ", wall " + i, isLit(lighting, i));
+						nChecked++;
+					}
+				}
+			}
+		}
+		assertTrue(nChecked > 0);
+	}
+
+	//whether a light hangs just in front of a unit quad, as a torch does on its wall
+	private static boolean isInFront(float[] m, RoomLighting.Light light) {
+		float dx = light.x - m[12];
+		float dy = light.y - m[13];
+		float dz = light.z - m[14];
+		float nx = m[1] * m[6] - m[2] * m[5];
+		float ny = m[2] * m[4] - m[0] * m[6];
+		float nz = m[0] * m[5] - m[1] * m[4];
+		float distance = (dx * nx + dy * ny + dz * nz) / (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+		float alongX = dx * m[0] + dy * m[1] + dz * m[2];
+		float alongY = dx * m[4] + dy * m[5] + dz * m[6];
+		return Math.abs(distance) < .1f && Math.abs(alongX) <= .5f && Math.abs(alongY) <= .5f;
+	}
+
+	//whether any texel of a static quad's tile is brighter than black
+	private static boolean isLit(RoomLighting lighting, int quad) {
+		LightmapAtlas atlas = lighting.atlas;
+		int[] pixels = lighting.getPixels();
+		for (int y = 0; y < atlas.tileHeight[quad]; y++) {
+			for (int x = 0; x < atlas.tileWidth[quad]; x++) {
+				if ((pixels[(atlas.tileY[quad] + y) * atlas.size + atlas.tileX[quad] + x] & 0xffffff) != 0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.joe.proceduralgame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.Context;
+import android.opengl.GLES20;
+
+import com.joe.proceduralgame.bench.RoomConfig;
+
+/**
+ * Loads rooms against the GLES20 stand-in, again in the same context and after it is lost.
+ */
+public class RoomLoadTest {
+
+	private Room room;
+	private TextureManager tex;
+
+	@Before
+	public void setUp() {
+		GLES20.reset();
+		room = new RoomConfig(8, 6, .1f, 1).createRoom();
+		tex = new TextureManager(new Context());
+		room.load(tex);
+	}
+
+	@Test
+	public void loadingAgainInTheSameContextReusesEverything() {
+		int textures = tex.getLoadedTextureCount();
+		int buffers = GLES20.getGeneratedBufferCount();
+		room.load(tex);
+		assertEquals(textures, tex.getLoadedTextureCount());
+		assertEquals(buffers, GLES20.getGeneratedBufferCount());
+	}
+
+	@Test
+	public void loadingAfterContextLossStartsOver() {
+		int textures = tex.getLoadedTextureCount();
+		assertTrue(textures > 0);
+		assertTrue(GLES20.getGeneratedBufferCount() > 0);
+
+		//as DungeonRenderer.onSurfaceCreated() does in a new context
+		GLES20.reset();
+		tex.invalidate();
+		room.invalidateGraphics();
+		room.load(tex);
+
+		//the static mesh and every texture were made again, each referenced once
+		assertTrue(GLES20.getGeneratedBufferCount() > 0);
+		assertEquals(textures, tex.getLoadedTextureCount());
+		for (Quad q : room.staticQuads)
+			assertEquals(1, tex.getReferenceCount(q.textureID));
+		assertTrue(GLES20.getTextureSize(GLES20.getBoundTexture(TextureManager.LIGHTMAP_UNIT)) != null);
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.joe.proceduralgame;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+/**
+ * Loads textures against the GLES20 stand-in and checks each image lands in its own texture.
+ */
+public class TextureManagerTest {
+
+	private static final int ATLAS_ID = 1;
+	private static final long DECODE_TIMEOUT_MS = 5000;
+
+	private Context context;
+	private TextureManager tex;
+
+	@Before
+	public void setUp() {
+		GLES20.reset();
+		context = new Context();
+		context.getResources().addDrawable(ATLAS_ID, Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888));
+		tex = new TextureManager(context);
+	}
+
+	@Test
+	public void decodedImageIsUploadedIntoItsTextureAfterSetLightmap() throws InterruptedException {
+		int name = tex.referenceLoad(ATLAS_ID);
+		//leaves the lightmap's unit active, while the atlas stays resident in its own unit
+		tex.setLightmap(Bitmap.createBitmap(4, 4, Bitmap.Config.RGB_565));
+		int lightmapName = GLES20.getBoundTexture(TextureManager.LIGHTMAP_UNIT);
+
+		uploadAll(name);
+		assertArrayEquals(new int[] {8, 8}, GLES20.getTextureSize(name));
+		assertArrayEquals(new int[] {4, 4}, GLES20.getTextureSize(lightmapName));
+	}
+
+	@Test
+	public void decodedImageIsUploadedIntoItsTextureAfterAnotherLoad() throws InterruptedException {
+		context.getResources().addDrawable(ATLAS_ID + 1, Bitmap.createBitmap(2, 2, Bitmap.Config.ARGB_8888));
+		int first = tex.referenceLoad(ATLAS_ID);
+		int second = tex.referenceLoad(ATLAS_ID + 1);
+
+		uploadAll(first);
+		uploadAll(second);
+		assertArrayEquals(new int[] {8, 8}, GLES20.getTextureSize(first));
+		assertArrayEquals(new int[] {2, 2}, GLES20.getTextureSize(second));
+	}
+
+	//uploads decoded images until a texture's has been, as the GL thread does once a frame
+	private void uploadAll(int name) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + DECODE_TIMEOUT_MS;
+		while (!isUploaded(name) && System.currentTimeMillis() < deadline) {
+			tex.uploadDecoded();
+			Thread.sleep(1);
+		}
+		assertNotNull("texture " + name + " was never uploaded", GLES20.getTextureSize(name));
+		assertTrue(isUploaded(name));
+	}
+
+	//whether a texture holds more than its 1x1 placeholder
+	private static boolean isUploaded(int name) {
+		int[] size = GLES20.getTextureSize(name);
+		return size != null && size[0] * size[1] > 1;
+	}
+
+}
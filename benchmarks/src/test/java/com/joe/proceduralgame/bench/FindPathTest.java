@@ -0,0 +1,69 @@
+package com.joe.proceduralgame.bench;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.joe.proceduralgame.IntPath;
+import com.joe.proceduralgame.Room;
+
+/**
+ * Checks Room.findPath() finds exactly the paths LegacyFindPath did, tie-breaks included.
+ */
+public class FindPathTest {
+
+	private static final int[][] SIZES = {{8, 6}, {16, 9}, {32, 32}};
+	private static final float[] DENSITIES = {0, .1f, .3f};
+	private static final int SEEDS = 20;
+	private static final int QUERIES = 50;
+
+	@Test
+	public void findsTheLegacyPaths() {
+		IntPath path = new IntPath();
+		for (int[] size : SIZES) {
+			for (float density : DENSITIES) {
+				for (long seed = 1; seed <= SEEDS; seed++) {
+					Room room = new RoomConfig(size[0], size[1], density, seed).createRoom();
+					int width = room.getWidth();
+					int nSquares = width * room.getLength();
+					int[] free = RoomConfig.getFreeSquares(room);
+					Random rand = new Random(seed);
+					for (int i = 0; i < QUERIES; i++) {
+						int start = free[rand.nextInt(free.length)];
+						//any square, so blocked destinations and start == dest are covered too
+						int dest = i % 10 == 0 ? start : rand.nextInt(nSquares);
+						for (boolean includeDest : new boolean[] {true, false}) {
+							String query = size[0] + "x" + size[1] + " density=" + density + " seed=" + seed
+									+ " " + start + "->" + dest + " includeDest=" + includeDest;
+							LinkedList<int[]> expected = LegacyFindPath.findPath(room, start / width,
+									start % width, dest / width, dest % width, includeDest);
+							boolean found = room.findPath(start / width, start % width, dest / width,
+									dest % width, includeDest, path);
+							LinkedList<int[]> list = room.findPath(start / width, start % width,
+									dest / width, dest % width, includeDest);
+							if (expected == null) {
+								assertEquals(query, false, found);
+								assertNull(query, list);
+								continue;
+							}
+							assertEquals(query, true, found);
+							assertEquals(query, expected.size(), path.size());
+							assertEquals(query, expected.size(), list.size());
+							for (int j = 0; j < expected.size(); j++) {
+								int[] square = expected.get(j);
+								assertArrayEquals(query, square, new int[] {path.getRow(j), path.getCol(j)});
+								assertArrayEquals(query, square, list.get(j));
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
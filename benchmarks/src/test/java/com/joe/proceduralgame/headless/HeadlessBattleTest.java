@@ -0,0 +1,45 @@
+package com.joe.proceduralgame.headless;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.joe.proceduralgame.Character;
+
+/**
+ * Plays out seeded battles on the JVM and checks how they end.
+ */
+public class HeadlessBattleTest {
+
+	private static final int MAX_STEPS = 100000;
+
+	@Test
+	public void seededBattleEndsTheSameWay() {
+		//recorded from a run, so a change to combat or the AI that alters it shows up here
+		HeadlessBattle.Result result = new HeadlessBattle(2, 2, 4).run(MAX_STEPS);
+		assertEquals(Character.GROUP_PLAYER, result.winner);
+		assertEquals(2079, result.steps);
+		assertEquals(103950, result.time);
+		assertEquals(1, result.survivors);
+	}
+
+	@Test
+	public void sameSeedPlaysOutTheSame() {
+		for (long seed = 1; seed <= 6; seed++) {
+			HeadlessBattle.Result first = new HeadlessBattle(seed, 2, 4).run(MAX_STEPS);
+			HeadlessBattle.Result second = new HeadlessBattle(seed, 2, 4).run(MAX_STEPS);
+			assertEquals("seed " + seed, first.winner, second.winner);
+			assertEquals("seed " + seed, first.steps, second.steps);
+			assertEquals("seed " + seed, first.survivors, second.survivors);
+		}
+	}
+
+	@Test
+	public void stepLimitLeavesBattleUnfinished() {
+		HeadlessBattle.Result result = new HeadlessBattle(2, 2, 4).run(10);
+		assertEquals(-1, result.winner);
+		assertEquals(10, result.steps);
+		assertEquals(0, result.survivors);
+	}
+
+}
@@ -0,0 +1,17 @@
+#!/bin/sh
+# Packs the drawables listed in atlases.txt into texture atlases on a desktop JVM.
+#
+# Writes each atlas to app/src/main/res/drawable-nodpi and regenerates Atlases.java, which the game
+# looks the packed sprites up in. Rerun it after changing atlases.txt or any of the drawables in it,
+# and commit what it writes.
+#
+# Usage: tools/atlas/run.sh
+set -e
+
+cd "$(dirname "$0")"
+APP=../../app/src/main
+rm -rf build
+mkdir -p build/classes
+javac -d build/classes $(find src/main/java -name '*.java')
+exec java -Djava.awt.headless=true -cp build/classes com.joe.proceduralgame.atlas.AtlasPacker \
+	atlases.txt $APP/res $APP/java/com/joe/proceduralgame/Atlases.java
@@ -0,0 +1,264 @@
+package com.joe.proceduralgame.atlas;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Packs the game's drawables into texture atlases, and writes the class the game looks the
+ * packed sprites up in.
+ *
+ * Each line of the spec names an atlas, the largest texture it may take, the largest a sprite
+ * may be on it and the drawables to pack, like
+ *
+ *     atlas_static 2048 400 dirt dungeonfloortile1 objtorch2
+ *
+ * Sprites are scaled down to fit the sprite size, then placed in rows, tallest first, on the
+ * smallest power of 2 texture they fit. Each is surrounded by copies of its edge texels so linear
+ * filtering at the edge of a region, or of its first mipmaps, never picks up its neighbours. The atlases are written to
+ * res/drawable-nodpi so Android never rescales them, and each sprite becomes an AtlasRegion
+ * constant named after its drawable.
+ *
+ * Usage: AtlasPacker <spec> <res dir> <generated java file>
+ */
+public class AtlasPacker {
+
+	/** Texels of edge copies around each sprite, enough for the first two mipmap levels */
+	private static final int PADDING = 4;
+	/** The smallest atlas, in texels on a side */
+	private static final int MIN_SIZE = 64;
+	private static final String PACKAGE = "com.joe.proceduralgame";
+
+	private static class Sprite {
+		String name;
+		BufferedImage image;
+		int x, y; // top left of the image on the atlas, inside the padding
+	}
+
+	private static class Atlas {
+		String name;
+		int width, height;
+		List<Sprite> sprites = new ArrayList<>();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: AtlasPacker <spec> <res dir> <generated java file>");
+			System.exit(1);
+		}
+		File resDir = new File(args[1]);
+		List<Atlas> atlases = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(args[0]), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] tokens = line.split("\\s+");
+				int maxSize = Integer.parseInt(tokens[1]);
+				int maxSprite = Integer.parseInt(tokens[2]);
+				String[] names = Arrays.copyOfRange(tokens, 3, tokens.length);
+				Atlas atlas = pack(tokens[0], maxSize, maxSprite, names, resDir);
+				write(atlas, new File(resDir, "drawable-nodpi/" + atlas.name + ".png"));
+				atlases.add(atlas);
+				System.out.println(atlas.name + ": " + atlas.sprites.size() + " sprites on "
+						+ atlas.width + "x" + atlas.height);
+			}
+		}
+		writeIndex(atlases, new File(args[2]), args[0]);
+	}
+
+	/**
+	 * Loads and scales the sprites of an atlas and lays them out on the smallest texture they fit.
+	 */
+	private static Atlas pack(String name, int maxSize, int maxSprite, String[] names, File resDir)
+			throws IOException {
+		Atlas atlas = new Atlas();
+		atlas.name = name;
+		for (String spriteName : names) {
+			Sprite sprite = new Sprite();
+			sprite.name = spriteName;
+			sprite.image = scale(read(spriteName, resDir), maxSprite);
+			atlas.sprites.add(sprite);
+		}
+		Collections.sort(atlas.sprites, new Comparator<Sprite>() {
+			public int compare(Sprite lhs, Sprite rhs) {
+				if (lhs.image.getHeight() != rhs.image.getHeight())
+					return rhs.image.getHeight() - lhs.image.getHeight();
+				return rhs.image.getWidth() - lhs.image.getWidth();
+			}
+		});
+
+		for (int size = MIN_SIZE; size <= maxSize; size *= 2) {
+			//a wide texture half as tall before the square one, as it's half the memory
+			if (packShelves(atlas.sprites, size, size / 2)) {
+				atlas.width = size;
+				atlas.height = size / 2;
+				return atlas;
+			}
+			if (packShelves(atlas.sprites, size, size)) {
+				atlas.width = size;
+				atlas.height = size;
+				return atlas;
+			}
+		}
+		throw new IllegalArgumentException("The sprites of " + name + " don't fit on " + maxSize
+				+ "x" + maxSize + ", lower its sprite size or split it");
+	}
+
+	/**
+	 * Finds a drawable in any density folder, taking the largest if it is in several.
+	 */
+	private static BufferedImage read(String name, File resDir) throws IOException {
+		BufferedImage best = null;
+		File[] dirs = resDir.listFiles();
+		Arrays.sort(dirs);
+		for (File dir : dirs) {
+			if (!dir.getName().startsWith("drawable") || dir.getName().equals("drawable-nodpi"))
+				continue;
+			for (String ext : new String[] {".png", ".jpg"}) {
+				File file = new File(dir, name + ext);
+				if (!file.exists())
+					continue;
+				BufferedImage image = ImageIO.read(file);
+				if (best == null || image.getWidth() * image.getHeight() > best.getWidth() * best.getHeight())
+					best = image;
+			}
+		}
+		if (best == null)
+			throw new IOException("No drawable named " + name + " in " + resDir);
+		return best;
+	}
+
+	/**
+	 * Scales an image down, keeping its aspect, so its longest side is at most maxSide.
+	 */
+	private static BufferedImage scale(BufferedImage image, int maxSide) {
+		int longest = Math.max(image.getWidth(), image.getHeight());
+		int width = image.getWidth(), height = image.getHeight();
+		if (longest > maxSide) {
+			width = Math.max(1, Math.round(width * maxSide / (float) longest));
+			height = Math.max(1, Math.round(height * maxSide / (float) longest));
+		}
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = scaled.createGraphics();
+		//area averaging, so detail is filtered rather than skipped
+		g.drawImage(image.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+		g.dispose();
+		return scaled;
+	}
+
+	/**
+	 * Places sprites in rows, each row as tall as its first sprite. The sprites must be sorted
+	 * tallest first.
+	 *
+	 * @return true if every sprite fit, with its position filled in
+	 */
+	private static boolean packShelves(List<Sprite> sprites, int width, int height) {
+		int x = 0, y = 0, shelfHeight = 0;
+		for (Sprite sprite : sprites) {
+			int w = sprite.image.getWidth() + 2 * PADDING;
+			int h = sprite.image.getHeight() + 2 * PADDING;
+			if (w > width)
+				return false;
+			if (x + w > width) {
+				y += shelfHeight;
+				x = 0;
+				shelfHeight = 0;
+			}
+			if (y + h > height)
+				return false;
+			sprite.x = x + PADDING;
+			sprite.y = y + PADDING;
+			x += w;
+			shelfHeight = Math.max(shelfHeight, h);
+		}
+		return true;
+	}
+
+	/**
+	 * Draws the sprites and their edge copies and saves the atlas as a png.
+	 */
+	private static void write(Atlas atlas, File file) throws IOException {
+		BufferedImage out = new BufferedImage(atlas.width, atlas.height, BufferedImage.TYPE_INT_ARGB);
+		for (Sprite sprite : atlas.sprites) {
+			BufferedImage image = sprite.image;
+			int w = image.getWidth(), h = image.getHeight();
+			for (int y = -PADDING; y < h + PADDING; y++) {
+				for (int x = -PADDING; x < w + PADDING; x++) {
+					int sx = Math.max(0, Math.min(w - 1, x));
+					int sy = Math.max(0, Math.min(h - 1, y));
+					out.setRGB(sprite.x + x, sprite.y + y, image.getRGB(sx, sy));
+				}
+			}
+		}
+		file.getParentFile().mkdirs();
+		ImageIO.write(out, "png", file);
+	}
+
+	/**
+	 * Writes the class with a region constant for each sprite, in the app's line endings.
+	 */
+	private static void writeIndex(List<Atlas> atlases, File file, String spec) throws IOException {
+		String nl = "\r\n";
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(PACKAGE).append(";").append(nl).append(nl);
+		sb.append("/**").append(nl);
+		sb.append(" * The sprites packed onto texture atlases, by the name of their drawable.").append(nl);
+		sb.append(" *").append(nl);
+		sb.append(" * Generated by tools/atlas from ").append(new File(spec).getName())
+				.append(", don't edit it by hand.").append(nl);
+		sb.append(" */").append(nl);
+		sb.append("public final class Atlases {").append(nl);
+		for (Atlas atlas : atlases) {
+			sb.append(nl).append("\t////// ").append(atlas.name).append(", ").append(atlas.width)
+					.append("x").append(atlas.height).append(" //////").append(nl);
+			List<Sprite> byName = new ArrayList<>(atlas.sprites);
+			Collections.sort(byName, new Comparator<Sprite>() {
+				public int compare(Sprite lhs, Sprite rhs) {
+					return lhs.name.compareTo(rhs.name);
+				}
+			});
+			for (Sprite sprite : byName) {
+				sb.append(String.format(Locale.US,
+						"\tpublic static final AtlasRegion %s = new AtlasRegion(R.drawable.%s, %sf, %sf, %sf, %sf);",
+						sprite.name.toUpperCase(Locale.US), atlas.name,
+						texels(sprite.x, atlas.width), texels(sprite.y, atlas.height),
+						texels(sprite.image.getWidth(), atlas.width),
+						texels(sprite.image.getHeight(), atlas.height))).append(nl);
+			}
+		}
+		sb.append(nl).append("\tprivate Atlases() {}").append(nl).append(nl);
+		sb.append("}").append(nl);
+
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			out.write(sb.toString());
+		}
+	}
+
+	/**
+	 * Formats a number of texels as a fraction of the atlas, exactly as texels are powers of 2.
+	 */
+	private static String texels(int texels, int size) {
+		return Float.toString(texels / (float) size);
+	}
+
+}
@@ -0,0 +1,18 @@
+#!/bin/sh
+# Compresses the drawables listed in textures.txt to mipmapped ETC1 on a desktop JVM.
+#
+# Writes each one to app/src/main/res/raw as <drawable>_etc1.ktx and regenerates
+# CompressedTextures.java, which TextureManager finds them with. Rerun it after changing
+# textures.txt or any of the drawables in it, after tools/atlas if they are atlases, and commit what
+# it writes.
+#
+# Usage: tools/textures/run.sh
+set -e
+
+cd "$(dirname "$0")"
+APP=../../app/src/main
+rm -rf build
+mkdir -p build/classes
+javac -d build/classes $(find src/main/java -name '*.java')
+exec java -Djava.awt.headless=true -cp build/classes com.joe.proceduralgame.textures.TextureConverter \
+	textures.txt $APP/res $APP/java/com/joe/proceduralgame/CompressedTextures.java
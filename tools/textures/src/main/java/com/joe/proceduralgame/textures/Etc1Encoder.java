@@ -0,0 +1,211 @@
+package com.joe.proceduralgame.textures;
+
+/**
+ * Compresses RGB images to ETC1, as specified by OES_compressed_ETC1_RGB8_texture.
+ *
+ * Each 4x4 block is split in two halves, side by side or one above the other, and each half gets
+ * a base color and one of eight tables of brightness offsets. Every texel picks the offset of its
+ * half's table that brings the base color closest to it. The encoder tries both splits, both ways
+ * of storing the base colors and every table, and keeps whichever has the least squared error.
+ * That isn't the best ETC1 there is, but it is exhaustive where it counts and fast enough for a
+ * build step.
+ */
+public class Etc1Encoder {
+
+	/** Bytes of one compressed 4x4 block */
+	public static final int BLOCK_BYTES = 8;
+
+	//Brightness offsets of each table, the small then the large one; the other two are their negatives
+	private static final int[][] MODIFIERS = {
+			{2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}};
+	//Offset of each 2 bit texel index, as {msb, lsb}: 00 small, 01 large, 10 -small, 11 -large
+	private static final int[] INDEX_SIGN = {1, 1, -1, -1};
+	private static final int[] INDEX_SIZE = {0, 1, 0, 1};
+
+	/**
+	 * Gets the size of an image once compressed.
+	 */
+	public static int compressedSize(int width, int height) {
+		return ((width + 3) / 4) * ((height + 3) / 4) * BLOCK_BYTES;
+	}
+
+	/**
+	 * Compresses an image. Blocks that hang over the edge of the image repeat its edge texels.
+	 *
+	 * @param rgb the texels, row by row, as 0xRRGGBB in the low bits; alpha is ignored
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the blocks, row by row, BLOCK_BYTES each
+	 */
+	public static byte[] encode(int[] rgb, int width, int height) {
+		byte[] out = new byte[compressedSize(width, height)];
+		int[] block = new int[16 * 3]; // r, g, b of texel x * 4 + y
+		int offset = 0;
+		for (int by = 0; by < height; by += 4) {
+			for (int bx = 0; bx < width; bx += 4) {
+				for (int x = 0; x < 4; x++) {
+					for (int y = 0; y < 4; y++) {
+						int c = rgb[Math.min(by + y, height - 1) * width + Math.min(bx + x, width - 1)];
+						int t = 3 * (x * 4 + y);
+						block[t] = (c >> 16) & 0xff;
+						block[t + 1] = (c >> 8) & 0xff;
+						block[t + 2] = c & 0xff;
+					}
+				}
+				long bits = encodeBlock(block);
+				for (int i = 0; i < BLOCK_BYTES; i++)
+					out[offset++] = (byte) (bits >>> (56 - 8 * i));
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Finds the best encoding of one block.
+	 *
+	 * @param block r, g, b of each texel, in column major order
+	 * @return the block's 64 bits, most significant first as they are stored
+	 */
+	private static long encodeBlock(int[] block) {
+		long best = 0;
+		long bestError = Long.MAX_VALUE;
+		int[] average = new int[6];
+		int[] base = new int[6];
+		int[] table = new int[2];
+		int[] indices = new int[16];
+		for (int flip = 0; flip <= 1; flip++) {
+			for (int half = 0; half < 2; half++) {
+				int r = 0, g = 0, b = 0;
+				for (int t = 0; t < 16; t++) {
+					if (halfOf(t, flip) == half) {
+						r += block[3 * t];
+						g += block[3 * t + 1];
+						b += block[3 * t + 2];
+					}
+				}
+				average[3 * half] = (r + 4) / 8;
+				average[3 * half + 1] = (g + 4) / 8;
+				average[3 * half + 2] = (b + 4) / 8;
+			}
+
+			for (int differential = 0; differential <= 1; differential++) {
+				int bits = differential == 1 ? 5 : 4;
+				int[] quantized = new int[6];
+				for (int i = 0; i < 6; i++) {
+					quantized[i] = quantize(average[i], bits);
+					base[i] = expand(quantized[i], bits);
+				}
+				if (differential == 1) {
+					//the second color is stored as an offset of -4 to 3 from the first
+					boolean fits = true;
+					for (int i = 0; i < 3; i++) {
+						int delta = quantized[3 + i] - quantized[i];
+						fits &= delta >= -4 && delta <= 3;
+					}
+					if (!fits)
+						continue;
+				}
+
+				long error = 0;
+				for (int half = 0; half < 2; half++) {
+					long halfBest = Long.MAX_VALUE;
+					for (int tab = 0; tab < MODIFIERS.length; tab++) {
+						long halfError = 0;
+						for (int t = 0; t < 16; t++) {
+							if (halfOf(t, flip) == half)
+								halfError += bestIndexError(block, t, base, half, tab, null);
+						}
+						if (halfError < halfBest) {
+							halfBest = halfError;
+							table[half] = tab;
+						}
+					}
+					error += halfBest;
+				}
+				if (error >= bestError)
+					continue;
+				bestError = error;
+				for (int t = 0; t < 16; t++) {
+					int half = halfOf(t, flip);
+					bestIndexError(block, t, base, half, table[half], indices);
+				}
+				best = pack(quantized, differential == 1, flip == 1, table, indices);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the half of a block a texel is in.
+	 *
+	 * @param t the texel, x * 4 + y
+	 * @param flip 0 for a left and right half, 1 for a top and bottom one
+	 */
+	private static int halfOf(int t, int flip) {
+		return flip == 0 ? t / 8 : (t % 4) / 2;
+	}
+
+	/**
+	 * Finds the index that brings a texel closest to its half's base color.
+	 *
+	 * @param indices where to store the index, or null to only get the error
+	 * @return the squared error of the texel with that index
+	 */
+	private static long bestIndexError(int[] block, int t, int[] base, int half, int table, int[] indices) {
+		long best = Long.MAX_VALUE;
+		int bestIndex = 0;
+		for (int index = 0; index < 4; index++) {
+			int offset = INDEX_SIGN[index] * MODIFIERS[table][INDEX_SIZE[index]];
+			long error = 0;
+			for (int c = 0; c < 3; c++) {
+				int d = clamp(base[3 * half + c] + offset) - block[3 * t + c];
+				error += d * d;
+			}
+			if (error < best) {
+				best = error;
+				bestIndex = index;
+			}
+		}
+		if (indices != null)
+			indices[t] = bestIndex;
+		return best;
+	}
+
+	private static long pack(int[] quantized, boolean differential, boolean flip, int[] table, int[] indices) {
+		long bits = 0;
+		for (int c = 0; c < 3; c++) {
+			int shift = 56 - 8 * c;
+			if (differential) {
+				int delta = quantized[3 + c] - quantized[c];
+				bits |= (long) (quantized[c] << 3 | (delta & 7)) << shift;
+			} else {
+				bits |= (long) (quantized[c] << 4 | quantized[3 + c]) << shift;
+			}
+		}
+		bits |= (long) table[0] << 37;
+		bits |= (long) table[1] << 34;
+		if (differential)
+			bits |= 1L << 33;
+		if (flip)
+			bits |= 1L << 32;
+		for (int t = 0; t < 16; t++) {
+			bits |= (long) (indices[t] >> 1) << (16 + t);
+			bits |= (long) (indices[t] & 1) << t;
+		}
+		return bits;
+	}
+
+	private static int quantize(int value, int bits) {
+		int max = (1 << bits) - 1;
+		return (value * max + 127) / 255;
+	}
+
+	private static int expand(int value, int bits) {
+		return bits == 5 ? value << 3 | value >> 2 : value << 4 | value;
+	}
+
+	private static int clamp(int value) {
+		return value < 0 ? 0 : (value > 255 ? 255 : value);
+	}
+
+}
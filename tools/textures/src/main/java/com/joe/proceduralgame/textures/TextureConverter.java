@@ -0,0 +1,210 @@
+package com.joe.proceduralgame.textures;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Compresses drawables to mipmapped ETC1 in KTX containers, and writes the class the game finds
+ * them with.
+ *
+ * Each line of the spec names a drawable. Its image must be a power of 2 on each side, and is
+ * reduced by averaging 2x2 texels down to 1x1 for the mipmaps. ETC1 has no alpha, so only opaque
+ * drawables should be listed; any alpha is dropped. Each is written to res/raw as
+ * <drawable>_etc1.ktx, which TextureManager uploads in place of the drawable on devices that can
+ * sample ETC1.
+ *
+ * Usage: TextureConverter <spec> <res dir> <generated java file>
+ */
+public class TextureConverter {
+
+	private static final byte[] KTX_IDENTIFIER = {
+			(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'};
+	private static final int GL_ETC1_RGB8_OES = 0x8D64;
+	private static final int GL_RGB = 0x1907;
+	private static final String PACKAGE = "com.joe.proceduralgame";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: TextureConverter <spec> <res dir> <generated java file>");
+			System.exit(1);
+		}
+		File resDir = new File(args[1]);
+		List<String> names = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(args[0]), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String name = line.split("\\s+")[0];
+				BufferedImage image = read(name, resDir);
+				int uncompressed = 0, compressed = 0;
+				List<byte[]> levels = new ArrayList<>();
+				int width = image.getWidth(), height = image.getHeight();
+				int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+				while (true) {
+					levels.add(Etc1Encoder.encode(rgb, width, height));
+					uncompressed += width * height * 4;
+					compressed += Etc1Encoder.compressedSize(width, height);
+					if (width == 1 && height == 1)
+						break;
+					int nextWidth = Math.max(1, width / 2), nextHeight = Math.max(1, height / 2);
+					rgb = reduce(rgb, width, height, nextWidth, nextHeight);
+					width = nextWidth;
+					height = nextHeight;
+				}
+				File file = new File(resDir, "raw/" + name + "_etc1.ktx");
+				writeKtx(file, image.getWidth(), image.getHeight(), levels);
+				names.add(name);
+				System.out.println(name + ": " + image.getWidth() + "x" + image.getHeight() + ", "
+						+ levels.size() + " levels, " + uncompressed / 1024 + " KB as RGBA, "
+						+ compressed / 1024 + " KB as ETC1");
+			}
+		}
+		writeIndex(names, new File(args[2]), args[0]);
+	}
+
+	/**
+	 * Finds a drawable in any density folder, taking the largest if it is in several.
+	 */
+	private static BufferedImage read(String name, File resDir) throws IOException {
+		BufferedImage best = null;
+		File[] dirs = resDir.listFiles();
+		Arrays.sort(dirs);
+		for (File dir : dirs) {
+			if (!dir.getName().startsWith("drawable"))
+				continue;
+			File file = new File(dir, name + ".png");
+			if (!file.exists())
+				continue;
+			BufferedImage image = ImageIO.read(file);
+			if (best == null || image.getWidth() * image.getHeight() > best.getWidth() * best.getHeight())
+				best = image;
+		}
+		if (best == null)
+			throw new IOException("No drawable named " + name + " in " + resDir);
+		if (Integer.bitCount(best.getWidth()) != 1 || Integer.bitCount(best.getHeight()) != 1)
+			throw new IllegalArgumentException(name + " is " + best.getWidth() + "x" + best.getHeight()
+					+ ", mipmapped textures must be a power of 2 on each side");
+		return best;
+	}
+
+	/**
+	 * Halves an image on each side that is longer than 1, averaging the texels it merges.
+	 */
+	private static int[] reduce(int[] rgb, int width, int height, int nextWidth, int nextHeight) {
+		int[] out = new int[nextWidth * nextHeight];
+		int sx = width / nextWidth, sy = height / nextHeight;
+		for (int y = 0; y < nextHeight; y++) {
+			for (int x = 0; x < nextWidth; x++) {
+				int r = 0, g = 0, b = 0;
+				for (int dy = 0; dy < sy; dy++) {
+					for (int dx = 0; dx < sx; dx++) {
+						int c = rgb[(y * sy + dy) * width + x * sx + dx];
+						r += (c >> 16) & 0xff;
+						g += (c >> 8) & 0xff;
+						b += c & 0xff;
+					}
+				}
+				int n = sx * sy;
+				out[y * nextWidth + x] = (r + n / 2) / n << 16 | (g + n / 2) / n << 8 | (b + n / 2) / n;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Writes a KTX 1.1 file of a 2D texture with its mipmaps, little endian.
+	 */
+	private static void writeKtx(File file, int width, int height, List<byte[]> levels) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(KTX_IDENTIFIER);
+		header.putInt(0x04030201); // endianness
+		header.putInt(0); // glType, 0 when compressed
+		header.putInt(1); // glTypeSize
+		header.putInt(0); // glFormat, 0 when compressed
+		header.putInt(GL_ETC1_RGB8_OES); // glInternalFormat
+		header.putInt(GL_RGB); // glBaseInternalFormat
+		header.putInt(width);
+		header.putInt(height);
+		header.putInt(0); // pixelDepth
+		header.putInt(0); // numberOfArrayElements
+		header.putInt(1); // numberOfFaces
+		header.putInt(levels.size());
+		header.putInt(0); // bytesOfKeyValueData
+
+		file.getParentFile().mkdirs();
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			out.write(header.array());
+			ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			for (byte[] level : levels) {
+				//ETC1 levels are whole 8 byte blocks, so they never need padding to 4 bytes
+				size.clear();
+				size.putInt(level.length);
+				out.write(size.array());
+				out.write(level);
+			}
+		}
+	}
+
+	/**
+	 * Writes the class that maps drawables to their compressed versions, in the app's line endings.
+	 */
+	private static void writeIndex(List<String> names, File file, String spec) throws IOException {
+		String nl = "\r\n";
+		StringBuilder drawables = new StringBuilder();
+		StringBuilder ktx = new StringBuilder();
+		for (String name : names) {
+			drawables.append(drawables.length() == 0 ? "" : ", ").append("R.drawable.").append(name);
+			ktx.append(ktx.length() == 0 ? "" : ", ").append("R.raw.").append(name).append("_etc1");
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(PACKAGE).append(";").append(nl).append(nl);
+		sb.append("/**").append(nl);
+		sb.append(" * The drawables that have mipmapped ETC1 versions in res/raw.").append(nl);
+		sb.append(" *").append(nl);
+		sb.append(" * Generated by tools/textures from ").append(new File(spec).getName())
+				.append(", don't edit it by hand.").append(nl);
+		sb.append(" */").append(nl);
+		sb.append("public final class CompressedTextures {").append(nl).append(nl);
+		sb.append("\tprivate static final int[] DRAWABLES = {").append(drawables).append("};").append(nl);
+		sb.append("\tprivate static final int[] ETC1_KTX = {").append(ktx).append("};").append(nl).append(nl);
+		sb.append("\t/**").append(nl);
+		sb.append("\t * Gets the ETC1 version of a drawable.").append(nl);
+		sb.append("\t *").append(nl);
+		sb.append("\t * @param textureID the resource id of the drawable").append(nl);
+		sb.append("\t * @return the resource id of its KTX file, or 0 if it has none").append(nl);
+		sb.append("\t */").append(nl);
+		sb.append("\tpublic static int getETC1(int textureID) {").append(nl);
+		sb.append("\t\tfor (int i = 0; i < DRAWABLES.length; i++) {").append(nl);
+		sb.append("\t\t\tif (DRAWABLES[i] == textureID)").append(nl);
+		sb.append("\t\t\t\treturn ETC1_KTX[i];").append(nl);
+		sb.append("\t\t}").append(nl);
+		sb.append("\t\treturn 0;").append(nl);
+		sb.append("\t}").append(nl).append(nl);
+		sb.append("\tprivate CompressedTextures() {}").append(nl).append(nl);
+		sb.append("}").append(nl);
+
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			out.write(sb.toString());
+		}
+	}
+
+}